@@ -124,6 +124,49 @@ public interface AbstractConnection extends AutoCloseable {
      */
     SyncSubscription subscribeSync(String subject);
 
+    /**
+     * Returns a {@link Flow.Publisher} of the messages on a given subject. Each
+     * {@link Flow.Subscriber} gets its own subscription and receives only as many messages as it
+     * has requested; the rest stay queued without waking anybody up.
+     *
+     * @param subject the subject of interest
+     * @return the {@code Flow.Publisher}
+     * @throws NullPointerException if the subject name is null
+     * @see #subscribeFlow(String, String, int)
+     */
+    Flow.Publisher<Message> subscribeFlow(String subject);
+
+    /**
+     * Returns a {@link Flow.Publisher} of the messages on a given subject, with each subscriber
+     * joining the given queue group.
+     *
+     * @param subject the subject of interest
+     * @param queue   the queue group
+     * @return the {@code Flow.Publisher}
+     * @throws NullPointerException if the subject name is null
+     * @see #subscribeFlow(String, String, int)
+     */
+    Flow.Publisher<Message> subscribeFlow(String subject, String queue);
+
+    /**
+     * Returns a {@link Flow.Publisher} of the messages on a given subject, optionally as part of
+     * a queue group. Subscribing to the publisher creates a new subscription, which is cancelled
+     * by {@link Flow.Subscription#cancel()}.
+     *
+     * <p>The server does not apply backpressure, so up to {@code prefetch} messages are queued
+     * ahead of demand. Beyond that, the subscription is a slow consumer and its
+     * {@link SlowConsumerPolicy} applies. The subscriber's {@code onComplete} is called when the
+     * subscription is removed, and its {@code onError} when the connection closes.
+     *
+     * @param subject  the subject of interest
+     * @param queue    the queue group, or {@code null}
+     * @param prefetch the maximum number of messages queued ahead of demand
+     * @return the {@code Flow.Publisher}
+     * @throws NullPointerException     if the subject name is null
+     * @throws IllegalArgumentException if {@code prefetch} is not positive
+     */
+    Flow.Publisher<Message> subscribeFlow(String subject, String queue, int prefetch);
+
     /**
      * Creates a new, uniquely named inbox with the prefix '_INBOX.'
      *
@@ -344,4 +387,22 @@ public interface AbstractConnection extends AutoCloseable {
      */
     int getPendingByteCount();
 
+    /**
+     * Returns the connection-wide budget of pending inbound message bytes shared by all
+     * subscriptions, or zero if it is unlimited.
+     *
+     * @return the pending inbound byte budget for this connection
+     * @see Options.Builder#pendingBytesBudget(long)
+     */
+    long getPendingBytesBudget();
+
+    /**
+     * Returns the number of inbound message bytes currently pending across all subscriptions on
+     * this connection. Use {@link Subscription#getPendingBytes()} for the usage of a single
+     * subscription.
+     *
+     * @return the number of inbound message bytes pending on this connection
+     */
+    long getPendingBytesUsed();
+
 }
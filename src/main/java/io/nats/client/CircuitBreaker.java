@@ -0,0 +1,358 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fails requests fast while their responders appear to be down. Each protected subject pattern
+ * has a circuit that counts the outcomes of its requests over a rolling window. Once at least
+ * {@code minimumRequests} have completed in the window and the share of them that timed out or
+ * failed reaches {@code failureRatio}, the circuit opens, and requests on the pattern fail at
+ * once with an {@code IOException} instead of waiting for their timeout.
+ *
+ * <p>After {@code openFor}, the circuit is half-open: up to {@code halfOpenProbes} requests are
+ * let through. If they all succeed the circuit closes again, and if any of them fails it opens
+ * for another {@code openFor}.
+ *
+ * <p>The settings apply to all patterns. Requests answered from a {@link ResponseCache}, and
+ * hedges, are not counted, and neither are cancelled requests.
+ *
+ * @see Options.Builder#circuitBreaker(CircuitBreaker)
+ */
+public final class CircuitBreaker {
+    static final int BUCKETS = 10;
+
+    /**
+     * The state of a circuit.
+     */
+    public enum State {
+        /** Requests are let through and their outcomes counted. */
+        CLOSED,
+        /** Requests fail at once. */
+        OPEN,
+        /** A limited number of probe requests are let through. */
+        HALF_OPEN
+    }
+
+    /**
+     * Receives the state changes of a breaker's circuits.
+     */
+    public interface Listener {
+        /**
+         * Called when a circuit changes state, on the thread that caused the change, which
+         * may be one of the client's threads. It must not block.
+         *
+         * @param pattern the pattern protected by the circuit
+         * @param from    the previous state
+         * @param to      the new state
+         */
+        void onStateChange(String pattern, State from, State to);
+    }
+
+    /*
+     * The circuit for one pattern, shared by all subjects that match it.
+     */
+    static final class Circuit {
+        final String pattern;
+        private final CircuitBreaker breaker;
+        // A rolling window of outcome counts, in buckets. Guarded by this.
+        private final long[] bucketSlot = new long[BUCKETS];
+        private final int[] successes = new int[BUCKETS];
+        private final int[] failures = new int[BUCKETS];
+        private State state = State.CLOSED;
+        // Bumped on every state change, so that outcomes of requests let through in an earlier
+        // state are not counted
+        private long epoch;
+        private long openedAt;
+        private int probes;
+        private int probeSuccesses;
+
+        Circuit(String pattern, CircuitBreaker breaker) {
+            this.pattern = pattern;
+            this.breaker = breaker;
+        }
+
+        // Returns the epoch to pass to the request's outcome, or -1 if the request must fail.
+        long allow() {
+            long allowed;
+            synchronized (this) {
+                switch (state) {
+                    case CLOSED:
+                        return epoch;
+                    case OPEN:
+                        if (System.nanoTime() - openedAt < breaker.openNanos) {
+                            return -1;
+                        }
+                        transition(State.HALF_OPEN);
+                        probes = 1;
+                        allowed = epoch;
+                        break;
+                    default:
+                        if (probes >= breaker.halfOpenProbes) {
+                            return -1;
+                        }
+                        probes++;
+                        return epoch;
+                }
+            }
+            breaker.fire(pattern, State.OPEN, State.HALF_OPEN);
+            return allowed;
+        }
+
+        void onSuccess(long requestEpoch) {
+            State from;
+            synchronized (this) {
+                if (requestEpoch != epoch) {
+                    return;
+                }
+                if (state == State.CLOSED) {
+                    successes[bucket()]++;
+                    return;
+                }
+                if (++probeSuccesses < breaker.halfOpenProbes) {
+                    return;
+                }
+                from = transition(State.CLOSED);
+            }
+            breaker.fire(pattern, from, State.CLOSED);
+        }
+
+        void onFailure(long requestEpoch) {
+            State from;
+            synchronized (this) {
+                if (requestEpoch != epoch) {
+                    return;
+                }
+                if (state == State.CLOSED) {
+                    failures[bucket()]++;
+                    if (!isTripped()) {
+                        return;
+                    }
+                }
+                from = transition(State.OPEN);
+                openedAt = System.nanoTime();
+            }
+            breaker.fire(pattern, from, State.OPEN);
+        }
+
+        // A request let through that said nothing about the responders, such as a cancelled one.
+        synchronized void onIgnored(long requestEpoch) {
+            if (requestEpoch == epoch && state == State.HALF_OPEN) {
+                probes--;
+            }
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        // Assumes the lock is held.
+        private State transition(State to) {
+            State from = state;
+            state = to;
+            epoch++;
+            probes = 0;
+            probeSuccesses = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                successes[i] = 0;
+                failures[i] = 0;
+            }
+            return from;
+        }
+
+        // Returns the index of the current bucket, clearing it if it held an older slot.
+        // Assumes the lock is held.
+        private int bucket() {
+            long slot = System.nanoTime() / (breaker.windowNanos / BUCKETS);
+            int index = (int) Math.floorMod(slot, (long) BUCKETS);
+            if (bucketSlot[index] != slot) {
+                bucketSlot[index] = slot;
+                successes[index] = 0;
+                failures[index] = 0;
+            }
+            return index;
+        }
+
+        // Assumes the lock is held.
+        private boolean isTripped() {
+            long oldest = System.nanoTime() / (breaker.windowNanos / BUCKETS) - BUCKETS;
+            int total = 0;
+            int failed = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (bucketSlot[i] > oldest) {
+                    total += successes[i] + failures[i];
+                    failed += failures[i];
+                }
+            }
+            return total >= breaker.minimumRequests
+                    && failed >= breaker.failureRatio * total;
+        }
+    }
+
+    private final List<Circuit> circuits = new CopyOnWriteArrayList<Circuit>();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile double failureRatio = 0.5;
+    private volatile int minimumRequests = 20;
+    private volatile long windowNanos = TimeUnit.SECONDS.toNanos(10);
+    private volatile long openNanos = TimeUnit.SECONDS.toNanos(5);
+    private volatile int halfOpenProbes = 3;
+    private volatile Listener listener;
+
+    /**
+     * Creates a breaker, which protects nothing until patterns are added with
+     * {@link #protect(String)}. By default a circuit opens when half of at least 20 requests in
+     * a 10 second window fail, stays open for 5 seconds, and closes after 3 successful probes.
+     */
+    public CircuitBreaker() {
+    }
+
+    /**
+     * Protects requests on subjects matching {@code pattern} with a circuit of their own.
+     *
+     * @param pattern the subject pattern, which may contain wildcards
+     * @return this breaker
+     */
+    public CircuitBreaker protect(String pattern) {
+        if (pattern == null) {
+            throw new NullPointerException("nats: pattern must not be null");
+        }
+        circuits.add(new Circuit(pattern, this));
+        return this;
+    }
+
+    /**
+     * Sets the share of failed requests in the window that opens a circuit. The default is 0.5.
+     *
+     * @param ratio the failure ratio, greater than 0 and at most 1
+     * @return this breaker
+     */
+    public CircuitBreaker failureRatio(double ratio) {
+        if (!(ratio > 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("nats: failure ratio must be between 0 and 1");
+        }
+        this.failureRatio = ratio;
+        return this;
+    }
+
+    /**
+     * Sets the number of requests that must complete in the window before a circuit can open.
+     * The default is 20.
+     *
+     * @param count the minimum number of requests
+     * @return this breaker
+     */
+    public CircuitBreaker minimumRequests(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("nats: minimum requests must be positive");
+        }
+        this.minimumRequests = count;
+        return this;
+    }
+
+    /**
+     * Sets the length of the rolling window over which outcomes are counted. The default is 10
+     * seconds.
+     *
+     * @param window the window length
+     * @param unit   the unit of {@code window}
+     * @return this breaker
+     */
+    public CircuitBreaker window(long window, TimeUnit unit) {
+        if (unit.toNanos(window) < BUCKETS) {
+            throw new IllegalArgumentException("nats: window too short");
+        }
+        this.windowNanos = unit.toNanos(window);
+        return this;
+    }
+
+    /**
+     * Sets how long an open circuit fails requests before letting probes through. The default
+     * is 5 seconds.
+     *
+     * @param duration how long a circuit stays open
+     * @param unit     the unit of {@code duration}
+     * @return this breaker
+     */
+    public CircuitBreaker openFor(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("nats: duration must not be negative");
+        }
+        this.openNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Sets the number of probe requests a half-open circuit lets through, all of which must
+     * succeed for it to close. The default is 3.
+     *
+     * @param probes the number of probes
+     * @return this breaker
+     */
+    public CircuitBreaker halfOpenProbes(int probes) {
+        if (probes <= 0) {
+            throw new IllegalArgumentException("nats: probes must be positive");
+        }
+        this.halfOpenProbes = probes;
+        return this;
+    }
+
+    /**
+     * Sets the listener told about state changes.
+     *
+     * @param listener the listener, or {@code null} for none
+     * @return this breaker
+     */
+    public CircuitBreaker listener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Returns the state of the circuit protecting requests on {@code subject}.
+     *
+     * @param subject the request subject
+     * @return the state, or {@code null} if {@code subject} is not protected
+     */
+    public State getState(String subject) {
+        Circuit circuit = getCircuit(subject);
+        return (circuit == null) ? null : circuit.getState();
+    }
+
+    /**
+     * Returns the number of requests failed because their circuit was open.
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    // Returns the circuit for subject, or null if it is not protected.
+    Circuit getCircuit(String subject) {
+        for (Circuit circuit : circuits) {
+            if (SubjectTrie.covers(circuit.pattern, subject)) {
+                return circuit;
+            }
+        }
+        return null;
+    }
+
+    void recordRejected() {
+        rejected.incrementAndGet();
+    }
+
+    void fire(String pattern, State from, State to) {
+        Listener current = listener;
+        if (current != null) {
+            current.onStateChange(pattern, from, to);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of outstanding requests on subjects matching a pattern. Each pattern has a
+ * limit that adapts to the round-trip times and failures observed for its requests, so that
+ * callers back off while a responder is degraded instead of piling more work onto it.
+ *
+ * <p>Two algorithms are available. {@link #aimd(String, int, int) AIMD} grows the limit by one
+ * for each limit's worth of successful replies and cuts it by 10% whenever a request fails,
+ * times out or is cancelled. {@link #gradient(String, int, int) Gradient} also compares each
+ * round-trip time with its long-term average and shrinks the limit as latency rises above it.
+ *
+ * <p>A request over the limit fails at once with an {@code IOException}, unless a queue has been
+ * configured with {@link #queue(int, long, TimeUnit)}, in which case it waits for a permit for a
+ * bounded time. Requests answered from a {@link ResponseCache}, and hedges, take no permit.
+ *
+ * @see Options.Builder#concurrencyLimiter(ConcurrencyLimiter)
+ */
+public final class ConcurrencyLimiter {
+    static final double BACKOFF_RATIO = 0.9;
+    // Weight of each round-trip time in the gradient's long-term average
+    static final double LONG_RTT_ALPHA = 0.05;
+    // Weight of each new gradient estimate in the limit
+    static final double SMOOTHING = 0.2;
+
+    static final int GRANTED = 0;
+    static final int QUEUED = 1;
+    static final int REJECTED = 2;
+
+    /*
+     * The adaptive limit for one pattern, shared by all subjects that match it.
+     */
+    static final class Limit {
+        final String pattern;
+        private final boolean gradient;
+        private final int maxLimit;
+        private final int maxQueued;
+        final long maxWaitNanos;
+        // Guarded by this
+        private double limit;
+        private int inFlight;
+        private double longRtt;
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+
+        Limit(String pattern, boolean gradient, int initialLimit, int maxLimit, int maxQueued,
+              long maxWaitNanos) {
+            this.pattern = pattern;
+            this.gradient = gradient;
+            this.limit = initialLimit;
+            this.maxLimit = maxLimit;
+            this.maxQueued = maxQueued;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        // Takes a permit and returns GRANTED if one is free. Otherwise queues grant, which is run
+        // once a permit is handed to it, and returns QUEUED, or REJECTED if the queue is full.
+        synchronized int acquire(Runnable grant) {
+            if (inFlight < (int) limit && queue.isEmpty()) {
+                inFlight++;
+                return GRANTED;
+            }
+            if (queue.size() < maxQueued) {
+                queue.add(grant);
+                return QUEUED;
+            }
+            return REJECTED;
+        }
+
+        // Removes grant from the queue, returning false if it was already granted.
+        synchronized boolean dequeue(Runnable grant) {
+            return queue.remove(grant);
+        }
+
+        // Returns a permit, adjusting the limit by the request's round-trip time and outcome.
+        // A negative rttNanos takes no sample.
+        void release(long rttNanos, boolean dropped) {
+            List<Runnable> granted = null;
+            synchronized (this) {
+                inFlight--;
+                if (rttNanos >= 0) {
+                    adjust(rttNanos, dropped);
+                }
+                while (inFlight < (int) limit && !queue.isEmpty()) {
+                    inFlight++;
+                    if (granted == null) {
+                        granted = new ArrayList<Runnable>();
+                    }
+                    granted.add(queue.poll());
+                }
+            }
+            if (granted != null) {
+                for (Runnable grant : granted) {
+                    grant.run();
+                }
+            }
+        }
+
+        // Assumes the lock is held.
+        private void adjust(long rttNanos, boolean dropped) {
+            double next;
+            if (dropped) {
+                next = limit * BACKOFF_RATIO;
+            } else if (!gradient) {
+                next = limit + 1 / limit;
+            } else {
+                longRtt = (longRtt == 0) ? rttNanos
+                        : longRtt * (1 - LONG_RTT_ALPHA) + rttNanos * LONG_RTT_ALPHA;
+                // Latency above the long-term average shrinks the limit, down to half
+                double ratio = Math.max(0.5, Math.min(1.0, longRtt / Math.max(1, rttNanos)));
+                double estimate = limit * ratio + Math.sqrt(limit);
+                next = limit * (1 - SMOOTHING) + estimate * SMOOTHING;
+            }
+            limit = Math.max(1, Math.min(maxLimit, next));
+        }
+
+        synchronized int getLimit() {
+            return (int) limit;
+        }
+
+        synchronized int getInFlight() {
+            return inFlight;
+        }
+
+        synchronized int getQueued() {
+            return queue.size();
+        }
+    }
+
+    private final List<Limit> limits = new CopyOnWriteArrayList<Limit>();
+    private final AtomicLong rejected = new AtomicLong();
+    // Queueing for the patterns added next
+    private int maxQueued;
+    private long maxWaitNanos;
+
+    /**
+     * Creates a limiter, which limits nothing until patterns are added with
+     * {@link #aimd(String, int, int)} or {@link #gradient(String, int, int)}.
+     */
+    public ConcurrencyLimiter() {
+    }
+
+    /**
+     * Limits requests on subjects matching {@code pattern} with an additive increase,
+     * multiplicative decrease limit.
+     *
+     * @param pattern      the subject pattern, which may contain wildcards
+     * @param initialLimit the limit to start from
+     * @param maxLimit     the highest the limit may grow to
+     * @return this limiter
+     * @throws IllegalArgumentException if a limit is not positive, or {@code initialLimit}
+     *                                  exceeds {@code maxLimit}
+     */
+    public ConcurrencyLimiter aimd(String pattern, int initialLimit, int maxLimit) {
+        return add(pattern, false, initialLimit, maxLimit);
+    }
+
+    /**
+     * Limits requests on subjects matching {@code pattern} with a limit that follows the ratio
+     * of the long-term average round-trip time to the latest one.
+     *
+     * @param pattern      the subject pattern, which may contain wildcards
+     * @param initialLimit the limit to start from
+     * @param maxLimit     the highest the limit may grow to
+     * @return this limiter
+     * @throws IllegalArgumentException if a limit is not positive, or {@code initialLimit}
+     *                                  exceeds {@code maxLimit}
+     */
+    public ConcurrencyLimiter gradient(String pattern, int initialLimit, int maxLimit) {
+        return add(pattern, true, initialLimit, maxLimit);
+    }
+
+    /**
+     * Lets up to {@code maxQueued} requests per pattern wait up to {@code maxWait} for a permit
+     * when the limit is reached, instead of failing at once. It applies to patterns added after
+     * this call. A request also stops waiting when its own timeout elapses.
+     *
+     * @param maxQueued the maximum number of waiting requests per pattern
+     * @param maxWait   how long a request may wait for a permit
+     * @param unit      the unit of {@code maxWait}
+     * @return this limiter
+     * @throws IllegalArgumentException if {@code maxQueued} or {@code maxWait} is negative
+     */
+    public synchronized ConcurrencyLimiter queue(int maxQueued, long maxWait, TimeUnit unit) {
+        if (maxQueued < 0 || maxWait < 0) {
+            throw new IllegalArgumentException("nats: queue size and wait must not be negative");
+        }
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        return this;
+    }
+
+    /**
+     * Returns the current limit for requests on {@code subject}.
+     *
+     * @param subject the request subject
+     * @return the limit, or -1 if {@code subject} is not limited
+     */
+    public int getLimit(String subject) {
+        Limit limit = getRule(subject);
+        return (limit == null) ? -1 : limit.getLimit();
+    }
+
+    /**
+     * Returns the number of outstanding requests counted against the limit for
+     * {@code subject}.
+     *
+     * @param subject the request subject
+     * @return the number of outstanding requests, or zero if {@code subject} is not limited
+     */
+    public int getInFlight(String subject) {
+        Limit limit = getRule(subject);
+        return (limit == null) ? 0 : limit.getInFlight();
+    }
+
+    /**
+     * Returns the number of requests failed because they were over the limit.
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    private synchronized ConcurrencyLimiter add(String pattern, boolean gradient, int initialLimit,
+                                   int maxLimit) {
+        if (pattern == null) {
+            throw new NullPointerException("nats: pattern must not be null");
+        }
+        if (initialLimit <= 0 || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("nats: invalid limits");
+        }
+        limits.add(new Limit(pattern, gradient, initialLimit, maxLimit, maxQueued,
+                maxWaitNanos));
+        return this;
+    }
+
+    // Returns the limit for subject, or null if it is not limited.
+    Limit getRule(String subject) {
+        for (Limit limit : limits) {
+            if (SubjectTrie.covers(limit.pattern, subject)) {
+                return limit;
+            }
+        }
+        return null;
+    }
+
+    void recordRejected() {
+        rejected.incrementAndGet();
+    }
+}
@@ -8,6 +8,8 @@ package io.nats.client;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -58,6 +60,19 @@ public interface Connection extends AbstractConnection {
      */
     void publish(Message msg) throws IOException;
 
+    /**
+     * Publishes a reply to {@code request} on its reply subject. The reply subject is written
+     * as received, without decoding it to a {@code String}, so that replying allocates nothing
+     * beyond the payload.
+     *
+     * @param request the request message being replied to
+     * @param data    the reply payload
+     * @throws IOException              if an I/O error is encountered
+     * @throws IllegalArgumentException if {@code request} has no reply subject
+     * @see Message#respond(byte[])
+     */
+    void publishReply(Message request, byte[] data) throws IOException;
+
     /**
      * Publishes the payload specified by {@code data} to the subject specified by {@code subject},
      * with an optional reply subject. If {@code reply} is {@code null}, the behavior is identical
@@ -158,4 +173,138 @@ public interface Connection extends AbstractConnection {
      */
     List<Message> requestMulti(String subject, byte[] data, long timeout, TimeUnit unit)
         throws IOException, InterruptedException;
+
+    /**
+     * Publishes a request message to the specified subject without waiting for the response. The
+     * returned future completes with the response message, or fails with a
+     * {@link java.util.concurrent.TimeoutException} if none arrives within {@code timeout} msec.
+     * Cancelling the future drops interest in the response.
+     *
+     * <p>No thread is held while the request is outstanding. The future is completed on one of
+     * the client's threads, so long-running dependent actions should use the
+     * {@code *Async} methods of {@link CompletableFuture}.
+     *
+     * @param subject the subject to publish the request message to
+     * @param data    the request message payload
+     * @param timeout how long to wait for a response message (in msec), or a negative value to
+     *                wait indefinitely
+     * @return a future for the response message
+     */
+    CompletableFuture<Message> requestAsync(String subject, byte[] data, long timeout);
+
+    /**
+     * Publishes a request message to the specified subject without waiting for the response, as
+     * {@link #requestAsync(String, byte[], long)} does.
+     *
+     * @param subject the subject to publish the request message to
+     * @param data    the request message payload
+     * @param timeout how long to wait for a response message, or a negative value to wait
+     *                indefinitely
+     * @param unit    the unit of {@code timeout}
+     * @return a future for the response message
+     */
+    CompletableFuture<Message> requestAsync(String subject, byte[] data, long timeout,
+                                            TimeUnit unit);
+
+    /**
+     * Publishes a request message to the specified subject without waiting for the response, as
+     * {@link #requestAsync(String, byte[], long, TimeUnit)} does, optionally resubmitting it after
+     * a reconnect. A resubmitted request is published again, under a fresh reply subject, once
+     * the connection is restored, since its first copy may never have reached the server. It
+     * still times out at its original deadline. This is only safe for idempotent requests.
+     *
+     * @param subject  the subject to publish the request message to
+     * @param data     the request message payload
+     * @param timeout  how long to wait for a response message, or a negative value to wait
+     *                 indefinitely
+     * @param unit     the unit of {@code timeout}
+     * @param resubmit whether to resubmit the request after a reconnect
+     * @return a future for the response message
+     * @see Options.Builder#resubmitOnReconnect(String)
+     */
+    CompletableFuture<Message> requestAsync(String subject, byte[] data, long timeout,
+                                            TimeUnit unit, boolean resubmit);
+
+    /**
+     * Publishes a request message to the specified subject and gathers the responses. The
+     * returned future completes with the responses received so far as soon as {@code policy} is
+     * satisfied, or when {@code timeout} elapses. Either way, interest in further responses is
+     * dropped at once. Cancelling the future also drops it.
+     *
+     * @param subject the subject to publish the request message to
+     * @param data    the request message payload
+     * @param policy  when enough responses have been received
+     * @param timeout how long to wait for responses, or a negative value to wait until
+     *                {@code policy} is satisfied
+     * @param unit    the unit of {@code timeout}
+     * @return a future for the responses, in order of arrival
+     */
+    CompletableFuture<List<Message>> scatterGather(String subject, byte[] data,
+                                                   GatherPolicy policy, long timeout,
+                                                   TimeUnit unit);
+
+    /**
+     * Publishes a request message to the specified subject and streams the responses to
+     * {@code handler} as they arrive, as {@link #scatterGather(String, byte[], GatherPolicy, long,
+     * TimeUnit)} does. The handler is invoked on the connection's reader thread, one response at
+     * a time, and must not block. If it throws, the future fails with that exception.
+     *
+     * @param subject the subject to publish the request message to
+     * @param data    the request message payload
+     * @param policy  when enough responses have been received
+     * @param timeout how long to wait for responses, or a negative value to wait until
+     *                {@code policy} is satisfied
+     * @param unit    the unit of {@code timeout}
+     * @param handler receives each response
+     * @return a future for the number of responses handled
+     */
+    CompletableFuture<Integer> scatterGather(String subject, byte[] data, GatherPolicy policy,
+                                             long timeout, TimeUnit unit, MessageHandler handler);
+
+    /**
+     * Publishes a batch of request messages, possibly to different subjects, without waiting
+     * for the responses. The requests are written back to back and go out in a single flush.
+     * Each one is otherwise handled as {@link #requestAsync(String, byte[], long, TimeUnit)}
+     * handles it, and the futures of the ones with no response fail individually with a
+     * {@link java.util.concurrent.TimeoutException} once {@code timeout} elapses.
+     *
+     * <p>Once {@code timeout} has elapsed, every future is done, so the partial results of the
+     * batch are those whose {@code getNow(null)} is not {@code null}.
+     *
+     * @param requests the requests to publish
+     * @param timeout  how long to wait for the responses, or a negative value to wait
+     *                 indefinitely
+     * @param unit     the unit of {@code timeout}
+     * @return a future for each request's response, in the order of {@code requests}
+     */
+    Map<RequestSpec, CompletableFuture<Message>> requestAll(List<RequestSpec> requests,
+                                                           long timeout, TimeUnit unit);
+
+    /**
+     * Publishes a request message and returns a stream over its reply, which the responder
+     * sends in chunks with a {@link ReplyOutputStream}. The reply may exceed the server's
+     * maximum payload. The responder is granted credit for a bounded number of chunks ahead of
+     * the reader, so that a slow reader holds back a fast responder.
+     *
+     * @param subject the subject to publish the request message to
+     * @param data    the request message payload
+     * @param timeout how long a read waits for the next chunk, or a negative value to wait
+     *                indefinitely
+     * @param unit    the unit of {@code timeout}
+     * @return a stream over the reply; closing it early cancels the reply
+     * @throws IOException if the request could not be published
+     */
+    ReplyInputStream requestStream(String subject, byte[] data, long timeout, TimeUnit unit)
+            throws IOException;
+
+    /**
+     * Returns a stream that sends a reply to {@code request} in chunks, to be read with
+     * {@link #requestStream(String, byte[], long, TimeUnit)}. Writes block while the requester
+     * has granted no credit, for up to 30 seconds.
+     *
+     * @param request the request message to reply to
+     * @return a stream for the reply, which must be closed to send the final chunk
+     * @throws IllegalArgumentException if {@code request} has no reply subject
+     */
+    ReplyOutputStream replyStream(Message request);
 }
@@ -15,10 +15,13 @@ import static io.nats.client.Nats.ConnState.RECONNECTING;
 import static io.nats.client.Nats.ERR_BAD_SUBJECT;
 import static io.nats.client.Nats.ERR_BAD_SUBSCRIPTION;
 import static io.nats.client.Nats.ERR_BAD_TIMEOUT;
+import static io.nats.client.Nats.ERR_CIRCUIT_OPEN;
 import static io.nats.client.Nats.ERR_CONNECTION_CLOSED;
 import static io.nats.client.Nats.ERR_CONNECTION_READ;
+import static io.nats.client.Nats.ERR_LOCAL_QUEUE;
 import static io.nats.client.Nats.ERR_MAX_PAYLOAD;
 import static io.nats.client.Nats.ERR_NO_INFO_RECEIVED;
+import static io.nats.client.Nats.ERR_NO_REPLY_SUBJECT;
 import static io.nats.client.Nats.ERR_NO_SERVERS;
 import static io.nats.client.Nats.ERR_RECONNECT_BUF_EXCEEDED;
 import static io.nats.client.Nats.ERR_SECURE_CONN_REQUIRED;
@@ -42,30 +45,43 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.Set;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,6 +91,7 @@ class ConnectionImpl implements Connection {
     private String version = null;
 
     private static final String INBOX_PREFIX = "_INBOX.";
+    private static final byte[] INBOX_PREFIX_BYTES = INBOX_PREFIX.getBytes();
 
     private ConnState status = DISCONNECTED;
 
@@ -160,6 +177,9 @@ class ConnectionImpl implements Connection {
     private ByteArrayOutputStream pending = null;
 
     private Map<Long, SubscriptionImpl> subs = new ConcurrentHashMap<Long, SubscriptionImpl>();
+    // Wildcard inbox subscription shared by all requests, created on first use.
+    private ResponseMux respMux;
+    private long respSid;
     private List<Srv> srvPool = null;
     private Map<String, URI> urls = null;
     private Exception lastEx = null;
@@ -179,6 +199,20 @@ class ConnectionImpl implements Connection {
 
     private Statistics stats = null;
     private List<BlockingQueue<Boolean>> pongs;
+    // When the oldest unanswered PING was sent, or zero, to measure round trip times
+    private long pingSentNanos;
+
+    // Inbound bytes pending across all subscriptions, bounded by Options.getPendingBytesBudget()
+    private PendingBudget budget;
+
+    // Shared server subscriptions, or null unless Options.isLocalRouting()
+    private SubjectRouter router;
+
+    // Subscriptions eligible for in-process delivery, or null unless Options.isLocalDelivery(),
+    // which rules out queue subscriptions. Only used while the server has agreed not to echo our
+    // messages.
+    private SubjectTrie<SubscriptionImpl> locals;
+    private boolean noEcho;
 
 
     private static final int NUM_CORE_THREADS = 4;
@@ -196,6 +230,34 @@ class ConnectionImpl implements Connection {
     private ExecutorService cbexec;
     static final String CB_EXEC_NAME = "jnats-callbacks";
 
+    // Timer for request timeouts and the ping timer, usually shared with other connections
+    private final HashedWheelTimer timer;
+
+    // Sends backup copies of slow requests, if enabled
+    private final Hedger hedger;
+
+    // Answers repeated idempotent requests, if enabled
+    private final ResponseCache cache;
+    // Adaptive limits on outstanding requests, if enabled
+    private final ConcurrencyLimiter limiter;
+    // Circuits failing requests fast while their responders are down, if enabled
+    private final CircuitBreaker breaker;
+    // Identical requests in flight, if coalescing is enabled
+    private final Map<RequestKey, Flight> flights;
+    // Subject patterns whose requests are resubmitted after a reconnect, if any
+    private final List<String> resubmitPatterns;
+    // Outstanding requests to publish again after a reconnect
+    private final Set<Resubmission> resubmissions =
+            Collections.newSetFromMap(new ConcurrentHashMap<Resubmission, Boolean>());
+    // Counts reconnects, to tell which connection a request was sent on. Guarded by mu
+    private long connEpoch;
+    // Invalidation subjects already subscribed to for the cache
+    private final Set<String> invalidations =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // Signalled by close() to cut short the wait between reconnect attempts
+    private final Condition reconnectCond = mu.newCondition();
+
     // The ping timer task
     private ScheduledFuture<?> ptmr = null;
     static final String PINGTIMER = "pingtimer";
@@ -222,6 +284,22 @@ class ConnectionImpl implements Connection {
         this.nc = this;
         this.opts = opts;
         this.stats = new Statistics();
+        this.budget = new PendingBudget(opts.getPendingBytesBudget());
+        if (opts.isLocalRouting()) {
+            this.router = new SubjectRouter();
+        }
+        if (opts.isLocalDelivery()) {
+            this.locals = new SubjectTrie<SubscriptionImpl>();
+        }
+        this.timer = (opts.getTimer() != null) ? opts.getTimer() : HashedWheelTimer.getDefault();
+        this.hedger = (opts.getHedgePolicy() != null) ? new Hedger(this, opts.getHedgePolicy())
+                : null;
+        this.cache = opts.getResponseCache();
+        this.limiter = opts.getConcurrencyLimiter();
+        this.breaker = opts.getCircuitBreaker();
+        this.flights = opts.isCoalesceRequests()
+                ? new ConcurrentHashMap<RequestKey, Flight>() : null;
+        this.resubmitPatterns = opts.getResubmitPatterns();
         if (opts.getFactory() != null) {
             tcf = opts.getFactory();
         } else {
@@ -252,6 +330,12 @@ class ConnectionImpl implements Connection {
         fch = createFlushChannel();
         pongs = createPongs();
         subs.clear();
+        if (router != null) {
+            router.clear();
+        }
+        if (locals != null) {
+            locals.clear();
+        }
 
         // predefine the start of the publish protocol message.
         buildPublishProtocolBuffer(Parser.MAX_CONTROL_LINE_SIZE);
@@ -386,9 +470,49 @@ class ConnectionImpl implements Connection {
             throw new IOException(ERR_NO_SERVERS);
         }
 
+        // Move the most promising of the other servers to the head of the list
+        if (opts.isLatencyAware() && srvPool.size() > 1) {
+            Srv best = null;
+            for (Srv s : srvPool) {
+                if (s != srv && (best == null || Srv.LATENCY_ORDER.compare(s, best) < 0)) {
+                    best = s;
+                }
+            }
+            srvPool.remove(best);
+            srvPool.add(0, best);
+        }
+
         return srvPool.get(0);
     }
 
+    /*
+     * Returns how long to wait between attempts on srv: the reconnect wait, or with a backoff, the
+     * reconnect wait doubled for each failed attempt, capped, and randomized between half and all
+     * of its length.
+     */
+    long reconnectWait(Srv srv) {
+        long wait = opts.getReconnectWait();
+        long max = opts.getMaxReconnectWait();
+        if (max <= 0) {
+            return wait;
+        }
+        for (int i = 0; i < srv.reconnects && wait < max; i++) {
+            wait *= 2;
+        }
+        wait = Math.min(wait, max);
+        long half = wait / 2;
+        return half + ThreadLocalRandom.current().nextLong(wait - half + 1);
+    }
+
+    // Folds a round trip time measured on the current connection into its server's. Lock is
+    // assumed held.
+    void recordRtt(long nanos) {
+        Srv srv = (srvPool == null) ? null : currentServer();
+        if (srv != null) {
+            srv.updateRtt(nanos);
+        }
+    }
+
     Connection connect() throws IOException {
         // Create actual socket connection
         // For first connect we walk all servers in the pool and try
@@ -399,40 +523,45 @@ class ConnectionImpl implements Connection {
 
         mu.lock();
         try {
-            for (Srv srv : srvPool) {
-                this.setUrl(srv.url);
+            if (opts.getConnectRaceStagger() > 0) {
+                returnedErr = raceConnect();
+            } else {
+                for (Srv srv : srvPool) {
+                    this.setUrl(srv.url);
 
-                try {
-                    logger.debug("Connecting to {}", this.getUrl());
-                    createConn();
-                    logger.debug("Connected to {}", this.getUrl());
-                    this.setup();
                     try {
-                        processConnectInit();
-                        srv.reconnects = 0;
-                        returnedErr = null;
-                        break;
-                    } catch (IOException e) {
-                        returnedErr = e;
-                        mu.unlock();
-                        close(DISCONNECTED, false);
-                        mu.lock();
-                        this.setUrl(null);
-                    } catch (InterruptedException e) {
-                        returnedErr = new IOException(e);
-                        mu.unlock();
-                        close(DISCONNECTED, false);
-                        mu.lock();
-                        this.setUrl(null);
-                    }
-                } catch (IOException e) { // createConn failed
-                    // Cancel out default connection refused, will trigger the
-                    // No servers error conditional
-                    if (e.getMessage() != null && e.getMessage().contains("Connection refused")) {
+                        logger.debug("Connecting to {}", this.getUrl());
+                        createConn();
+                        logger.debug("Connected to {}", this.getUrl());
+                        this.setup();
+                        try {
+                            processConnectInit();
+                            srv.reconnects = 0;
+                            returnedErr = null;
+                            break;
+                        } catch (IOException e) {
+                            returnedErr = e;
+                            mu.unlock();
+                            close(DISCONNECTED, false);
+                            mu.lock();
+                            this.setUrl(null);
+                        } catch (InterruptedException e) {
+                            returnedErr = new IOException(e);
+                            mu.unlock();
+                            close(DISCONNECTED, false);
+                            mu.lock();
+                            this.setUrl(null);
+                        }
+                    } catch (IOException e) { // createConn failed
+                        // Cancel out default connection refused, will trigger the
+                        // No servers error conditional
+                        if (e.getMessage() != null
+                                && e.getMessage().contains("Connection refused")) {
                             setLastError(null);
+                        }
                     }
-                }
-            } // for
+                } // for
+            }
 
             if ((returnedErr == null) && (this.status != CONNECTED)) {
                 returnedErr = new IOException(ERR_NO_SERVERS);
@@ -450,6 +579,94 @@ class ConnectionImpl implements Connection {
         }
     }
 
+    // Races connection attempts to the servers of the pool and takes over the first to complete
+    // the handshake. Returns the error if none did. Lock is assumed held.
+    private IOException raceConnect() {
+        ConnectionRace race = new ConnectionRace(this, tcf, opts);
+        ConnectionRace.Handshake winner;
+        try {
+            winner = race.run(new ArrayList<Srv>(srvPool));
+        } catch (IOException e) {
+            return e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new IOException(e);
+        }
+        this.setup();
+        try {
+            adopt(winner);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mu.unlock();
+            close(DISCONNECTED, false);
+            mu.lock();
+            this.setUrl(null);
+            return new IOException(e);
+        }
+        winner.srv.reconnects = 0;
+        return null;
+    }
+
+    // Races a reconnect to cur and to the other servers that may be retried now, and takes over
+    // the first to complete the handshake. Returns the server connected to, or null if every
+    // attempt failed. Lock is assumed held.
+    private Srv raceReconnect(Srv cur) throws InterruptedException {
+        List<Srv> candidates = new ArrayList<Srv>();
+        candidates.add(cur);
+        int maxReconnect = opts.getMaxReconnect();
+        for (Srv srv : srvPool) {
+            if (srv != cur && ((maxReconnect < 0) || (srv.reconnects < maxReconnect))
+                    && srv.timeSinceLastAttempt() >= reconnectWait(srv)) {
+                candidates.add(srv);
+            }
+        }
+        if (opts.isLatencyAware()) {
+            Collections.sort(candidates.subList(1, candidates.size()), Srv.LATENCY_ORDER);
+        }
+        ConnectionRace race = new ConnectionRace(this, tcf, opts);
+        try {
+            ConnectionRace.Handshake winner = race.run(candidates);
+            stats.incrementReconnects();
+            adopt(winner);
+            return winner.srv;
+        } catch (IOException e) {
+            logger.warn("couldn't reconnect to any of {} servers ({})", candidates.size(),
+                    e.getMessage());
+            setLastError(e);
+            status = RECONNECTING;
+            return null;
+        } finally {
+            // The attempt on cur was already counted
+            for (Srv srv : race.getStarted()) {
+                if (srv != cur) {
+                    srv.reconnects++;
+                }
+            }
+        }
+    }
+
+    // Takes over the connection of a raced handshake, leaving it as createConn() and
+    // processConnectInit() would have. Lock is assumed held.
+    void adopt(ConnectionRace.Handshake handshake) throws InterruptedException {
+        this.setUrl(handshake.srv.url);
+        if ((pending != null) && (bw != null)) {
+            try {
+                bw.flush();
+            } catch (IOException e) {
+                logger.warn(ERR_TCP_FLUSH_FAILED);
+            }
+        }
+        conn = handshake.conn;
+        bw = conn.getOutputStream(DEFAULT_STREAM_BUF_SIZE);
+        br = conn.getInputStream(DEFAULT_STREAM_BUF_SIZE);
+        processInfo(handshake.info);
+        noEcho = handshake.noEcho;
+        status = CONNECTED;
+        this.setActualPingsOutstanding(0);
+        pingSentNanos = 0;
+        spinUpSocketWatchers();
+    }
+
     /*
      * createConn will connect to the server and wrap the appropriate bufio structures. A new
      * connection is always created.
@@ -548,6 +765,7 @@ class ConnectionImpl implements Connection {
     private void close(ConnState closeState, boolean doCBs) {
         logger.debug("close({}, {})", closeState, String.valueOf(doCBs));
         final ConnectionImpl nc = this;
+        ResponseMux mux;
 
         mu.lock();
         try {
@@ -568,6 +786,14 @@ class ConnectionImpl implements Connection {
             // Clear any queued pongs, e.g. pending flush calls.
             clearPendingFlushCalls();
 
+            // Release a reconnect loop waiting to try again
+            reconnectCond.signalAll();
+
+            // The timer outlives the connection, so stop pinging
+            if (ptmr != null) {
+                ptmr.cancel(true);
+            }
+
             // Go ahead and make sure we have flushed the outbound
             if (conn != null) {
                 try {
@@ -598,6 +824,14 @@ class ConnectionImpl implements Connection {
                 }
             }
             subs.clear();
+            if (router != null) {
+                router.clear();
+            }
+            if (locals != null) {
+                locals.clear();
+            }
+            mux = respMux;
+            respMux = null;
 
             // perform appropriate callback if needed for a disconnect;
             if (doCBs) {
@@ -641,6 +875,11 @@ class ConnectionImpl implements Connection {
         } finally {
             mu.unlock();
         }
+
+        // Release requests still waiting for replies
+        if (mux != null) {
+            mux.failAll(new IllegalStateException(ERR_CONNECTION_CLOSED));
+        }
     }
 
     void shutdownAndAwaitTermination(ExecutorService pool, String name) {
@@ -670,6 +909,7 @@ class ConnectionImpl implements Connection {
 
         // Reset the number of PINGs sent out
         this.setActualPingsOutstanding(0);
+        pingSentNanos = 0;
 
         // Start the readLoop and flusher threads
         spinUpSocketWatchers();
@@ -744,6 +984,10 @@ class ConnectionImpl implements Connection {
                 ch = pongs.get(0);
                 pongs.remove(0);
             }
+            if (pingSentNanos != 0) {
+                recordRtt(System.nanoTime() - pingSentNanos);
+                pingSentNanos = 0;
+            }
             setActualPingsOutstanding(0);
         } finally {
             mu.unlock();
@@ -977,14 +1221,16 @@ class ConnectionImpl implements Connection {
                 // we just got disconnected from.
 
                 long timeSinceLastAttempt = cur.timeSinceLastAttempt();
-                if (timeSinceLastAttempt < opts.getReconnectWait()) {
-                    sleepTime = opts.getReconnectWait() - timeSinceLastAttempt;
+                long reconnectWait = reconnectWait(cur);
+                if (timeSinceLastAttempt < reconnectWait) {
+                    sleepTime = reconnectWait - timeSinceLastAttempt;
                 }
 
-                if (sleepTime > 0) {
-                    mu.unlock();
-                    Thread.sleep(sleepTime);
-                    mu.lockInterruptibly();
+                // Waits without holding the lock, and wakes up early if closed
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sleepTime);
+                long remaining;
+                while (!isClosed() && (remaining = deadline - System.nanoTime()) > 0) {
+                    reconnectCond.awaitNanos(remaining);
                 }
 
                 // Check if we have been closed first.
@@ -996,32 +1242,40 @@ class ConnectionImpl implements Connection {
                 // Mark that we tried a reconnect
                 cur.reconnects++;
 
-                // try to create a new connection
-                try {
-//                    conn.teardown();
-                    createConn();
-                } catch (Exception e) {
-//                    conn.teardown();
-                    logger.trace("doReconnect: createConn() failed for {}", cur);
-                    logger.trace("createConn failed", e);
-                    // not yet connected, retry and hold
-                    // the lock.
-                    setLastError(null);
-                    continue;
-                }
+                if (opts.getConnectRaceStagger() > 0) {
+                    // Race cur against the other servers, and carry on with the winner
+                    cur = raceReconnect(cur);
+                    if (cur == null) {
+                        continue;
+                    }
+                } else {
+                    // try to create a new connection
+                    try {
+//                        conn.teardown();
+                        createConn();
+                    } catch (Exception e) {
+//                        conn.teardown();
+                        logger.trace("doReconnect: createConn() failed for {}", cur);
+                        logger.trace("createConn failed", e);
+                        // not yet connected, retry and hold
+                        // the lock.
+                        setLastError(null);
+                        continue;
+                    }
 
-                // We are reconnected.
-                stats.incrementReconnects();
+                    // We are reconnected.
+                    stats.incrementReconnects();
 
-                // Process connect logic
-                try {
-                    processConnectInit();
-                } catch (IOException e) {
-//                    conn.teardown();
-                    logger.warn("couldn't connect to {} ({})", cur.url, e.getMessage());
-                    setLastError(e);
-                    status = RECONNECTING;
-                    continue;
+                    // Process connect logic
+                    try {
+                        processConnectInit();
+                    } catch (IOException e) {
+//                        conn.teardown();
+                        logger.warn("couldn't connect to {} ({})", cur.url, e.getMessage());
+                        setLastError(e);
+                        status = RECONNECTING;
+                        continue;
+                    }
                 }
 
                 logger.trace("Successful reconnect; Resetting reconnects for {}", cur);
@@ -1052,6 +1306,9 @@ class ConnectionImpl implements Connection {
                 // This is where we are truly connected.
                 status = CONNECTED;
 
+                // Publish again the requests that may have been lost with the old connection
+                resubmitInFlight();
+
                 // Queue up the reconnect callback.
                 if (opts.getReconnectedCallback() != null) {
                     logger.trace("Scheduling reconnectedCb from doReconnect()");
@@ -1157,6 +1414,7 @@ class ConnectionImpl implements Connection {
         }
 
         // Send PING
+        long pingNanos = System.nanoTime();
         bw.write(pingProtoBytes, 0, pingProtoBytesLen);
         bw.flush();
 
@@ -1166,7 +1424,15 @@ class ConnectionImpl implements Connection {
         } catch (IOException e) {
             throw new IOException(ERR_CONNECTION_READ, e);
         }
+        checkPong(line);
+        recordRtt(System.nanoTime() - pingNanos);
+
+        // This is where we are truly connected.
+        status = CONNECTED;
+    }
 
+    // Checks the server's response to the PING that ends the handshake.
+    static void checkPong(String line) throws IOException {
         // We expect a PONG
         if (!PONG_PROTO.trim().equals(line)) {
             // But it could be something else, like -ERR
@@ -1181,9 +1447,6 @@ class ConnectionImpl implements Connection {
             // Notify that we got an unexpected protocol.
             throw new IOException(String.format("nats: expected '%s', got '%s'", _PONG_OP_, line));
         }
-
-        // This is where we are truly connected.
-        status = CONNECTED;
     }
 
     // This function is only used during the initial connection process
@@ -1213,7 +1476,25 @@ class ConnectionImpl implements Connection {
     // Generate a connect protocol message, issuing user/password if
     // applicable. The lock is assumed to be held upon entering.
     String connectProto() {
-        String userInfo = getUrl().getUserInfo();
+        // Local delivery replaces the server's echo of our own messages, so it is only enabled if
+        // the server lets us turn echo off.
+        noEcho = disablesEcho(this.info);
+        if (locals != null && !noEcho) {
+            logger.warn("nats: server does not support disabling echo, "
+                    + "local delivery disabled");
+        }
+        return connectProto(getUrl(), noEcho);
+    }
+
+    // Returns whether to turn echo off on a server that sent serverInfo.
+    boolean disablesEcho(ServerInfo serverInfo) {
+        return locals != null && serverInfo != null && serverInfo.getProto() >= 1;
+    }
+
+    // Generates the CONNECT protocol for a server at url, without reading or changing the state
+    // of the current connection.
+    String connectProto(URI url, boolean disableEcho) {
+        String userInfo = url.getUserInfo();
         String user = null;
         String pass = null;
         String token = null;
@@ -1243,7 +1524,7 @@ class ConnectionImpl implements Connection {
 
         ConnectInfo info = new ConnectInfo(opts.isVerbose(), opts.isPedantic(), user, pass, token,
                 opts.isSecure(), opts.getConnectionName(), LANG_STRING, version,
-                ClientProto.CLIENT_PROTO_INFO);
+                ClientProto.CLIENT_PROTO_INFO, disableEcho ? Boolean.FALSE : null);
 
         return String.format(CONN_PROTO, info);
     }
@@ -1404,13 +1685,13 @@ class ConnectionImpl implements Connection {
             sub.lock();
             try {
                 mch = sub.getChannel();
-                while (mch.size() == 0 && !sub.isClosed()) {
+                while ((mch == null || mch.size() == 0) && !sub.isClosed()) {
                     sub.pCond.await();
+                    mch = sub.getChannel();
                 }
-                msg = mch.poll();
+                msg = (mch == null) ? null : mch.poll();
                 if (msg != null) {
-                    sub.pMsgs--;
-                    sub.pBytes -= (msg.getData() == null ? 0 : msg.getData().length);
+                    sub.removePending(msg.getData() == null ? 0 : msg.getData().length);
                 }
 
                 mcb = sub.getMessageHandler();
@@ -1455,83 +1736,224 @@ class ConnectionImpl implements Connection {
      */
     void processMsg(byte[] data, int offset, int length) {
         SubscriptionImpl sub;
+        ResponseMux mux = null;
+        Message reply = null;
 
         mu.lock();
         try {
             stats.incrementInMsgs();
             stats.incrementInBytes(length);
 
+            if (respMux != null && parser.ps.ma.sid == respSid) {
+                // Handed to the waiting request once the lock is released
+                mux = respMux;
+                reply = new Message(parser.ps.ma, null, data, offset, length);
+                return;
+            }
+
             sub = subs.get(parser.ps.ma.sid);
             if (sub == null) {
+                if (router != null) {
+                    routeMsg(data, offset, length);
+                }
                 return;
             }
 
             // Doing message create outside of the sub's lock to reduce contention.
             // It's possible that we end up not using the message, but that's ok.
             Message msg = new Message(parser.ps.ma, sub, data, offset, length);
+            deliverMsg(sub, msg);
+        } finally {
+            mu.unlock();
+            if (mux != null) {
+                mux.dispatch(reply);
+            }
+        }
+    }
 
-            sub.lock();
-            try {
-                sub.pMsgs++;
-                if (sub.pMsgs > sub.pMsgsMax) {
-                    sub.pMsgsMax = sub.pMsgs;
-                }
-                sub.pBytes += (msg.getData() == null ? 0 : msg.getData().length);
-                if (sub.pBytes > sub.pBytesMax) {
-                    sub.pBytesMax = sub.pBytes;
-                }
+    // Fans a message received on a shared server subscription out to the local subscriptions on
+    // that route whose subjects match it. The payload is copied once and shared. Assumes the
+    // connection lock is held.
+    void routeMsg(byte[] data, int offset, int length) {
+        SubjectRouter.Route route = router.getRoute(parser.ps.ma.sid);
+        if (route == null) {
+            return;
+        }
+        Message shared = new Message(parser.ps.ma, null, data, offset, length);
+        for (SubscriptionImpl member : router.match(shared.getSubject())) {
+            if (member.route == route) {
+                deliverMsg(member, new Message(shared, member));
+            }
+        }
+    }
 
-                // Check for a Slow Consumer
-                if ((sub.pMsgsLimit > 0 && sub.pMsgs > sub.pMsgsLimit)
-                        || (sub.pBytesLimit > 0 && sub.pBytes > sub.pBytesLimit)) {
-                    handleSlowConsumer(sub, msg);
-                } else {
-                    // We use mch for everything, unlike Go client
-                    if (sub.getChannel() != null) {
-                        if (sub.getChannel().add(msg)) {
-                            sub.pCond.signal();
-                            // Clear Slow Consumer status
-                            sub.setSlowConsumer(false);
-                        } else {
-                            handleSlowConsumer(sub, msg);
-                        }
+    // Hands a message published on this connection to the matching local subscriptions, sharing
+    // the publisher's arrays. Returns it if it is a reply to one of this connection's requests,
+    // to be handed to the response mux once the lock is released, or else null. Assumes the
+    // connection lock is held.
+    Message deliverLocal(byte[] subject, byte[] reply, byte[] data) {
+        Message shared = null;
+        if (locals.size() > 0) {
+            shared = Message.shared(subject, reply, data, null);
+            List<SubscriptionImpl> matches = locals.match(shared.getSubject());
+            for (SubscriptionImpl sub : matches) {
+                deliverMsg(sub, new Message(shared, sub));
+            }
+        }
+        if (respMux == null || !respMux.owns(subject)) {
+            return null;
+        }
+        return (shared != null) ? shared : Message.shared(subject, reply, data, null);
+    }
+
+    // Queues msg on sub, applying the slow consumer policy if needed. Assumes the connection lock
+    // is held.
+    void deliverMsg(SubscriptionImpl sub, Message msg) {
+        sub.lock();
+        try {
+            sub.addPending(msg.getData() == null ? 0 : msg.getData().length);
+
+            // Check for a Slow Consumer, including one hogging the connection budget
+            if (sub.isOverPendingLimits()) {
+                handleSlowConsumer(sub, msg);
+            } else {
+                // We use mch for everything, unlike Go client
+                if (sub.getChannel() != null) {
+                    if (sub.getChannel().add(msg)) {
+                        sub.signalMsg();
+                        // Clear Slow Consumer status
+                        sub.setSlowConsumer(false);
+                    } else {
+                        handleSlowConsumer(sub, msg);
                     }
                 }
-            } finally {
-                sub.unlock();
             }
         } finally {
-            mu.unlock();
+            sub.unlock();
         }
     }
 
-    // Assumes you already have the lock
+    // Applies the subscription's slow consumer policy to msg, which has already been counted
+    // against the pending stats. Assumes you already have the lock
     void handleSlowConsumer(SubscriptionImpl sub, Message msg) {
-        sub.dropped++;
         processSlowConsumer(sub);
-        sub.pMsgs--;
-        if (msg.getData() != null) {
-            sub.pBytes -= msg.getData().length;
+        switch (sub.scPolicy) {
+            case DROP_OLDEST:
+                if (dropOldest(sub, msg)) {
+                    return;
+                }
+                break;
+            case ERROR:
+                terminateSlowConsumer(sub, msg);
+                return;
+            default:
+                break;
+        }
+        int size = (msg.getData() == null ? 0 : msg.getData().length);
+        sub.recordDropped(size);
+        sub.removePending(size);
+    }
+
+    // Evicts queued messages, oldest first, until msg fits within the pending limits and then
+    // queues it. Returns false if msg could not be queued, in which case it is still counted in
+    // the pending stats. Assumes the sub lock is held.
+    boolean dropOldest(SubscriptionImpl sub, Message msg) {
+        BlockingQueue<Message> mch = sub.getChannel();
+        if (mch == null) {
+            return false;
+        }
+        while (sub.isOverPendingLimits()) {
+            if (!evictOldest(sub, mch)) {
+                return false;
+            }
         }
+        while (!mch.offer(msg)) {
+            if (!evictOldest(sub, mch)) {
+                return false;
+            }
+        }
+        sub.signalMsg();
+        return true;
+    }
+
+    private boolean evictOldest(SubscriptionImpl sub, BlockingQueue<Message> mch) {
+        Message oldest = mch.poll();
+        if (oldest == null) {
+            return false;
+        }
+        int size = (oldest.getData() == null ? 0 : oldest.getData().length);
+        sub.recordDropped(size);
+        sub.removePending(size);
+        return true;
+    }
+
+    // Discards msg and everything still queued, then removes the subscription and tells the
+    // server. Assumes both the connection lock and the sub lock are held.
+    void terminateSlowConsumer(SubscriptionImpl sub, Message msg) {
+        sub.recordDropped(msg.getData() == null ? 0 : msg.getData().length);
+        BlockingQueue<Message> mch = sub.getChannel();
+        if (mch != null) {
+            Message queued;
+            while ((queued = mch.poll()) != null) {
+                sub.recordDropped(queued.getData() == null ? 0 : queued.getData().length);
+            }
+        }
+        sub.leaveBudget();
+        sub.pMsgs = 0;
+        sub.pBytes = 0;
+        // A routed subscription has no server subscription of its own
+        boolean routed = (sub.route != null);
+        removeSub(sub);
+        if (!routed && !reconnecting()) {
+            try {
+                writeUnsubProto(sub, 0);
+            } catch (IOException e) {
+                setLastError(e);
+            }
+        }
+        kickFlusher();
     }
 
     void removeSub(SubscriptionImpl sub) {
         subs.remove(sub.getSid());
+        if (sub.route != null) {
+            unroute(sub);
+        }
+        if (locals != null) {
+            locals.remove(sub.getSubject(), sub);
+        }
         sub.lock();
         try {
             if (sub.getChannel() != null) {
                 sub.mch.clear();
                 sub.mch = null;
             }
+            sub.leaveBudget();
 
             // Mark as invalid
             sub.setConnection(null);
             sub.closed = true;
+            // Release an async delivery thread waiting for messages
+            sub.pCond.signal();
         } finally {
             sub.unlock();
         }
     }
 
+    // Detaches sub from its shared server subscription, cancelling that subscription once nobody
+    // is left on it. Assumes the connection lock is held.
+    void unroute(SubscriptionImpl sub) {
+        SubjectRouter.Route empty = router.detach(sub);
+        if (empty != null && !reconnecting()) {
+            try {
+                writeUnsubProto(empty.sid, 0);
+            } catch (IOException e) {
+                setLastError(e);
+            }
+            kickFlusher();
+        }
+    }
+
     // processSlowConsumer will set SlowConsumer state and fire the
     // async error handler if registered.
     void processSlowConsumer(SubscriptionImpl sub) {
@@ -1597,6 +2019,11 @@ class ConnectionImpl implements Connection {
             pongs.add(ch);
         }
 
+        // Time the oldest unanswered PING, which the next PONG answers
+        if (pingSentNanos == 0) {
+            pingSentNanos = System.nanoTime();
+        }
+
         try {
             bw.write(pingProtoBytes, 0, pingProtoBytesLen);
             bw.flush();
@@ -1610,9 +2037,15 @@ class ConnectionImpl implements Connection {
     }
 
     ScheduledFuture<?> createPingTimer() {
-        PingTimerTask pinger = new PingTimerTask();
-        return exec.scheduleWithFixedDelay(pinger, opts.getPingInterval(),
-                opts.getPingInterval(), TimeUnit.MILLISECONDS);
+        final PingTimerTask pinger = new PingTimerTask();
+        // The timer thread may be shared, so the ping itself runs on this connection's executor
+        return timer.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                if (!executeTask(pinger)) {
+                    logger.trace("nats: ping skipped, executor is shut down");
+                }
+            }
+        }, opts.getPingInterval(), opts.getPingInterval(), TimeUnit.MILLISECONDS);
     }
 
     void resetPingTimer() {
@@ -1633,7 +2066,11 @@ class ConnectionImpl implements Connection {
     }
 
     void writeUnsubProto(SubscriptionImpl sub, long max) throws IOException {
-        String str = String.format(UNSUB_PROTO, sub.getSid(), max > 0 ? Long.toString(max) : "");
+        writeUnsubProto(sub.getSid(), max);
+    }
+
+    void writeUnsubProto(long sid, long max) throws IOException {
+        String str = String.format(UNSUB_PROTO, sid, max > 0 ? Long.toString(max) : "");
         str = str.replaceAll(" +\r\n", "\r\n");
         byte[] unsub = str.getBytes();
         bw.write(unsub);
@@ -1643,6 +2080,37 @@ class ConnectionImpl implements Connection {
         unsubscribe(sub, (long) max);
     }
 
+    // Withdraws or restores the server's interest in sub while keeping it registered, so that
+    // messages already sent to it are still delivered. Returns false for a subscription that
+    // shares a routed server subscription or has been removed.
+    boolean setInterest(SubscriptionImpl sub, boolean interested) throws IOException {
+        mu.lock();
+        try {
+            if (isClosed()) {
+                throw new IllegalStateException(ERR_CONNECTION_CLOSED);
+            }
+            if (sub.route != null || subs.get(sub.getSid()) != sub) {
+                return false;
+            }
+            if (sub.paused != interested) {
+                return true;
+            }
+            sub.paused = !interested;
+            // Otherwise resendSubscriptions takes care of it
+            if (!reconnecting()) {
+                if (interested) {
+                    sendSubscriptionMessage(sub);
+                } else {
+                    writeUnsubProto(sub, 0);
+                }
+                kickFlusher();
+            }
+            return true;
+        } finally {
+            mu.unlock();
+        }
+    }
+
     // unsubscribe performs the low level unsubscribe to the server.
     // Use SubscriptionImpl.unsubscribe()
     protected void unsubscribe(SubscriptionImpl sub, long max) throws IOException {
@@ -1658,6 +2126,10 @@ class ConnectionImpl implements Connection {
                 return;
             }
 
+            // Routed subscriptions share a server subscription, so their max is only enforced
+            // locally, on delivery.
+            boolean routed = (subscription.route != null);
+
             // If the autounsubscribe max is > 0, set that on the subscription
             if (max > 0) {
                 subscription.setMax(max);
@@ -1667,7 +2139,7 @@ class ConnectionImpl implements Connection {
 
             // We will send all subscriptions when reconnecting
             // so that we can suppress here.
-            if (!reconnecting()) {
+            if (!routed && !reconnecting()) {
                 writeUnsubProto(subscription, max);
             }
 
@@ -1789,6 +2261,11 @@ class ConnectionImpl implements Connection {
                 sub.unlock();
             }
 
+            // Shared server subscriptions are resent below, and paused ones once resumed
+            if (sub.route != null || sub.paused) {
+                continue;
+            }
+
             sendSubscriptionMessage(sub);
             if (adjustedMax > 0) {
                 try {
@@ -1799,6 +2276,14 @@ class ConnectionImpl implements Connection {
                 }
             }
         }
+        if (router != null) {
+            for (SubjectRouter.Route route : router.getRoutes()) {
+                sendSubscriptionMessage(route.subject, null, route.sid);
+            }
+        }
+        if (respMux != null) {
+            sendSubscriptionMessage(respMux.getSubject(), null, respSid);
+        }
     }
 
     /**
@@ -1823,6 +2308,7 @@ class ConnectionImpl implements Connection {
             if (cb == null && ch == null) {
                 throw new IllegalArgumentException(ERR_BAD_SUBSCRIPTION);
             }
+            checkQueue(queue);
 
             if (cb != null) {
                 sub = new AsyncSubscriptionImpl(this, subject, queue, cb);
@@ -1844,15 +2330,7 @@ class ConnectionImpl implements Connection {
                 sub.setChannel(ch);
             }
 
-            // Sets sid and adds to subs map
-            addSubscription(sub);
-
-            // Send SUB proto
-            if (!reconnecting()) {
-                sendSubscriptionMessage(sub);
-            }
-
-            kickFlusher();
+            registerSubscription(sub);
 
             return sub;
         } finally {
@@ -1860,44 +2338,161 @@ class ConnectionImpl implements Connection {
         }
     }
 
-    @Override
-    public SyncSubscription subscribe(String subject) {
-        return subscribeSync(subject, null);
+    // Local delivery turns the server's echo off, so a queue subscription would miss this
+    // connection's own messages. There is no telling whether another member of its group would
+    // receive them instead, so it is refused rather than left to lose them.
+    private void checkQueue(String queue) {
+        if (queue != null && locals != null) {
+            throw new IllegalArgumentException(ERR_LOCAL_QUEUE);
+        }
     }
 
-    @Override
-    public SyncSubscription subscribe(String subject, String queue) {
-        return subscribeSync(subject, queue);
-    }
+    // Sets the sid, adds sub to the subs map and sends the SUB proto, or shares an existing server
+    // subscription. Assumes the connection lock is held.
+    void registerSubscription(SubscriptionImpl sub) {
+        String queue = sub.getQueue();
+        addSubscription(sub);
+        if (locals != null) {
+            locals.insert(sub.getSubject(), sub);
+        }
 
-    @Override
-    public AsyncSubscription subscribe(String subject, MessageHandler cb) {
-        return subscribe(subject, null, cb);
-    }
+        // Send SUB proto, or share an existing server subscription
+        if (router != null && queue == null) {
+            route(sub);
+        } else if (!reconnecting()) {
+            sendSubscriptionMessage(sub);
+        }
 
-    @Override
-    public AsyncSubscription subscribe(String subj, String queue, MessageHandler cb) {
-        return (AsyncSubscriptionImpl) subscribe(subj, queue, cb, null);
+        kickFlusher();
     }
 
     @Override
-    @Deprecated
-    public AsyncSubscription subscribeAsync(String subject, String queue, MessageHandler cb) {
-        return (AsyncSubscriptionImpl) subscribe(subject, queue, cb, null);
+    public Flow.Publisher<Message> subscribeFlow(String subject) {
+        return subscribeFlow(subject, null);
     }
 
     @Override
-    @Deprecated
-    public AsyncSubscription subscribeAsync(String subj, MessageHandler cb) {
-        return subscribe(subj, null, cb);
+    public Flow.Publisher<Message> subscribeFlow(String subject, String queue) {
+        return subscribeFlow(subject, queue, SubscriptionImpl.DEFAULT_MAX_PENDING_MSGS);
     }
 
-    private void addSubscription(SubscriptionImpl sub) {
-        sub.setSid(sidCounter.incrementAndGet());
-        subs.put(sub.getSid(), sub);
+    @Override
+    public Flow.Publisher<Message> subscribeFlow(final String subject, final String queue,
+                                                 final int prefetch) {
+        if (subject == null) {
+            throw new NullPointerException(ERR_BAD_SUBJECT);
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("nats: prefetch must be positive");
+        }
+        checkQueue(queue);
+        return new Flow.Publisher<Message>() {
+            @Override
+            public void subscribe(Flow.Subscriber<? super Message> subscriber) {
+                subscribeFlow(subject, queue, prefetch, subscriber);
+            }
+        };
     }
 
-    @Override
+    // Starts a new server subscription feeding subscriber, signalling onSubscribe first as the
+    // Flow contract requires.
+    void subscribeFlow(String subject, String queue, int prefetch,
+                       Flow.Subscriber<? super Message> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("nats: subscriber cannot be null");
+        }
+        final FlowSubscriptionImpl sub =
+                new FlowSubscriptionImpl(this, subject, queue, subscriber, prefetch);
+        boolean registered = false;
+        mu.lock();
+        try {
+            if (!closed()) {
+                registerSubscription(sub);
+                registered = true;
+            }
+        } finally {
+            mu.unlock();
+        }
+
+        subscriber.onSubscribe(sub);
+        if (registered) {
+            try {
+                subexec.submit(new Runnable() {
+                    public void run() {
+                        sub.deliver();
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                // Closed in the meantime
+            }
+        }
+        sub.lock();
+        try {
+            sub.closed = true;
+        } finally {
+            sub.unlock();
+        }
+        subscriber.onError(new IllegalStateException(ERR_CONNECTION_CLOSED));
+    }
+
+    @Override
+    public SyncSubscription subscribe(String subject) {
+        return subscribeSync(subject, null);
+    }
+
+    @Override
+    public SyncSubscription subscribe(String subject, String queue) {
+        return subscribeSync(subject, queue);
+    }
+
+    @Override
+    public AsyncSubscription subscribe(String subject, MessageHandler cb) {
+        return subscribe(subject, null, cb);
+    }
+
+    @Override
+    public AsyncSubscription subscribe(String subj, String queue, MessageHandler cb) {
+        return (AsyncSubscriptionImpl) subscribe(subj, queue, cb, null);
+    }
+
+    @Override
+    @Deprecated
+    public AsyncSubscription subscribeAsync(String subject, String queue, MessageHandler cb) {
+        return (AsyncSubscriptionImpl) subscribe(subject, queue, cb, null);
+    }
+
+    @Override
+    @Deprecated
+    public AsyncSubscription subscribeAsync(String subj, MessageHandler cb) {
+        return subscribe(subj, null, cb);
+    }
+
+    // Attaches sub to a server subscription covering its subject, creating one if there is none.
+    // Assumes the connection lock is held.
+    void route(SubscriptionImpl sub) {
+        SubjectRouter.Route route = router.find(sub.getSubject());
+        if (route == null) {
+            route = router.addRoute(sidCounter.incrementAndGet(), sub.getSubject());
+            if (!reconnecting()) {
+                sendSubscriptionMessage(route.subject, null, route.sid);
+            }
+        }
+        router.attach(route, sub);
+    }
+
+    private void addSubscription(SubscriptionImpl sub) {
+        sub.setSid(sidCounter.incrementAndGet());
+        sub.lock();
+        try {
+            sub.joinBudget(budget);
+        } finally {
+            sub.unlock();
+        }
+        subs.put(sub.getSid(), sub);
+    }
+
+    @Override
     public SyncSubscription subscribeSync(String subject, String queue) {
         return (SyncSubscription) subscribe(subject, queue, null,
                 createMsgChannel());
@@ -1919,18 +2514,19 @@ class ConnectionImpl implements Connection {
         }
         pubProtoBuf.put((byte) ' ');
 
-        byte[] bytes = new byte[12];
-        int idx = bytes.length;
-        if (msgSize > 0) {
-            for (int l = msgSize; l > 0; l /= 10) {
-                idx--;
-                bytes[idx] = digits[l % 10];
-            }
-        } else {
-            idx -= 1;
-            bytes[idx] = digits[0];
+        // Write the size's digits in place, backwards from its last one
+        int len = 1;
+        for (int l = msgSize / 10; l > 0; l /= 10) {
+            len++;
         }
-        pubProtoBuf.put(bytes, idx, bytes.length - idx);
+        if (pubProtoBuf.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+        int end = pubProtoBuf.position() + len;
+        for (int idx = end - 1, l = msgSize; idx >= end - len; idx--, l /= 10) {
+            pubProtoBuf.put(idx, digits[l % 10]);
+        }
+        pubProtoBuf.position(end);
         pubProtoBuf.put(crlfProtoBytes, 0, crlfProtoBytesLen);
     }
 
@@ -1941,6 +2537,8 @@ class ConnectionImpl implements Connection {
     // OutputStream and kicking the flush go routine. These writes should be protected.
     void publish(byte[] subject, byte[] reply, byte[] data, boolean forceFlush) throws IOException {
         int msgSize = (data != null) ? data.length : 0;
+        ResponseMux mux = null;
+        Message local = null;
         mu.lock();
         try {
             // Proactively reject payloads over the threshold set by server.
@@ -2000,6 +2598,12 @@ class ConnectionImpl implements Connection {
             stats.incrementOutMsgs();
             stats.incrementOutBytes(msgSize);
 
+            // With echo off, replies to our own requests are not sent back by the server either
+            if (noEcho && (locals.size() > 0 || respMux != null)) {
+                mux = respMux;
+                local = deliverLocal(subject, reply, data);
+            }
+
             if (forceFlush) {
                 bw.flush();
                 stats.incrementFlushes();
@@ -2011,6 +2615,9 @@ class ConnectionImpl implements Connection {
             }
         } finally {
             mu.unlock();
+            if (local != null) {
+                mux.dispatch(local);
+            }
         }
     }
 
@@ -2049,17 +2656,30 @@ class ConnectionImpl implements Connection {
         publish(msg.getSubjectBytes(), msg.getReplyToBytes(), msg.getData(), false);
     }
 
+    @Override
+    public void publishReply(Message request, byte[] data) throws IOException {
+        byte[] reply = request.getReplyToBytes();
+        if (reply == null) {
+            throw new IllegalArgumentException(ERR_NO_REPLY_SUBJECT);
+        }
+        publish(reply, null, data, false);
+    }
+
     @Override
     public Message request(String subject, byte[] data, long timeout, TimeUnit unit)
             throws IOException, InterruptedException {
-        String inbox = newInbox();
-        BlockingQueue<Message> ch = createMsgChannel(8);
-
-
-        try (SyncSubscription sub = (SyncSubscription) subscribe(inbox, null, null, ch)) {
-            sub.autoUnsubscribe(1);
-            publish(subject, inbox, data);
-            return sub.nextMessage(timeout, unit);
+        // The reply times out on its own, so that timeouts are told apart from cancellations
+        ResponseMux.Reply reply = startReply(subject, data, timeout, unit);
+        try {
+            return reply.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                return null;
+            }
+            throw replyFailure(e.getCause());
+        } finally {
+            // Drops interest in the reply if it is still outstanding
+            reply.cancel(false);
         }
     }
 
@@ -2083,32 +2703,609 @@ class ConnectionImpl implements Connection {
     @Override
     public List<Message> requestMulti(String subject, byte[] data, long timeout, TimeUnit unit)
         throws IOException, InterruptedException {
-        String inbox = newInbox();
-        BlockingQueue<Message> ch = createMsgChannel(8);
+        CompletableFuture<List<Message>> replies = scatterGather(subject, data,
+                GatherPolicy.all(), Math.max(0, timeout), unit);
+        try {
+            return replies.get();
+        } catch (ExecutionException e) {
+            throw replyFailure(e.getCause());
+        } catch (InterruptedException e) {
+            replies.cancel(false);
+            throw e;
+        }
+    }
 
+    @Override
+    public Map<RequestSpec, CompletableFuture<Message>> requestAll(List<RequestSpec> requests,
+                                                                  long timeout, TimeUnit unit) {
+        Map<RequestSpec, CompletableFuture<Message>> replies =
+                new LinkedHashMap<RequestSpec, CompletableFuture<Message>>();
+        // Holding the lock keeps the flusher out until every request has been written
+        mu.lock();
+        try {
+            for (RequestSpec spec : requests) {
+                replies.put(spec, startReply(spec.getSubject(), spec.getData(), timeout, unit));
+            }
+        } finally {
+            mu.unlock();
+        }
+        return replies;
+    }
 
-        try (SyncSubscription sub = (SyncSubscription) subscribe(inbox, null, null, ch)) {
-            LinkedList<Message> messages = new LinkedList<>();
-            publish(subject, inbox, data);
-            long startTime = System.currentTimeMillis();
-            long timeoutMillis = unit.toMillis(timeout);
-            long gone = 0;
-            while (!Thread.currentThread().isInterrupted() && gone < timeoutMillis) {
-                Message message = sub.nextMessage(timeoutMillis - gone, TimeUnit.MILLISECONDS);
-                if (message != null) {
-                    messages.add(message);
-                    gone = System.currentTimeMillis() - startTime;
+    @Override
+    public ReplyInputStream requestStream(String subject, byte[] data, long timeout,
+                                          TimeUnit unit) throws IOException {
+        ReplyInputStream in = new ReplyInputStream(this, getResponseMux(), timeout, unit,
+                ReplyInputStream.DEFAULT_WINDOW);
+        try {
+            publish(subject, in.getInbox(), data);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    @Override
+    public ReplyOutputStream replyStream(Message request) {
+        // Leaves room in each chunk for its header
+        long chunkSize = Math.min(ReplyOutputStream.DEFAULT_CHUNK_SIZE,
+                getMaxPayload() - ReplyOutputStream.HEADER_SIZE);
+        return new ReplyOutputStream(this, request, (int) chunkSize,
+                ReplyOutputStream.DEFAULT_CREDIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public CompletableFuture<Message> requestAsync(String subject, byte[] data, long timeout) {
+        return requestAsync(subject, data, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public CompletableFuture<Message> requestAsync(String subject, byte[] data, long timeout,
+                                                   TimeUnit unit) {
+        return startReply(subject, data, timeout, unit);
+    }
+
+    @Override
+    public CompletableFuture<Message> requestAsync(String subject, byte[] data, long timeout,
+                                                   TimeUnit unit, boolean resubmit) {
+        return startReply(subject, data, timeout, unit, resubmit);
+    }
+
+    ResponseMux.Reply startReply(String subject, byte[] data, long timeout, TimeUnit unit) {
+        return startReply(subject, data, timeout, unit, false);
+    }
+
+    // Starts a request for a single reply. If enabled, it is answered from the cache, or joins an
+    // identical request in flight. It is resubmitted after a reconnect if resubmit is set or its
+    // subject calls for it.
+    ResponseMux.Reply startReply(String subject, byte[] data, long timeout, TimeUnit unit,
+                                 boolean resubmit) {
+        resubmit = resubmit || isResubmitted(subject);
+        final ResponseCache.Rule rule = (cache != null) ? cache.getRule(subject) : null;
+        if (rule == null) {
+            return (flights != null) ? joinFlight(subject, data, timeout, unit, resubmit)
+                    : sendReply(subject, data, timeout, unit, resubmit);
+        }
+
+        subscribeInvalidations();
+        final RequestKey key = new RequestKey(subject, data);
+        final long generation = cache.getGeneration();
+        Message cached = cache.get(key);
+        if (cached != null) {
+            ResponseMux.Reply reply = new ResponseMux.Reply();
+            reply.complete(cached);
+            return reply;
+        }
+        ResponseMux.Reply reply = (flights != null)
+                ? joinFlight(subject, data, timeout, unit, resubmit)
+                : sendReply(subject, data, timeout, unit, resubmit);
+        reply.thenAccept(new Consumer<Message>() {
+            @Override
+            public void accept(Message msg) {
+                cache.put(key, rule, msg, generation);
+            }
+        });
+        return reply;
+    }
+
+    // Publishes a request for a single reply, unless its circuit is open, within its concurrency
+    // limit and hedging it if enabled.
+    ResponseMux.Reply sendReply(String subject, byte[] data, long timeout, TimeUnit unit,
+                                boolean resubmit) {
+        ResponseMux.Reply reply = new ResponseMux.Reply();
+        CircuitBreaker.Circuit circuit = (breaker != null) ? breaker.getCircuit(subject) : null;
+        if (circuit != null && !watchCircuit(circuit, reply)) {
+            return reply;
+        }
+        ConcurrencyLimiter.Limit limit = (limiter != null) ? limiter.getRule(subject) : null;
+        if (limit != null) {
+            startLimited(limit, subject, data, timeout, unit, resubmit, reply);
+        } else {
+            startRequest(subject, data, timeout, unit, reply, reply, resubmit);
+        }
+        if (hedger != null && !reply.isDone()) {
+            hedger.arm(subject, data, reply);
+        }
+        return reply;
+    }
+
+    // Fails reply at once if circuit is open, or else counts its outcome against circuit.
+    // Returns false if reply failed.
+    boolean watchCircuit(final CircuitBreaker.Circuit circuit, ResponseMux.Reply reply) {
+        final long epoch = circuit.allow();
+        if (epoch < 0) {
+            breaker.recordRejected();
+            reply.onError(new IOException(ERR_CIRCUIT_OPEN));
+            return false;
+        }
+        reply.whenComplete(new BiConsumer<Message, Throwable>() {
+            @Override
+            public void accept(Message msg, Throwable err) {
+                if (err == null) {
+                    circuit.onSuccess(epoch);
+                } else if (err instanceof CancellationException
+                        || err instanceof LimitExceededException) {
+                    // Says nothing about the responders
+                    circuit.onIgnored(epoch);
+                } else {
+                    circuit.onFailure(epoch);
+                }
+            }
+        });
+        return true;
+    }
+
+    // Starts the request once limit grants it a permit, which is returned when the reply
+    // completes. A request that waits for its permit spends part of its timeout doing so.
+    void startLimited(final ConcurrencyLimiter.Limit limit, final String subject,
+                      final byte[] data, final long timeout, final TimeUnit unit,
+                      final boolean resubmit, final ResponseMux.Reply reply) {
+        final long queuedAt = System.nanoTime();
+        final Runnable start = new Runnable() {
+            @Override
+            public void run() {
+                final long startedAt = System.nanoTime();
+                if (reply.isDone()) {
+                    limit.release(-1, false);
+                    return;
+                }
+                reply.whenComplete(new BiConsumer<Message, Throwable>() {
+                    @Override
+                    public void accept(Message msg, Throwable err) {
+                        limit.release(System.nanoTime() - startedAt, err != null);
+                    }
+                });
+                long remaining = -1;
+                if (timeout >= 0) {
+                    remaining = unit.toNanos(timeout) - (startedAt - queuedAt);
+                    if (remaining <= 0) {
+                        reply.onTimeout();
+                        return;
+                    }
+                }
+                startRequest(subject, data, remaining, TimeUnit.NANOSECONDS, reply, reply,
+                        resubmit);
+            }
+        };
+        // Permits are handed over on whichever thread completes a reply, so queued requests
+        // are started on the executor instead.
+        final Runnable grant = new Runnable() {
+            @Override
+            public void run() {
+                if (!executeTask(start)) {
+                    limit.release(-1, false);
+                    reply.onError(new IllegalStateException(ERR_CONNECTION_CLOSED));
+                }
+            }
+        };
+        switch (limit.acquire(grant)) {
+            case ConcurrencyLimiter.GRANTED:
+                start.run();
+                break;
+            case ConcurrencyLimiter.QUEUED:
+                // Stop waiting at the request's own timeout, if that comes first
+                final boolean timesOut = timeout >= 0
+                        && unit.toNanos(timeout) <= limit.maxWaitNanos;
+                long wait = timesOut ? unit.toNanos(timeout) : limit.maxWaitNanos;
+                final ScheduledFuture<?> expiry;
+                try {
+                    expiry = timer.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!limit.dequeue(grant)) {
+                                return;
+                            }
+                            if (timesOut) {
+                                reply.onTimeout();
+                            } else {
+                                limiter.recordRejected();
+                                reply.onError(new LimitExceededException());
+                            }
+                        }
+                    }, wait, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    if (limit.dequeue(grant)) {
+                        reply.onError(e);
+                    }
+                    break;
+                }
+                reply.whenComplete(new BiConsumer<Message, Throwable>() {
+                    @Override
+                    public void accept(Message msg, Throwable err) {
+                        expiry.cancel(false);
+                        limit.dequeue(grant);
+                    }
+                });
+                break;
+            default:
+                limiter.recordRejected();
+                reply.onError(new LimitExceededException());
+                break;
+        }
+    }
+
+    // Returns a reply that follows the identical request in flight, publishing one if there is
+    // none. Each follower has the caller's timeout. The shared request lasts as long as the
+    // longest of them, and times out with the last follower that does.
+    ResponseMux.Reply joinFlight(String subject, byte[] data, long timeout, TimeUnit unit,
+                                 boolean resubmit) {
+        final RequestKey key = new RequestKey(subject, data);
+        while (true) {
+            final Flight created = new Flight();
+            Flight flight = flights.putIfAbsent(key, created);
+            if (flight == null) {
+                flight = created;
+                created.join();
+                created.wire.whenComplete(new BiConsumer<Message, Throwable>() {
+                    @Override
+                    public void accept(Message msg, Throwable err) {
+                        flights.remove(key, created);
+                    }
+                });
+                created.start(sendReply(subject, data, -1, unit, resubmit));
+            } else if (!flight.join()) {
+                // Finished or abandoned, but not yet removed
+                flights.remove(key, flight);
+                continue;
+            }
+            return follow(flight, timeout, unit);
+        }
+    }
+
+    private ResponseMux.Reply follow(final Flight flight, long timeout, TimeUnit unit) {
+        final ResponseMux.Reply reply = new ResponseMux.Reply();
+        final ScheduledFuture<?> deadline = (timeout < 0) ? null : scheduleTimeout(reply,
+                timeout, unit);
+        reply.whenComplete(new BiConsumer<Message, Throwable>() {
+            @Override
+            public void accept(Message msg, Throwable err) {
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+                flight.leave(err instanceof TimeoutException);
+            }
+        });
+        flight.wire.whenComplete(new BiConsumer<Message, Throwable>() {
+            @Override
+            public void accept(Message msg, Throwable err) {
+                if (err != null) {
+                    reply.completeExceptionally(err);
                 } else {
-                    return messages;
+                    reply.complete(msg);
+                }
+            }
+        });
+        return reply;
+    }
+
+    /*
+     * A request shared by identical concurrent callers. It is cancelled, dropping interest in
+     * the reply, once the last of them stops waiting, or times out if it timed out.
+     */
+    static final class Flight {
+        // Completes with the reply to the shared request
+        final ResponseMux.Reply wire = new ResponseMux.Reply();
+        // Callers still waiting, guarded by this
+        private int waiters;
+        // The request actually sent, once started
+        private volatile ResponseMux.Reply sent;
+
+        synchronized boolean join() {
+            if (wire.isDone()) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        // If the last caller leaves because it timed out, so does the request sent, which then
+        // counts as a failure against its circuit rather than being ignored.
+        synchronized void leave(boolean timedOut) {
+            if (--waiters == 0) {
+                ResponseMux.Reply request = sent;
+                if (timedOut && request != null) {
+                    request.onTimeout();
+                } else {
+                    wire.cancel(false);
                 }
             }
-            return messages;
         }
+
+        // Relays the outcome of the request actually sent.
+        void start(final ResponseMux.Reply sent) {
+            this.sent = sent;
+            sent.whenComplete(new BiConsumer<Message, Throwable>() {
+                @Override
+                public void accept(Message msg, Throwable err) {
+                    if (err != null) {
+                        wire.completeExceptionally(err);
+                    } else {
+                        wire.complete(msg);
+                    }
+                }
+            });
+            wire.whenComplete(new BiConsumer<Message, Throwable>() {
+                @Override
+                public void accept(Message msg, Throwable err) {
+                    sent.cancel(false);
+                }
+            });
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<Message>> scatterGather(String subject, byte[] data,
+                                                          GatherPolicy policy, long timeout,
+                                                          TimeUnit unit) {
+        final List<Message> replies = new ArrayList<Message>();
+        return scatterGather(subject, data, policy, timeout, unit, new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                replies.add(msg);
+            }
+        }).thenApply(new Function<Integer, List<Message>>() {
+            @Override
+            public List<Message> apply(Integer count) {
+                return replies;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> scatterGather(String subject, byte[] data,
+                                                    GatherPolicy policy, long timeout,
+                                                    TimeUnit unit, MessageHandler handler) {
+        if (policy == null || handler == null) {
+            throw new NullPointerException("nats: policy and handler must not be null");
+        }
+        ResponseMux.Gather gather = new ResponseMux.Gather(policy, handler);
+        startRequest(subject, data, timeout, unit, gather, gather);
+        return gather;
+    }
+
+    void startRequest(String subject, byte[] data, long timeout, TimeUnit unit,
+                      ResponseMux.Waiter waiter, CompletableFuture<?> future) {
+        startRequest(subject, data, timeout, unit, waiter, future, false);
+    }
+
+    // Registers waiter for replies, arms its timeout, and publishes the request. However future
+    // completes, including by cancellation, interest in further replies is dropped. If resubmit
+    // is set, the request is published again after a reconnect until future completes.
+    void startRequest(String subject, byte[] data, long timeout, TimeUnit unit,
+                      ResponseMux.Waiter waiter, CompletableFuture<?> future, boolean resubmit) {
+        final ResponseMux mux;
+        try {
+            mux = getResponseMux();
+        } catch (IllegalStateException e) {
+            waiter.onError(e);
+            return;
+        }
+        final String inbox = mux.register(waiter);
+        final ScheduledFuture<?> deadline = (timeout < 0) ? null : scheduleTimeout(waiter,
+                timeout, unit);
+
+        future.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object result, Throwable err) {
+                mux.cancel(inbox);
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+            }
+        });
+
+        try {
+            if (resubmit) {
+                publishResubmitted(subject, inbox, data, waiter, future);
+            } else {
+                publish(subject, inbox, data);
+            }
+        } catch (IOException | RuntimeException e) {
+            waiter.onError(e);
+        }
+    }
+
+    // Publishes a request and tracks it for resubmission until future completes.
+    void publishResubmitted(String subject, String inbox, byte[] data, ResponseMux.Waiter waiter,
+                            CompletableFuture<?> future) throws IOException {
+        final Resubmission resubmission;
+        mu.lock();
+        try {
+            publish(subject, inbox, data);
+            // A request buffered while reconnecting goes out on the next connection
+            long epoch = reconnecting() ? connEpoch + 1 : connEpoch;
+            resubmission = new Resubmission(subject, data, waiter, future, epoch);
+            // Tracked before the lock is released, so that a reconnect cannot slip in between
+            resubmissions.add(resubmission);
+        } finally {
+            mu.unlock();
+        }
+        future.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object result, Throwable err) {
+                resubmissions.remove(resubmission);
+            }
+        });
+    }
+
+    // Publishes the outstanding requests tracked for resubmission that were sent before the
+    // connection was restored, each under a fresh reply subject. They keep their original
+    // timeouts. Assumes the lock is held.
+    void resubmitInFlight() {
+        connEpoch++;
+        final ResponseMux mux = respMux;
+        if (mux == null) {
+            return;
+        }
+        for (final Resubmission resubmission : resubmissions) {
+            if (resubmission.epoch >= connEpoch || resubmission.future.isDone()) {
+                continue;
+            }
+            resubmission.epoch = connEpoch;
+            final String inbox = mux.register(resubmission.waiter);
+            resubmission.future.whenComplete(new BiConsumer<Object, Throwable>() {
+                @Override
+                public void accept(Object result, Throwable err) {
+                    mux.cancel(inbox);
+                }
+            });
+            try {
+                publish(resubmission.subject, inbox, resubmission.data);
+                stats.incrementResubmits();
+            } catch (IOException | RuntimeException e) {
+                logger.debug("nats: unable to resubmit request", e);
+            }
+        }
+    }
+
+    // Returns true if requests on subject are resubmitted after a reconnect.
+    boolean isResubmitted(String subject) {
+        if (resubmitPatterns == null) {
+            return false;
+        }
+        for (String pattern : resubmitPatterns) {
+            if (SubjectTrie.covers(pattern, subject)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * An outstanding request to publish again if the connection is restored before it
+     * completes.
+     */
+    static final class Resubmission {
+        final String subject;
+        final byte[] data;
+        final ResponseMux.Waiter waiter;
+        final CompletableFuture<?> future;
+        // The connection the request was last sent on, guarded by the connection's lock
+        long epoch;
+
+        Resubmission(String subject, byte[] data, ResponseMux.Waiter waiter,
+                     CompletableFuture<?> future, long epoch) {
+            this.subject = subject;
+            this.data = data;
+            this.waiter = waiter;
+            this.future = future;
+            this.epoch = epoch;
+        }
+    }
+
+    // Times waiter out once the timeout elapses.
+    ScheduledFuture<?> scheduleTimeout(final ResponseMux.Waiter waiter, long timeout,
+                                       TimeUnit unit) {
+        try {
+            return timer.schedule(new Runnable() {
+                public void run() {
+                    waiter.onTimeout();
+                }
+            }, timeout, unit);
+        } catch (RejectedExecutionException e) {
+            waiter.onError(e);
+            return null;
+        }
+    }
+
+    HashedWheelTimer getTimer() {
+        return timer;
+    }
+
+    // Subscribes to the cache's invalidation subjects not yet subscribed to.
+    void subscribeInvalidations() {
+        for (final String subject : cache.getInvalidationSubjects()) {
+            if (!invalidations.add(subject)) {
+                continue;
+            }
+            try {
+                subscribe(subject, new MessageHandler() {
+                    @Override
+                    public void onMessage(Message msg) {
+                        cache.invalidate(subject);
+                    }
+                });
+            } catch (IllegalStateException e) {
+                // Closed; the request itself will fail
+                invalidations.remove(subject);
+            }
+        }
+    }
+
+    // Runs task on this connection's executor; returns false if it has been shut down.
+    boolean executeTask(Runnable task) {
+        try {
+            exec.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    // The live statistics, unlike the copy returned by getStats().
+    Statistics getStatistics() {
+        return stats;
+    }
+
+    // Returns the wildcard response subscription, subscribing on first use.
+    ResponseMux getResponseMux() {
+        mu.lock();
+        try {
+            if (closed()) {
+                throw new IllegalStateException(ERR_CONNECTION_CLOSED);
+            }
+            if (respMux == null) {
+                respMux = new ResponseMux(newInbox());
+                respSid = sidCounter.incrementAndGet();
+                if (!reconnecting()) {
+                    sendSubscriptionMessage(respMux.getSubject(), null, respSid);
+                    kickFlusher();
+                }
+            }
+            return respMux;
+        } finally {
+            mu.unlock();
+        }
+    }
+
+    // Maps the failure of a request to what the blocking API throws.
+    static IOException replyFailure(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException(cause);
     }
 
     @Override
     public String newInbox() {
-        return String.format("%s%s", INBOX_PREFIX, NUID.nextGlobal());
+        byte[] inbox = new byte[INBOX_PREFIX_BYTES.length + NUID.totalLen];
+        System.arraycopy(INBOX_PREFIX_BYTES, 0, inbox, 0, INBOX_PREFIX_BYTES.length);
+        NUID.nextLocal(inbox, INBOX_PREFIX_BYTES.length);
+        return new String(inbox, StandardCharsets.US_ASCII);
     }
 
     @Override
@@ -2130,9 +3327,12 @@ class ConnectionImpl implements Connection {
     void sendSubscriptionMessage(SubscriptionImpl sub) {
         // We will send these for all subs when we reconnect
         // so that we can suppress here.
-        String queue = sub.getQueue();
-        String subLine = String.format(SUB_PROTO, sub.getSubject(),
-                (queue != null && !queue.isEmpty()) ? " " + queue : "", sub.getSid());
+        sendSubscriptionMessage(sub.getSubject(), sub.getQueue(), sub.getSid());
+    }
+
+    void sendSubscriptionMessage(String subject, String queue, long sid) {
+        String subLine = String.format(SUB_PROTO, subject,
+                (queue != null && !queue.isEmpty()) ? " " + queue : "", sid);
         try {
             bw.write(subLine.getBytes());
         } catch (IOException e) {
@@ -2325,6 +3525,24 @@ class ConnectionImpl implements Connection {
         this.pongs = pongs;
     }
 
+    @Override
+    public long getPendingBytesBudget() {
+        return budget.getLimit();
+    }
+
+    @Override
+    public long getPendingBytesUsed() {
+        return budget.getUsed();
+    }
+
+    PendingBudget getBudget() {
+        return budget;
+    }
+
+    SubjectRouter getRouter() {
+        return router;
+    }
+
     Map<Long, SubscriptionImpl> getSubs() {
         return subs;
     }
@@ -2525,11 +3743,21 @@ class ConnectionImpl implements Connection {
         @SerializedName("protocol")
         private final int protocol;
 
+        @SerializedName("echo")
+        private final Boolean echo;
+
         private final transient Gson gson = new GsonBuilder().create();
 
         public ConnectInfo(boolean verbose, boolean pedantic, String username, String password,
                            String token, boolean secure, String connectionName, String lang,
                            String version, ClientProto proto) {
+            this(verbose, pedantic, username, password, token, secure, connectionName, lang,
+                    version, proto, null);
+        }
+
+        public ConnectInfo(boolean verbose, boolean pedantic, String username, String password,
+                           String token, boolean secure, String connectionName, String lang,
+                           String version, ClientProto proto, Boolean echo) {
             this.verbose = verbose;
             this.pedantic = pedantic;
             this.user = username;
@@ -2540,6 +3768,7 @@ class ConnectionImpl implements Connection {
             this.lang = lang;
             this.version = version;
             this.protocol = proto.getValue();
+            this.echo = echo;
         }
 
         public String toString() {
@@ -2548,10 +3777,29 @@ class ConnectionImpl implements Connection {
     }
 
     static class Srv {
+        /*
+         * Orders servers by the number of failed attempts since each was last connected to, and
+         * then by smoothed round trip time, with servers never measured last.
+         */
+        static final Comparator<Srv> LATENCY_ORDER = new Comparator<Srv>() {
+            @Override
+            public int compare(Srv s1, Srv s2) {
+                if (s1.reconnects != s2.reconnects) {
+                    return Integer.compare(s1.reconnects, s2.reconnects);
+                }
+                long rtt1 = (s1.rttNanos == 0) ? Long.MAX_VALUE : s1.rttNanos;
+                long rtt2 = (s2.rttNanos == 0) ? Long.MAX_VALUE : s2.rttNanos;
+                return Long.compare(rtt1, rtt2);
+            }
+        };
+
         URI url = null;
         int reconnects = 0;
         long lastAttemptNanos = 0L;
         boolean implicit = false;
+        // Smoothed round trip time in nanoseconds, or zero if never measured. Also written by
+        // raced connection attempts.
+        volatile long rttNanos = 0L;
 
         Srv(URI url, boolean implicit) {
             this.url = url;
@@ -2572,10 +3820,18 @@ class ConnectionImpl implements Connection {
             return (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastAttemptNanos));
         }
 
+        // Folds a measured round trip time into the smoothed one, with a weight of 1/8 as TCP
+        void updateRtt(long sampleNanos) {
+            long sample = Math.max(1L, sampleNanos);
+            long rtt = rttNanos;
+            rttNanos = (rtt == 0) ? sample : rtt + (sample - rtt) / 8;
+        }
+
         public String toString() {
             return String.format(
-                    "{url=%s, reconnects=%d, timeSinceLastAttempt=%dms}",
-                    url.toString(), reconnects, timeSinceLastAttempt());
+                    "{url=%s, reconnects=%d, timeSinceLastAttempt=%dms, rtt=%dus}",
+                    url.toString(), reconnects, timeSinceLastAttempt(),
+                    TimeUnit.NANOSECONDS.toMicros(rttNanos));
         }
     }
 
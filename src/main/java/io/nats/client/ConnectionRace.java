@@ -0,0 +1,266 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.ConnectionImpl.DEFAULT_STREAM_BUF_SIZE;
+import static io.nats.client.ConnectionImpl.PING_PROTO;
+import static io.nats.client.ConnectionImpl._INFO_OP_;
+import static io.nats.client.ConnectionImpl._OK_OP_;
+import static io.nats.client.Nats.ERR_CONNECTION_CLOSED;
+import static io.nats.client.Nats.ERR_CONNECTION_READ;
+import static io.nats.client.Nats.ERR_NO_INFO_RECEIVED;
+import static io.nats.client.Nats.ERR_NO_SERVERS;
+import static io.nats.client.Nats.ERR_SECURE_CONN_REQUIRED;
+import static io.nats.client.Nats.ERR_SECURE_CONN_WANTED;
+import static io.nats.client.Nats.TLS_SCHEME;
+
+import io.nats.client.ConnectionImpl.Control;
+import io.nats.client.ConnectionImpl.Srv;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Races connection attempts to several servers, happy-eyeballs style. An attempt is started on
+ * each candidate in turn, a stagger after the previous one or as soon as it fails, and the first
+ * to complete the INFO/CONNECT/PONG handshake wins. The losers are closed. The winning socket is
+ * then adopted by the connection, which has not been touched by any attempt.
+ */
+final class ConnectionRace {
+    private final Logger logger = LoggerFactory.getLogger(ConnectionRace.class);
+
+    static final String RACE_EXEC_NAME = "jnats-connect-race";
+
+    // Failure to open a connection at all, which createConn() callers do not report either.
+    private static final class OpenFailedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        OpenFailedException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    // A completed handshake, ready to be adopted by the connection.
+    static final class Handshake {
+        final Srv srv;
+        final TcpConnection conn;
+        // The arguments of the server's INFO
+        final String info;
+        final boolean noEcho;
+
+        Handshake(Srv srv, TcpConnection conn, String info, boolean noEcho) {
+            this.srv = srv;
+            this.conn = conn;
+            this.info = info;
+            this.noEcho = noEcho;
+        }
+    }
+
+    private final ConnectionImpl nc;
+    private final TcpConnectionFactory tcf;
+    private final Options opts;
+    private final long staggerNanos;
+    // Servers an attempt was started on, in order; only used by the racing thread
+    private final List<Srv> started = new ArrayList<Srv>();
+
+    private final Lock mu = new ReentrantLock();
+    // Guarded by mu
+    private final List<TcpConnection> opened = new ArrayList<TcpConnection>();
+    private boolean done;
+
+    ConnectionRace(ConnectionImpl nc, TcpConnectionFactory tcf, Options opts) {
+        this.nc = nc;
+        this.tcf = tcf;
+        this.opts = opts;
+        this.staggerNanos = TimeUnit.MILLISECONDS.toNanos(opts.getConnectRaceStagger());
+    }
+
+    // Returns the servers an attempt was started on.
+    List<Srv> getStarted() {
+        return started;
+    }
+
+    /*
+     * Races the candidates, in order, and returns the first completed handshake. Every other
+     * attempt is closed, whether it failed, was still running or completed later. If none
+     * completed, throws the error of the last attempt that got as far as the handshake, as the
+     * sequential connect does, or ERR_NO_SERVERS if no connection could be opened.
+     */
+    Handshake run(List<Srv> candidates) throws IOException, InterruptedException {
+        if (candidates.isEmpty()) {
+            throw new IOException(ERR_NO_SERVERS);
+        }
+        ExecutorService exec = Executors.newCachedThreadPool(
+                new NatsThreadFactory(RACE_EXEC_NAME));
+        CompletionService<Handshake> attempts = new ExecutorCompletionService<Handshake>(exec);
+        Handshake winner = null;
+        IOException failure = null;
+        int next = 0;
+        int running = 0;
+        try {
+            while (next < candidates.size() || running > 0) {
+                // Either the first attempt, the stagger has elapsed, or an attempt just failed
+                if (next < candidates.size()) {
+                    start(attempts, candidates.get(next++));
+                    running++;
+                }
+                // Wait for an attempt to finish, or until it is time to start the next
+                Future<Handshake> attempt = (next < candidates.size())
+                        ? attempts.poll(staggerNanos, TimeUnit.NANOSECONDS)
+                        : attempts.take();
+                if (attempt == null) {
+                    continue;
+                }
+                running--;
+                try {
+                    winner = attempt.get();
+                    return winner;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (!(cause instanceof OpenFailedException)) {
+                        failure = (cause instanceof IOException) ? (IOException) cause
+                                : new IOException(cause);
+                    }
+                }
+            }
+            throw (failure != null) ? failure : new IOException(ERR_NO_SERVERS);
+        } finally {
+            finish(winner);
+            exec.shutdownNow();
+        }
+    }
+
+    private void start(CompletionService<Handshake> attempts, final Srv srv) {
+        logger.debug("Racing a connection to {}", srv.url);
+        srv.updateLastAttempt();
+        started.add(srv);
+        attempts.submit(new Callable<Handshake>() {
+            @Override
+            public Handshake call() throws Exception {
+                return handshake(srv);
+            }
+        });
+    }
+
+    // Closes every connection opened by an attempt except the winner's.
+    private void finish(Handshake winner) {
+        List<TcpConnection> losers;
+        mu.lock();
+        try {
+            done = true;
+            losers = new ArrayList<TcpConnection>(opened);
+            opened.clear();
+        } finally {
+            mu.unlock();
+        }
+        for (TcpConnection conn : losers) {
+            if (winner == null || conn != winner.conn) {
+                conn.close();
+            }
+        }
+    }
+
+    // Tracks conn so that it is closed if it loses, or fails if the race is already over.
+    private void register(TcpConnection conn) throws IOException {
+        mu.lock();
+        try {
+            if (!done) {
+                opened.add(conn);
+                return;
+            }
+        } finally {
+            mu.unlock();
+        }
+        throw new IOException("nats: connection race is over");
+    }
+
+    /*
+     * Opens a connection to srv and goes through the same handshake as createConn() and
+     * processConnectInit(), but on a connection of its own, leaving nc untouched.
+     */
+    Handshake handshake(Srv srv) throws IOException {
+        TcpConnection conn = tcf.createConnection();
+        try {
+            try {
+                conn.open(srv.url.toString(), opts.getConnectionTimeout());
+            } catch (IOException e) {
+                throw new OpenFailedException(e);
+            }
+            register(conn);
+            conn.getInputStream(DEFAULT_STREAM_BUF_SIZE);
+
+            // The server sends INFO first
+            Control control = new Control(readLine(conn));
+            if (!_INFO_OP_.equals(control.op)) {
+                throw new IOException(ERR_NO_INFO_RECEIVED);
+            }
+            ServerInfo info = ServerInfo.createFromWire(control.args);
+            if (opts.isSecure() && !info.isTlsRequired()) {
+                throw new IOException(ERR_SECURE_CONN_WANTED);
+            } else if (info.isTlsRequired() && !opts.isSecure()) {
+                throw new IOException(ERR_SECURE_CONN_REQUIRED);
+            }
+            if (opts.isSecure() || TLS_SCHEME.equals(srv.url.getScheme())) {
+                conn.setTlsDebug(opts.isTlsDebug());
+                conn.makeTls(opts.getSslContext());
+                conn.getInputStream(DEFAULT_STREAM_BUF_SIZE);
+            }
+
+            boolean noEcho = nc.disablesEcho(info);
+            OutputStream out = conn.getOutputStream(DEFAULT_STREAM_BUF_SIZE);
+            out.write(nc.connectProto(srv.url, noEcho).getBytes());
+            out.flush();
+            if (opts.isVerbose()) {
+                String line = readLine(conn);
+                if (!_OK_OP_.equals(line)) {
+                    throw new IOException(
+                            String.format("nats: expected '%s', got '%s'", _OK_OP_, line));
+                }
+            }
+            long pingNanos = System.nanoTime();
+            out.write(PING_PROTO.getBytes());
+            out.flush();
+            String line;
+            try {
+                line = readLine(conn);
+            } catch (IOException e) {
+                throw new IOException(ERR_CONNECTION_READ, e);
+            }
+            ConnectionImpl.checkPong(line);
+            srv.updateRtt(System.nanoTime() - pingNanos);
+
+            logger.debug("Completed a raced handshake with {}", srv.url);
+            return new Handshake(srv, conn, control.args, noEcho);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Raced connection to {} failed: {}", srv.url, e.getMessage());
+            conn.close();
+            throw e;
+        }
+    }
+
+    private static String readLine(TcpConnection conn) throws IOException {
+        String line = conn.getBufferedReader().readLine();
+        if (line == null) {
+            throw new EOFException(ERR_CONNECTION_CLOSED);
+        }
+        return line;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+/**
+ * Interrelated interfaces for demand-driven, asynchronous message streams, with the same shape
+ * and contract as {@code java.util.concurrent.Flow} in Java 9 and the Reactive Streams
+ * specification. They are defined here so that they can be used on Java 8; adapting them to
+ * either of those APIs is a matter of delegating each method.
+ *
+ * @see AbstractConnection#subscribeFlow(String, String, int)
+ */
+public final class Flow {
+
+    private Flow() {
+    }
+
+    /**
+     * A producer of items received by {@link Subscriber}s, each of which only receives items it
+     * has requested.
+     *
+     * @param <T> the published item type
+     */
+    public interface Publisher<T> {
+        /**
+         * Adds the given subscriber. {@link Subscriber#onSubscribe(Subscription)} is always
+         * invoked first; if the subscription fails, it is followed by
+         * {@link Subscriber#onError(Throwable)}.
+         *
+         * @param subscriber the subscriber
+         * @throws NullPointerException if {@code subscriber} is {@code null}
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items. Its methods are invoked in strict sequential order for each
+     * {@link Subscription}.
+     *
+     * @param <T> the subscribed item type
+     */
+    public interface Subscriber<T> {
+        /**
+         * Invoked before any other method for a new subscription. No items are received until
+         * {@link Subscription#request(long)} is called.
+         *
+         * @param subscription the new subscription
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Invoked with the next item of a subscription.
+         *
+         * @param item the item
+         */
+        void onNext(T item);
+
+        /**
+         * Invoked when the subscription terminates with an error. No other methods are invoked
+         * afterwards.
+         *
+         * @param throwable the error
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Invoked when the subscription completes normally. No other methods are invoked
+         * afterwards.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Message control linking a {@link Publisher} and a {@link Subscriber}.
+     */
+    public interface Subscription {
+        /**
+         * Adds {@code n} to the number of items the subscriber is ready to receive. A value that
+         * is not positive terminates the subscription with an
+         * {@link IllegalArgumentException}.
+         *
+         * @param n the increment of demand
+         */
+        void request(long n);
+
+        /**
+         * Causes the subscriber to (eventually) stop receiving items.
+         */
+        void cancel();
+    }
+
+    /**
+     * A component that acts as both a {@link Subscriber} and a {@link Publisher}.
+     *
+     * @param <T> the subscribed item type
+     * @param <R> the published item type
+     */
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
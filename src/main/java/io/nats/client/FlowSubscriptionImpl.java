@@ -0,0 +1,150 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.Nats.ERR_CONNECTION_CLOSED;
+import static io.nats.client.Nats.ERR_SLOW_CONSUMER;
+
+import java.io.IOException;
+
+/*
+ * A subscription that delivers messages to a Flow.Subscriber only as fast as the subscriber
+ * requests them. Messages beyond the outstanding demand stay queued, up to the prefetch (the
+ * pending message limit), after which the slow consumer policy applies.
+ */
+class FlowSubscriptionImpl extends SubscriptionImpl implements Flow.Subscription {
+    private final Flow.Subscriber<? super Message> subscriber;
+
+    // Outstanding demand, guarded by the lock.
+    long demand;
+    // Set by cancel(), guarded by the lock. A cancelled subscriber receives no terminal signal.
+    boolean cancelled;
+    // Terminal error caused by the subscriber itself, guarded by the lock.
+    private Throwable failure;
+
+    FlowSubscriptionImpl(ConnectionImpl nc, String subj, String queue,
+                         Flow.Subscriber<? super Message> subscriber, int prefetch) {
+        super(nc, subj, queue, prefetch, DEFAULT_MAX_PENDING_BYTES);
+        this.subscriber = subscriber;
+    }
+
+    @Override
+    void signalMsg() {
+        // Nothing to wake up for until there is demand
+        if (demand > 0) {
+            pCond.signal();
+        }
+    }
+
+    @Override
+    public void request(long n) {
+        lock();
+        try {
+            if (closed || cancelled) {
+                return;
+            }
+            if (n > 0) {
+                demand += n;
+                if (demand < 0) {
+                    demand = Long.MAX_VALUE;
+                }
+                pCond.signal();
+                return;
+            }
+            failure = new IllegalArgumentException(
+                    "nats: request must be positive, got " + n);
+        } finally {
+            unlock();
+        }
+        // Terminates the subscription; the delivery thread then reports the failure
+        close();
+    }
+
+    @Override
+    public void cancel() {
+        lock();
+        try {
+            if (closed || cancelled) {
+                return;
+            }
+            cancelled = true;
+        } finally {
+            unlock();
+        }
+        close();
+    }
+
+    // Delivers queued messages to the subscriber as demand allows, until the subscription is
+    // cancelled, removed, or its connection closes. Runs on the connection's subscription
+    // executor.
+    void deliver() {
+        Throwable error;
+        boolean complete;
+        while (true) {
+            Message msg;
+            lock();
+            try {
+                while (!closed && (demand == 0 || mch == null || mch.isEmpty())) {
+                    pCond.await();
+                }
+                if (closed) {
+                    error = terminalError();
+                    complete = !cancelled;
+                    break;
+                }
+                msg = mch.poll();
+                removePending(msg.getData() == null ? 0 : msg.getData().length);
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+                delivered++;
+            } catch (InterruptedException e) {
+                // The connection is shutting down its subscription executor
+                error = terminalError();
+                if (error == null && !cancelled) {
+                    error = new IllegalStateException(ERR_CONNECTION_CLOSED);
+                }
+                complete = false;
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                unlock();
+            }
+
+            try {
+                subscriber.onNext(msg);
+            } catch (RuntimeException e) {
+                logger.warn("nats: flow subscriber threw from onNext, cancelling", e);
+                cancel();
+                return;
+            }
+        }
+
+        if (error != null) {
+            subscriber.onError(error);
+        } else if (complete) {
+            subscriber.onComplete();
+        }
+    }
+
+    // Assumes the lock is held.
+    private Throwable terminalError() {
+        if (failure != null) {
+            return failure;
+        }
+        if (cancelled) {
+            return null;
+        }
+        if (connClosed) {
+            return new IllegalStateException(ERR_CONNECTION_CLOSED);
+        }
+        if (sc && scPolicy == SlowConsumerPolicy.ERROR) {
+            return new IOException(ERR_SLOW_CONSUMER);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.util.function.Predicate;
+
+/**
+ * Decides when a scatter-gather request has received enough replies. Once it is satisfied, the
+ * request completes and interest in further replies is dropped, without waiting for the timeout.
+ *
+ * @see Connection#scatterGather(String, byte[], GatherPolicy, long,
+ *      java.util.concurrent.TimeUnit)
+ */
+public final class GatherPolicy {
+    private static final GatherPolicy ALL = new GatherPolicy(0, null);
+
+    // Zero means no limit
+    private final int count;
+    private final Predicate<Message> predicate;
+
+    private GatherPolicy(int count, Predicate<Message> predicate) {
+        this.count = count;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Gathers every reply that arrives before the timeout.
+     *
+     * @return the policy
+     */
+    public static GatherPolicy all() {
+        return ALL;
+    }
+
+    /**
+     * Completes once {@code count} replies have arrived.
+     *
+     * @param count the number of replies wanted
+     * @return the policy
+     * @throws IllegalArgumentException if {@code count} is not positive
+     */
+    public static GatherPolicy count(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("nats: count must be positive");
+        }
+        return new GatherPolicy(count, null);
+    }
+
+    /**
+     * Completes once a majority of {@code members} responders have replied.
+     *
+     * @param members the number of responders expected to reply
+     * @return the policy
+     * @throws IllegalArgumentException if {@code members} is not positive
+     */
+    public static GatherPolicy quorum(int members) {
+        if (members <= 0) {
+            throw new IllegalArgumentException("nats: members must be positive");
+        }
+        return new GatherPolicy(members / 2 + 1, null);
+    }
+
+    /**
+     * Completes with the first reply that matches {@code predicate}, which is included in the
+     * gathered replies.
+     *
+     * @param predicate the condition to wait for
+     * @return the policy
+     */
+    public static GatherPolicy until(Predicate<Message> predicate) {
+        if (predicate == null) {
+            throw new NullPointerException("nats: predicate must not be null");
+        }
+        return new GatherPolicy(0, predicate);
+    }
+
+    /**
+     * Returns a policy that completes when either this policy or {@code predicate} is satisfied.
+     *
+     * @param predicate the additional condition to wait for
+     * @return the policy
+     */
+    public GatherPolicy orUntil(Predicate<Message> predicate) {
+        if (predicate == null) {
+            throw new NullPointerException("nats: predicate must not be null");
+        }
+        return new GatherPolicy(count,
+                (this.predicate == null) ? predicate : this.predicate.or(predicate));
+    }
+
+    // Returns the number of replies that satisfies this policy, or zero if there is none.
+    int getCount() {
+        return count;
+    }
+
+    boolean isSatisfied(int received, Message last) {
+        if (count > 0 && received >= count) {
+            return true;
+        }
+        return predicate != null && predicate.test(last);
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A timer for large numbers of short-lived timeouts, such as request deadlines. Timeouts are
+ * hashed into the slots of a wheel that a single thread advances once per tick, so scheduling and
+ * cancelling are O(1) regardless of how many timeouts are pending. The price is precision: a
+ * timeout fires on the first tick at or after its deadline.
+ *
+ * <p>Tasks run on the timer thread and must be short; hand anything longer off to an executor.
+ * By default all connections share {@link #getDefault()}. A connection can be given its own timer
+ * with {@link Options.Builder#timer(HashedWheelTimer)}, for example to use a different tick
+ * duration.
+ */
+public final class HashedWheelTimer implements AutoCloseable {
+    static final long DEFAULT_TICK_MILLIS = 10;
+    static final int DEFAULT_TICKS_PER_WHEEL = 512;
+    static final String TIMER_NAME = "jnats-timer";
+
+    private static final int INIT = 0;
+    private static final int STARTED = 1;
+    private static final int STOPPED = 2;
+
+    private static final class DefaultHolder {
+        static final HashedWheelTimer INSTANCE = new HashedWheelTimer();
+    }
+
+    private final long tickNanos;
+    private final List<List<Timeout>> wheel;
+    private final int mask;
+    private final long startTime = System.nanoTime();
+    // Timeouts not yet placed on the wheel; only the timer thread touches the wheel itself.
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicInteger state = new AtomicInteger(INIT);
+    private final Thread worker;
+    private long tick;
+
+    /**
+     * Creates a timer with a 10 msec tick and 512 slots.
+     */
+    public HashedWheelTimer() {
+        this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    /**
+     * Creates a timer. Its thread is started when the first timeout is scheduled.
+     *
+     * @param tickDuration  the time between ticks, which is the timer's resolution
+     * @param unit          the unit of {@code tickDuration}
+     * @param ticksPerWheel the number of slots on the wheel, rounded up to a power of two
+     * @throws IllegalArgumentException if {@code tickDuration} or {@code ticksPerWheel} is not
+     *                                  positive
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("nats: tick duration must be positive");
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("nats: ticks per wheel out of range");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int slots = Integer.highestOneBit(ticksPerWheel);
+        if (slots < ticksPerWheel) {
+            slots <<= 1;
+        }
+        this.wheel = new ArrayList<List<Timeout>>(slots);
+        for (int i = 0; i < slots; i++) {
+            wheel.add(new ArrayList<Timeout>());
+        }
+        this.mask = slots - 1;
+        this.worker = new NatsThread(new Runnable() {
+            public void run() {
+                runWheel();
+            }
+        }, TIMER_NAME);
+        worker.setDaemon(true);
+    }
+
+    /**
+     * Returns the timer shared by all connections that have not been given their own.
+     *
+     * @return the shared timer
+     */
+    public static HashedWheelTimer getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Returns the time between ticks.
+     *
+     * @param unit the unit of the result
+     * @return the tick duration
+     */
+    public long getTickDuration(TimeUnit unit) {
+        return unit.convert(tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Schedules {@code task} to run once after {@code delay}. Cancelling the returned future
+     * never interrupts the timer thread.
+     *
+     * @param task  the task
+     * @param delay the delay
+     * @param unit  the unit of {@code delay}
+     * @return a future that can be used to cancel the task
+     * @throws RejectedExecutionException if the timer has been closed
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(new Timeout(task, System.nanoTime() + unit.toNanos(delay), 0));
+    }
+
+    /**
+     * Schedules {@code task} to run after {@code initialDelay}, and then repeatedly with
+     * {@code delay} between the end of one run and the start of the next, until it is cancelled
+     * or throws.
+     *
+     * @param task         the task
+     * @param initialDelay the delay before the first run
+     * @param delay        the delay between runs
+     * @param unit         the unit of {@code initialDelay} and {@code delay}
+     * @return a future that can be used to cancel the task
+     * @throws RejectedExecutionException if the timer has been closed
+     * @throws IllegalArgumentException   if {@code delay} is not positive
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay,
+                                                     TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("nats: delay must be positive");
+        }
+        return add(new Timeout(task, System.nanoTime() + unit.toNanos(initialDelay),
+                unit.toNanos(delay)));
+    }
+
+    /**
+     * Stops the timer thread. Pending timeouts never fire, and further scheduling is rejected.
+     * The shared default timer should not be closed.
+     */
+    @Override
+    public void close() {
+        if (state.getAndSet(STOPPED) == STARTED) {
+            worker.interrupt();
+        }
+    }
+
+    private Timeout add(Timeout timeout) {
+        if (state.get() == INIT && state.compareAndSet(INIT, STARTED)) {
+            worker.start();
+        }
+        if (state.get() == STOPPED) {
+            throw new RejectedExecutionException("nats: timer has been closed");
+        }
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private void runWheel() {
+        List<Timeout> expired = new ArrayList<Timeout>();
+        while (state.get() == STARTED) {
+            long deadline = startTime + (tick + 1) * tickNanos;
+            long now;
+            while ((now = System.nanoTime()) < deadline) {
+                LockSupport.parkNanos(this, deadline - now);
+                if (state.get() != STARTED) {
+                    return;
+                }
+            }
+
+            transferPending();
+            expireSlot(wheel.get((int) (tick & mask)), expired);
+            tick++;
+
+            for (Timeout timeout : expired) {
+                timeout.expire();
+            }
+            expired.clear();
+        }
+    }
+
+    // Places newly scheduled timeouts on the wheel. Overdue ones go in the current slot.
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long ticks = (timeout.deadline - startTime + tickNanos - 1) / tickNanos;
+            long slot = Math.max(ticks, tick);
+            timeout.rounds = (slot - tick) / wheel.size();
+            wheel.get((int) (slot & mask)).add(timeout);
+        }
+    }
+
+    // Moves the due timeouts in slot to expired, dropping cancelled ones.
+    private static void expireSlot(List<Timeout> slot, List<Timeout> expired) {
+        int kept = 0;
+        for (int i = 0; i < slot.size(); i++) {
+            Timeout timeout = slot.get(i);
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            if (timeout.rounds <= 0) {
+                expired.add(timeout);
+                continue;
+            }
+            timeout.rounds--;
+            slot.set(kept++, timeout);
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+
+    private final class Timeout extends FutureTask<Void> implements ScheduledFuture<Void> {
+        // Zero for one-shot timeouts
+        private final long period;
+        private volatile long deadline;
+        // Remaining revolutions of the wheel, only accessed by the timer thread
+        long rounds;
+
+        Timeout(Runnable task, long deadline, long period) {
+            super(task, null);
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        void expire() {
+            if (period == 0) {
+                run();
+            } else if (runAndReset()) {
+                deadline = System.nanoTime() + period;
+                if (state.get() == STARTED) {
+                    pending.add(this);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // The timer thread is shared, so it is never interrupted
+            return super.cancel(false);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS),
+                    other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures hedged requests. When a request has had no reply after the hedge delay, a duplicate
+ * is sent, and whichever reply arrives first is accepted. This trims the latency tail caused by
+ * one slow member of a queue group, at the cost of extra load, which is capped by a budget.
+ *
+ * <p>The delay is either fixed, or derived from a percentile of the recent reply latencies for
+ * the request's subject.
+ *
+ * @see Options.Builder#hedging(HedgePolicy)
+ */
+public final class HedgePolicy {
+    static final int DEFAULT_BUDGET_PERCENT = 10;
+    // Latency samples needed before a percentile delay is trusted
+    static final int MIN_SAMPLES = 20;
+
+    private final long delayNanos;
+    // Zero for a fixed delay
+    private final double percentile;
+    private final int budgetPercent;
+
+    private HedgePolicy(long delayNanos, double percentile, int budgetPercent) {
+        this.delayNanos = delayNanos;
+        this.percentile = percentile;
+        this.budgetPercent = budgetPercent;
+    }
+
+    /**
+     * Hedges requests that have had no reply after a fixed delay.
+     *
+     * @param delay the hedge delay
+     * @param unit  the unit of {@code delay}
+     * @return the policy
+     * @throws IllegalArgumentException if {@code delay} is negative
+     */
+    public static HedgePolicy fixedDelay(long delay, TimeUnit unit) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("nats: delay must not be negative");
+        }
+        return new HedgePolicy(unit.toNanos(delay), 0, DEFAULT_BUDGET_PERCENT);
+    }
+
+    /**
+     * Hedges requests that have had no reply after the given percentile of the recent reply
+     * latencies for their subject, but never sooner than {@code minDelay}. Until enough replies
+     * have been seen on a subject, {@code minDelay} is used on its own.
+     *
+     * @param percentile the latency percentile, greater than 0 and less than 100
+     * @param minDelay   the minimum hedge delay
+     * @param unit       the unit of {@code minDelay}
+     * @return the policy
+     * @throws IllegalArgumentException if {@code percentile} is out of range, or
+     *                                  {@code minDelay} is negative
+     */
+    public static HedgePolicy percentile(double percentile, long minDelay, TimeUnit unit) {
+        if (!(percentile > 0 && percentile < 100)) {
+            throw new IllegalArgumentException("nats: percentile must be between 0 and 100");
+        }
+        if (minDelay < 0) {
+            throw new IllegalArgumentException("nats: delay must not be negative");
+        }
+        return new HedgePolicy(unit.toNanos(minDelay), percentile, DEFAULT_BUDGET_PERCENT);
+    }
+
+    /**
+     * Returns a copy of this policy that sends at most {@code percent} hedges per hundred
+     * requests. The default is 10.
+     *
+     * @param percent the hedge budget, from 0 to 100
+     * @return the policy
+     * @throws IllegalArgumentException if {@code percent} is out of range
+     */
+    public HedgePolicy withBudget(int percent) {
+        if (percent < 0 || percent > 100) {
+            throw new IllegalArgumentException("nats: budget must be between 0 and 100");
+        }
+        return new HedgePolicy(delayNanos, percentile, percent);
+    }
+
+    long getDelayNanos() {
+        return delayNanos;
+    }
+
+    double getPercentile() {
+        return percentile;
+    }
+
+    int getBudgetPercent() {
+        return budgetPercent;
+    }
+}
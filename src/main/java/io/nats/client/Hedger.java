@@ -0,0 +1,155 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Sends a backup copy of a request that has had no reply after the hedge delay. The copy uses a
+ * reply subject of its own, so that a win can be told apart from the original's reply.
+ */
+final class Hedger {
+    // Subjects beyond this many are hedged on the minimum delay, to bound memory
+    static final int MAX_TRACKED_SUBJECTS = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(Hedger.class);
+
+    private final ConnectionImpl nc;
+    private final HedgePolicy policy;
+    private final Map<String, LatencyTracker> trackers =
+            new ConcurrentHashMap<String, LatencyTracker>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+
+    Hedger(ConnectionImpl nc, HedgePolicy policy) {
+        this.nc = nc;
+        this.policy = policy;
+    }
+
+    // Arms the hedge for a request that has just been published.
+    void arm(final String subject, final byte[] data, final ResponseMux.Reply reply) {
+        requests.incrementAndGet();
+        final long start = System.nanoTime();
+        final LatencyTracker tracker = getTracker(subject);
+        final ScheduledFuture<?> task;
+        try {
+            task = nc.getTimer().schedule(new Runnable() {
+                public void run() {
+                    // Off the shared timer thread, since publishing takes the connection lock
+                    nc.executeTask(new Runnable() {
+                        public void run() {
+                            hedge(subject, data, reply);
+                        }
+                    });
+                }
+            }, getDelayNanos(tracker), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            return;
+        }
+
+        reply.whenComplete(new BiConsumer<Message, Throwable>() {
+            @Override
+            public void accept(Message msg, Throwable err) {
+                task.cancel(false);
+                if (msg != null && tracker != null) {
+                    tracker.record(System.nanoTime() - start);
+                }
+            }
+        });
+    }
+
+    void hedge(String subject, byte[] data, final ResponseMux.Reply reply) {
+        if (reply.isDone() || !acquireBudget()) {
+            return;
+        }
+        final ResponseMux mux;
+        try {
+            mux = nc.getResponseMux();
+        } catch (IllegalStateException e) {
+            return;
+        }
+        final String inbox = mux.register(new ResponseMux.Waiter() {
+            @Override
+            public boolean onReply(Message msg) {
+                if (reply.complete(msg)) {
+                    nc.getStatistics().incrementHedgesWon();
+                }
+                return true;
+            }
+
+            @Override
+            public void onTimeout() {
+            }
+
+            @Override
+            public void onError(Throwable err) {
+                reply.completeExceptionally(err);
+            }
+        });
+        reply.whenComplete(new BiConsumer<Message, Throwable>() {
+            @Override
+            public void accept(Message msg, Throwable err) {
+                mux.cancel(inbox);
+            }
+        });
+
+        nc.getStatistics().incrementHedgesSent();
+        try {
+            nc.publish(subject, inbox, data);
+        } catch (IOException | RuntimeException e) {
+            // The original request is still outstanding
+            logger.debug("nats: unable to send hedged request", e);
+        }
+    }
+
+    long getDelayNanos(LatencyTracker tracker) {
+        long delay = policy.getDelayNanos();
+        if (policy.getPercentile() > 0 && tracker != null) {
+            long observed = tracker.percentile(policy.getPercentile(), HedgePolicy.MIN_SAMPLES);
+            delay = Math.max(delay, observed);
+        }
+        return delay;
+    }
+
+    // Returns the tracker for subject, or null if latencies are not tracked.
+    LatencyTracker getTracker(String subject) {
+        if (policy.getPercentile() == 0) {
+            return null;
+        }
+        LatencyTracker tracker = trackers.get(subject);
+        if (tracker == null && trackers.size() < MAX_TRACKED_SUBJECTS) {
+            LatencyTracker created = new LatencyTracker();
+            tracker = trackers.putIfAbsent(subject, created);
+            if (tracker == null) {
+                tracker = created;
+            }
+        }
+        return tracker;
+    }
+
+    // Takes a hedge from the budget, unless that would exceed the budget percentage of requests.
+    boolean acquireBudget() {
+        while (true) {
+            long sent = hedges.get();
+            if ((sent + 1) * 100 > requests.get() * policy.getBudgetPercent()) {
+                return false;
+            }
+            if (hedges.compareAndSet(sent, sent + 1)) {
+                return true;
+            }
+        }
+    }
+}
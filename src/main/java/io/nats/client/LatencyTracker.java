@@ -0,0 +1,55 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.util.Arrays;
+
+/*
+ * A rolling window of recent latencies. Percentiles are recomputed every few samples rather than
+ * on every query.
+ */
+final class LatencyTracker {
+    static final int WINDOW = 256;
+    static final int RECOMPUTE_INTERVAL = 32;
+
+    private final long[] samples = new long[WINDOW];
+    private int count;
+    private int next;
+    private int sinceComputed;
+    private double cachedPercentile;
+    private long cached = -1;
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % WINDOW;
+        if (count < WINDOW) {
+            count++;
+        }
+        sinceComputed++;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    // Returns the given percentile of the window, or -1 if it holds fewer than minSamples.
+    synchronized long percentile(double percentile, int minSamples) {
+        if (count < minSamples) {
+            return -1;
+        }
+        if (cached < 0 || sinceComputed >= RECOMPUTE_INTERVAL
+                || cachedPercentile != percentile) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            cached = sorted[Math.max(0, Math.min(count - 1, index))];
+            cachedPercentile = percentile;
+            sinceComputed = 0;
+        }
+        return cached;
+    }
+}
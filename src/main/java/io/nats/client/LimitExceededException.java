@@ -0,0 +1,21 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.io.IOException;
+
+/*
+ * Fails a request that the concurrency limiter turned away without it ever being published, so
+ * that it can be told apart from failures that say something about the responders.
+ */
+class LimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    LimitExceededException() {
+        super(Nats.ERR_CONCURRENCY_LIMIT);
+    }
+}
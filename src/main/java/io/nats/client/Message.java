@@ -7,6 +7,7 @@
 package io.nats.client;
 
 import io.nats.client.Parser.MsgArg;
+import java.io.IOException;
 import java.util.Arrays;
 
 /**
@@ -63,6 +64,32 @@ public class Message {
         }
     }
 
+    /*
+     * Creates a message for sub that shares the subject, reply and payload of src without copying
+     * them.
+     */
+    Message(Message src, SubscriptionImpl sub) {
+        this.subjectBytes = src.subjectBytes;
+        this.subjectString = src.subjectString;
+        this.replyToBytes = src.replyToBytes;
+        this.replyToString = src.replyToString;
+        this.data = src.data;
+        this.sub = sub;
+    }
+
+    /*
+     * Creates a message for in-process delivery that shares the caller's subject, reply and
+     * payload arrays without copying them.
+     */
+    static Message shared(byte[] subject, byte[] reply, byte[] data, SubscriptionImpl sub) {
+        Message msg = new Message();
+        msg.subjectBytes = subject;
+        msg.replyToBytes = reply;
+        msg.data = data;
+        msg.sub = sub;
+        return msg;
+    }
+
     Message(byte[] data, String subject, String reply, SubscriptionImpl sub) {
         if (subject == null) {
             throw new NullPointerException("Subject cannot be null");
@@ -160,6 +187,23 @@ public class Message {
         }
     }
 
+    /**
+     * Publishes a reply to this message on its reply subject, over the connection it was
+     * received on.
+     *
+     * @param data the reply payload
+     * @throws IOException              if an I/O error is encountered
+     * @throws IllegalArgumentException if this message has no reply subject
+     * @throws IllegalStateException    if this message was not received on a subscription
+     * @see Connection#publishReply(Message, byte[])
+     */
+    public void respond(byte[] data) throws IOException {
+        if (sub == null) {
+            throw new IllegalStateException("nats: message was not received on a subscription");
+        }
+        sub.getConnection().publishReply(this, data);
+    }
+
     byte[] getReplyToBytes() {
         return replyToBytes;
     }
@@ -52,6 +52,15 @@ public final class NUID {
     // Global NUID
     public static final NUID globalNUID = new NUID();
 
+    // One NUID per thread, each with its own random prefix, so that they never contend. They
+    // share the global crypto source, which only the first needs to seed.
+    private static final ThreadLocal<NUID> localNUID = new ThreadLocal<NUID>() {
+        @Override
+        protected NUID initialValue() {
+            return new NUID(globalNUID.srand);
+        }
+    };
+
     static NUID getInstance() {
         return globalNUID;
     }
@@ -84,6 +93,19 @@ public final class NUID {
         randomizePrefix();
     }
 
+    /*
+     * Creates a NUID that draws its prefix from srand, which is shared and already seeded, and
+     * seeds its sequence from it too. Unlike the default constructor, this never reads the
+     * blocking seed source.
+     */
+    NUID(SecureRandom srand) {
+        this.srand = srand;
+        prand = new Random(srand.nextLong());
+        pre = new char[preLen];
+        resetSequential();
+        randomizePrefix();
+    }
+
     /**
      * Generate the next NUID string from the global locked NUID instance.
      *
@@ -93,18 +115,60 @@ public final class NUID {
         return getInstance().next();
     }
 
+    /**
+     * Generate the next NUID string from the calling thread's own NUID instance. Unlike
+     * {@link #nextGlobal()}, this takes no lock. Each thread's instance has its own random prefix,
+     * so NUIDs generated on different threads are as unique as those of separate instances.
+     *
+     * @return the next NUID string from the calling thread's NUID instance.
+     */
+    public static String nextLocal() {
+        return localNUID.get().next();
+    }
+
+    /**
+     * Write the next NUID from the calling thread's own NUID instance into {@code dst}, as
+     * {@link #next(byte[], int)} does, without taking a lock.
+     *
+     * @param dst the buffer to write to
+     * @param off the offset in {@code dst} to write the NUID at
+     * @throws IndexOutOfBoundsException if fewer than 22 bytes follow {@code off}
+     */
+    public static void nextLocal(byte[] dst, int off) {
+        localNUID.get().next(dst, off);
+    }
+
+    /**
+     * Write the next NUID from this instance into {@code dst} as 22 ASCII bytes, without
+     * allocating.
+     *
+     * @param dst the buffer to write to
+     * @param off the offset in {@code dst} to write the NUID at
+     * @throws IndexOutOfBoundsException if fewer than 22 bytes follow {@code off}
+     */
+    public final void next(byte[] dst, int off) {
+        if (off < 0 || dst.length - off < totalLen) {
+            throw new IndexOutOfBoundsException();
+        }
+        advance();
+
+        for (int i = 0; i < preLen; i++) {
+            dst[off + i] = (byte) pre[i];
+        }
+        int i = off + totalLen;
+        for (long l = seq; i > off + preLen; l /= base) {
+            i--;
+            dst[i] = (byte) digits[(int) (l % base)];
+        }
+    }
+
     /**
      * Generate the next NUID string from this instance.
      *
      * @return the next NUID string from this instance.
      */
     public final String next() {
-        // Increment and capture.
-        seq += inc;
-        if (seq >= maxSeq) {
-            randomizePrefix();
-            resetSequential();
-        }
+        advance();
 
         // Copy prefix
         char[] b = new char[totalLen];
@@ -119,6 +183,15 @@ public final class NUID {
         return new String(b);
     }
 
+    // Increments the sequential portion, starting over with a new prefix once it is exhausted
+    private void advance() {
+        seq += inc;
+        if (seq >= maxSeq) {
+            randomizePrefix();
+            resetSequential();
+        }
+    }
+
     // Resets the sequntial portion of the NUID
     void resetSequential() {
         seq = nextLong(prand, maxSeq);
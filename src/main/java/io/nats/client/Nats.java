@@ -141,6 +141,22 @@ public final class Nats {
      * This property is defined as String {@value #PROP_RECONNECT_BUF_SIZE}.
      */
     public static final String PROP_RECONNECT_BUF_SIZE = PFX + "reconnect.buffer.size";
+    /**
+     * This property is defined as String {@value #PROP_COALESCE_REQUESTS}.
+     */
+    public static final String PROP_COALESCE_REQUESTS = PFX + "coalesce.requests";
+    /**
+     * This property is defined as String {@value #PROP_LOCAL_DELIVERY}.
+     */
+    public static final String PROP_LOCAL_DELIVERY = PFX + "local.delivery";
+    /**
+     * This property is defined as String {@value #PROP_LOCAL_ROUTING}.
+     */
+    public static final String PROP_LOCAL_ROUTING = PFX + "local.routing";
+    /**
+     * This property is defined as String {@value #PROP_PENDING_BYTES_BUDGET}.
+     */
+    public static final String PROP_PENDING_BYTES_BUDGET = PFX + "pending.bytes.budget";
     /**
      * This property is defined as String {@value #PROP_RECONNECT_WAIT}.
      */
@@ -361,6 +377,31 @@ public final class Nats {
      * This error message is defined as String {@value #ERR_CONNECTION_READ}.
      */
     public static final String ERR_CONNECTION_READ = "nats: connection read error";
+    /**
+     * This error message is defined as String {@value #ERR_CONCURRENCY_LIMIT}.
+     */
+    public static final String ERR_CONCURRENCY_LIMIT = "nats: concurrency limit exceeded";
+    /**
+     * This error message is defined as String {@value #ERR_CIRCUIT_OPEN}.
+     */
+    public static final String ERR_CIRCUIT_OPEN = "nats: circuit breaker open";
+    /**
+     * This error message is defined as String {@value #ERR_STREAM_CANCELLED}.
+     */
+    public static final String ERR_STREAM_CANCELLED = "nats: reply stream cancelled";
+    /**
+     * This error message is defined as String {@value #ERR_STREAM_BROKEN}.
+     */
+    public static final String ERR_STREAM_BROKEN = "nats: reply stream chunk missing";
+    /**
+     * This error message is defined as String {@value #ERR_NO_REPLY_SUBJECT}.
+     */
+    public static final String ERR_NO_REPLY_SUBJECT = "nats: message has no reply subject";
+    /**
+     * This error message is defined as String {@value #ERR_LOCAL_QUEUE}.
+     */
+    public static final String ERR_LOCAL_QUEUE =
+            "nats: queue subscriptions are not supported with local delivery";
     /**
      * This error message is defined as String {@value #ERR_PROTOCOL}.
      */
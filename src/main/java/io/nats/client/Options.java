@@ -18,11 +18,15 @@ import static io.nats.client.Nats.PROP_CONNECTION_NAME;
 import static io.nats.client.Nats.PROP_CONNECTION_TIMEOUT;
 import static io.nats.client.Nats.PROP_DISCONNECTED_CB;
 import static io.nats.client.Nats.PROP_EXCEPTION_HANDLER;
+import static io.nats.client.Nats.PROP_COALESCE_REQUESTS;
+import static io.nats.client.Nats.PROP_LOCAL_DELIVERY;
+import static io.nats.client.Nats.PROP_LOCAL_ROUTING;
 import static io.nats.client.Nats.PROP_MAX_PINGS;
 import static io.nats.client.Nats.PROP_MAX_RECONNECT;
 import static io.nats.client.Nats.PROP_NORANDOMIZE;
 import static io.nats.client.Nats.PROP_PASSWORD;
 import static io.nats.client.Nats.PROP_PEDANTIC;
+import static io.nats.client.Nats.PROP_PENDING_BYTES_BUDGET;
 import static io.nats.client.Nats.PROP_PING_INTERVAL;
 import static io.nats.client.Nats.PROP_RECONNECTED_CB;
 import static io.nats.client.Nats.PROP_RECONNECT_ALLOWED;
@@ -40,6 +44,7 @@ import java.lang.reflect.Constructor;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
@@ -78,6 +83,12 @@ public class Options {
     final boolean allowReconnect;
     final int maxReconnect;
     final long reconnectWait;
+    // Cap of the exponential reconnect backoff, in milliseconds, or zero for a fixed wait
+    final long maxReconnectWait;
+    // Prefer servers with the lowest measured round trip time when reconnecting
+    final boolean latencyAware;
+    // Delay between raced connection attempts, in milliseconds, or zero to try servers in turn
+    final long connectRaceStagger;
     final int connectionTimeout;
     final long pingInterval;
     final int maxPingsOut;
@@ -91,6 +102,36 @@ public class Options {
     // Once this has been exhausted publish operations will error.
     final int reconnectBufSize;
 
+    // Pending inbound bytes shared by all subscriptions. Zero means unlimited.
+    final long pendingBytesBudget;
+
+    // Collapse identical and covered subscriptions onto shared server subscriptions.
+    final boolean localRouting;
+
+    // Deliver our own publishes to matching local subscriptions without a server round trip.
+    final boolean localDelivery;
+
+    // Timer for request timeouts and the ping timer. Null means the shared default timer.
+    final HashedWheelTimer timer;
+
+    // Send a backup copy of slow requests. Null means no hedging.
+    final HedgePolicy hedgePolicy;
+
+    // Answer repeated idempotent requests locally. Null means no caching.
+    final ResponseCache responseCache;
+
+    // Share one wire request between identical concurrent requests.
+    final boolean coalesceRequests;
+
+    // Limit outstanding requests per subject pattern. Null means no limit.
+    final ConcurrencyLimiter concurrencyLimiter;
+
+    // Fail requests fast while their responders are down. Null means no breaker.
+    final CircuitBreaker circuitBreaker;
+
+    // Subjects whose requests are published again after a reconnect
+    final List<String> resubmitPatterns;
+
     final String username;
     final String password;
     final String token;
@@ -118,7 +159,20 @@ public class Options {
         this.allowReconnect = builder.allowReconnect;
         this.maxReconnect = builder.maxReconnect;
         this.reconnectBufSize = builder.reconnectBufSize;
+        this.pendingBytesBudget = builder.pendingBytesBudget;
+        this.localRouting = builder.localRouting;
+        this.localDelivery = builder.localDelivery;
+        this.timer = builder.timer;
+        this.hedgePolicy = builder.hedgePolicy;
+        this.responseCache = builder.responseCache;
+        this.coalesceRequests = builder.coalesceRequests;
+        this.concurrencyLimiter = builder.concurrencyLimiter;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.resubmitPatterns = builder.resubmitPatterns;
         this.reconnectWait = builder.reconnectWait;
+        this.maxReconnectWait = builder.maxReconnectWait;
+        this.latencyAware = builder.latencyAware;
+        this.connectRaceStagger = builder.connectRaceStagger;
         this.connectionTimeout = builder.connectionTimeout;
         this.pingInterval = builder.pingInterval;
         this.maxPingsOut = builder.maxPingsOut;
@@ -156,7 +210,20 @@ public class Options {
                 && Boolean.compare(allowReconnect, other.allowReconnect) == 0
                 && Integer.compare(maxReconnect, other.maxReconnect) == 0
                 && Integer.compare(reconnectBufSize, other.reconnectBufSize) == 0
+                && Long.compare(pendingBytesBudget, other.pendingBytesBudget) == 0
+                && Boolean.compare(localRouting, other.localRouting) == 0
+                && Boolean.compare(localDelivery, other.localDelivery) == 0
+                && timer == other.timer
+                && hedgePolicy == other.hedgePolicy
+                && responseCache == other.responseCache
+                && Boolean.compare(coalesceRequests, other.coalesceRequests) == 0
+                && concurrencyLimiter == other.concurrencyLimiter
+                && circuitBreaker == other.circuitBreaker
+                && Objects.equals(resubmitPatterns, other.resubmitPatterns)
                 && Long.compare(reconnectWait, other.reconnectWait) == 0
+                && maxReconnectWait == other.maxReconnectWait
+                && Boolean.compare(latencyAware, other.latencyAware) == 0
+                && connectRaceStagger == other.connectRaceStagger
                 && Integer.compare(connectionTimeout, other.connectionTimeout) == 0
                 && Long.compare(pingInterval, other.pingInterval) == 0
                 && Integer.compare(maxPingsOut, other.maxPingsOut) == 0
@@ -177,8 +244,11 @@ public class Options {
     public int hashCode() {
         return Objects.hash(url, username, password, token, servers, noRandomize, connectionName,
                 verbose, pedantic, secure, allowReconnect, maxReconnect, reconnectBufSize,
-                reconnectWait, connectionTimeout, pingInterval, maxPingsOut, sslContext, tlsDebug,
-                factory, disconnectedCb, closedCb, reconnectedCb, asyncErrorCb);
+                pendingBytesBudget, localRouting, localDelivery, timer, hedgePolicy, responseCache,
+                coalesceRequests, concurrencyLimiter, circuitBreaker, resubmitPatterns,
+                reconnectWait, maxReconnectWait, latencyAware, connectRaceStagger,
+                connectionTimeout, pingInterval, maxPingsOut, sslContext, tlsDebug, factory,
+                disconnectedCb, closedCb, reconnectedCb, asyncErrorCb);
     }
 
     static boolean compare(String str1, String str2) {
@@ -272,10 +342,62 @@ public class Options {
         return reconnectBufSize;
     }
 
+    public long getPendingBytesBudget() {
+        return pendingBytesBudget;
+    }
+
+    public boolean isLocalRouting() {
+        return localRouting;
+    }
+
+    public boolean isLocalDelivery() {
+        return localDelivery;
+    }
+
+    public HashedWheelTimer getTimer() {
+        return timer;
+    }
+
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public boolean isCoalesceRequests() {
+        return coalesceRequests;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public List<String> getResubmitPatterns() {
+        return resubmitPatterns;
+    }
+
     public long getReconnectWait() {
         return reconnectWait;
     }
 
+    public long getMaxReconnectWait() {
+        return maxReconnectWait;
+    }
+
+    public boolean isLatencyAware() {
+        return latencyAware;
+    }
+
+    public long getConnectRaceStagger() {
+        return connectRaceStagger;
+    }
+
     public int getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -344,7 +466,20 @@ public class Options {
         private boolean allowReconnect = true;
         private int maxReconnect = Nats.DEFAULT_MAX_RECONNECT;
         private int reconnectBufSize = Nats.DEFAULT_RECONNECT_BUF_SIZE;
+        private long pendingBytesBudget;
+        private boolean localRouting;
+        private boolean localDelivery;
+        private HashedWheelTimer timer;
+        private HedgePolicy hedgePolicy;
+        private ResponseCache responseCache;
+        private boolean coalesceRequests;
+        private ConcurrencyLimiter concurrencyLimiter;
+        private CircuitBreaker circuitBreaker;
+        private List<String> resubmitPatterns;
         private long reconnectWait = Nats.DEFAULT_RECONNECT_WAIT;
+        private long maxReconnectWait;
+        private boolean latencyAware;
+        private long connectRaceStagger;
         private int connectionTimeout = Nats.DEFAULT_TIMEOUT;
         private long pingInterval = Nats.DEFAULT_PING_INTERVAL;
         private int maxPingsOut = Nats.DEFAULT_MAX_PINGS_OUT;
@@ -377,7 +512,20 @@ public class Options {
             this.allowReconnect = template.allowReconnect;
             this.maxReconnect = template.maxReconnect;
             this.reconnectBufSize = template.reconnectBufSize;
+            this.pendingBytesBudget = template.pendingBytesBudget;
+            this.localRouting = template.localRouting;
+            this.localDelivery = template.localDelivery;
+            this.timer = template.timer;
+            this.hedgePolicy = template.hedgePolicy;
+            this.responseCache = template.responseCache;
+            this.coalesceRequests = template.coalesceRequests;
+            this.concurrencyLimiter = template.concurrencyLimiter;
+            this.circuitBreaker = template.circuitBreaker;
+            this.resubmitPatterns = template.resubmitPatterns;
             this.reconnectWait = template.reconnectWait;
+            this.maxReconnectWait = template.maxReconnectWait;
+            this.latencyAware = template.latencyAware;
+            this.connectRaceStagger = template.connectRaceStagger;
             this.connectionTimeout = template.connectionTimeout;
             this.pingInterval = template.pingInterval;
             this.maxPingsOut = template.maxPingsOut;
@@ -469,6 +617,24 @@ public class Options {
                 this.reconnectBufSize = Integer.parseInt(props.getProperty(PROP_RECONNECT_BUF_SIZE,
                         Integer.toString(DEFAULT_RECONNECT_BUF_SIZE)));
             }
+            // PROP_COALESCE_REQUESTS
+            if (props.containsKey(PROP_COALESCE_REQUESTS)) {
+                this.coalesceRequests = Boolean.parseBoolean(
+                        props.getProperty(PROP_COALESCE_REQUESTS));
+            }
+            // PROP_LOCAL_DELIVERY
+            if (props.containsKey(PROP_LOCAL_DELIVERY)) {
+                this.localDelivery = Boolean.parseBoolean(props.getProperty(PROP_LOCAL_DELIVERY));
+            }
+            // PROP_LOCAL_ROUTING
+            if (props.containsKey(PROP_LOCAL_ROUTING)) {
+                this.localRouting = Boolean.parseBoolean(props.getProperty(PROP_LOCAL_ROUTING));
+            }
+            // PROP_PENDING_BYTES_BUDGET
+            if (props.containsKey(PROP_PENDING_BYTES_BUDGET)) {
+                this.pendingBytesBudget = Long.parseLong(
+                        props.getProperty(PROP_PENDING_BYTES_BUDGET, "0"));
+            }
             // PROP_CONNECTION_TIMEOUT
             if (props.containsKey(PROP_CONNECTION_TIMEOUT)) {
                 this.connectionTimeout = Integer.parseInt(
@@ -549,6 +715,140 @@ public class Options {
             return this;
         }
 
+        /**
+         * Sets the timer used for request timeouts and the ping timer. By default, all
+         * connections share {@link HashedWheelTimer#getDefault()}. The timer is not closed when
+         * the connection is.
+         *
+         * @param timer the timer, or {@code null} for the shared default
+         * @return the {@code Builder}
+         */
+        public Builder timer(HashedWheelTimer timer) {
+            this.timer = timer;
+            return this;
+        }
+
+        /**
+         * Enables hedged requests. A request made with {@code request()} or
+         * {@code requestAsync()} that has had no reply after the policy's delay is sent again,
+         * and the first reply to either copy is accepted. Responders must therefore be
+         * idempotent.
+         *
+         * @param policy the hedge policy, or {@code null} to disable hedging
+         * @return the {@code Builder}
+         */
+        public Builder hedging(HedgePolicy policy) {
+            this.hedgePolicy = policy;
+            return this;
+        }
+
+        /**
+         * Enables caching of replies to idempotent requests made with {@code request()} or
+         * {@code requestAsync()}, on the subjects configured in {@code cache}.
+         *
+         * @param cache the response cache, or {@code null} to disable caching
+         * @return the {@code Builder}
+         */
+        public Builder responseCache(ResponseCache cache) {
+            this.responseCache = cache;
+            return this;
+        }
+
+        /**
+         * Enables single-flight request coalescing. While a {@code request()} or
+         * {@code requestAsync()} is outstanding, identical requests (same subject and payload)
+         * wait for its reply instead of sending their own, and all of them receive the same
+         * reply {@code Message}, which must not be modified. Each caller keeps its own timeout,
+         * and the shared request is abandoned once no caller is waiting for it.
+         *
+         * @return the {@code Builder}
+         */
+        public Builder coalesceRequests() {
+            this.coalesceRequests = true;
+            return this;
+        }
+
+        /**
+         * Enables adaptive limits on the number of outstanding {@code request()} and
+         * {@code requestAsync()} calls, on the subjects configured in {@code limiter}.
+         *
+         * @param limiter the concurrency limiter, or {@code null} to disable limiting
+         * @return the {@code Builder}
+         */
+        public Builder concurrencyLimiter(ConcurrencyLimiter limiter) {
+            this.concurrencyLimiter = limiter;
+            return this;
+        }
+
+        /**
+         * Enables circuit breaking for {@code request()} and {@code requestAsync()} calls, on the
+         * subjects protected by {@code breaker}.
+         *
+         * @param breaker the circuit breaker, or {@code null} to disable circuit breaking
+         * @return the {@code Builder}
+         */
+        public Builder circuitBreaker(CircuitBreaker breaker) {
+            this.circuitBreaker = breaker;
+            return this;
+        }
+
+        /**
+         * Resubmits outstanding {@code request()} and {@code requestAsync()} calls on subjects
+         * matching {@code pattern} after a reconnect. Such a request is published again, under a
+         * fresh reply subject, once the connection is restored, since its first copy may never
+         * have reached the server. It still times out at its original deadline. This is only safe
+         * for idempotent requests. May be called more than once to add patterns.
+         *
+         * @param pattern the subject pattern, which may contain wildcards
+         * @return the {@code Builder}
+         */
+        public Builder resubmitOnReconnect(String pattern) {
+            if (pattern == null) {
+                throw new NullPointerException("nats: pattern must not be null");
+            }
+            List<String> patterns = new ArrayList<String>();
+            if (this.resubmitPatterns != null) {
+                patterns.addAll(this.resubmitPatterns);
+            }
+            patterns.add(pattern);
+            this.resubmitPatterns = Collections.unmodifiableList(patterns);
+            return this;
+        }
+
+        /**
+         * Enables in-process delivery of this connection's own publishes. A message published to
+         * a subject matched by local subscriptions is handed to them directly, sharing the
+         * payload array with the publisher, and is still sent to the server for remote
+         * subscribers. Replies published to the connection's own requests are handed to them in
+         * the same way. The server is asked not to echo the connection's messages back, so a
+         * queue subscription would no longer receive messages published on the same connection.
+         * Subscribing with a queue group therefore fails with an
+         * {@link IllegalArgumentException}.
+         *
+         * <p>The payload array must not be modified after it has been published. If the server
+         * cannot disable echo, a warning is logged and messages are delivered only through the
+         * server.
+         *
+         * @return the {@code Builder}
+         */
+        public Builder localDelivery() {
+            this.localDelivery = true;
+            return this;
+        }
+
+        /**
+         * Enables client-side subject routing. Subscriptions whose subject is identical to, or
+         * covered by, an existing subscription's subject share its server subscription, and
+         * inbound messages are fanned out to them in-process. Queue subscriptions are never
+         * shared.
+         *
+         * @return the {@code Builder}
+         */
+        public Builder localRouting() {
+            this.localRouting = true;
+            return this;
+        }
+
         public Builder maxPingsOut(int maxPingsOut) {
             this.maxPingsOut = maxPingsOut;
             return this;
@@ -588,6 +888,21 @@ public class Options {
             return this;
         }
 
+        /**
+         * Sets a budget of pending inbound message bytes shared by all subscriptions on the
+         * connection, in addition to each subscription's own pending limits. Once the budget is
+         * exhausted, subscriptions holding more than their fair share of it (the budget divided
+         * by the number of subscriptions) are treated as slow consumers. The default of zero
+         * means unlimited.
+         *
+         * @param bytes the maximum number of pending inbound bytes, or zero for no limit
+         * @return the {@code Builder}
+         */
+        public Builder pendingBytesBudget(long bytes) {
+            this.pendingBytesBudget = bytes;
+            return this;
+        }
+
         public Builder reconnectWait(long millis) {
             this.reconnectWait = millis;
             return this;
@@ -597,6 +912,64 @@ public class Options {
             return reconnectWait(unit.toMillis(duration));
         }
 
+        /**
+         * Backs off exponentially when retrying a server. The wait before another attempt on a
+         * server starts at the reconnect wait and doubles with each failed attempt, up to
+         * {@code max}. Each wait is randomized between half and all of its length, so that many
+         * clients that lost the same server do not all retry it at the same moment. The default
+         * of zero waits the reconnect wait every time.
+         *
+         * @param max  the longest wait before retrying a server, or zero for a fixed wait
+         * @param unit the time unit of {@code max}
+         * @return the {@code Builder}
+         * @see #reconnectWait(long, TimeUnit)
+         */
+        public Builder reconnectBackoff(long max, TimeUnit unit) {
+            if (max < 0) {
+                throw new IllegalArgumentException("nats: backoff must not be negative");
+            }
+            this.maxReconnectWait = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * Picks the server to reconnect to by measured latency instead of in list order. Among
+         * the servers with the fewest failed attempts, the one with the lowest round trip time is
+         * tried first. Round trip times are measured during the connection handshake and by the
+         * pings sent every ping interval.
+         *
+         * @return the {@code Builder}
+         */
+        public Builder latencyAware() {
+            this.latencyAware = true;
+            return this;
+        }
+
+        /**
+         * Races connection attempts to the servers in the pool, happy-eyeballs style, instead of
+         * trying them one at a time. An attempt is started on each server in turn, {@code stagger}
+         * after the previous one or as soon as it fails, and the first to complete the handshake
+         * is kept while the others are closed. An unreachable server then costs at most
+         * {@code stagger} rather than the full connection timeout. Applies to the first connect
+         * and to reconnects. The default of zero tries servers one at a time.
+         *
+         * @param stagger the delay before starting the next attempt, at least a millisecond, or
+         *                zero to disable racing
+         * @param unit    the time unit of {@code stagger}
+         * @return the {@code Builder}
+         */
+        public Builder connectRace(long stagger, TimeUnit unit) {
+            if (stagger < 0) {
+                throw new IllegalArgumentException("nats: stagger must not be negative");
+            }
+            if (stagger > 0 && unit.toMillis(stagger) == 0) {
+                // Would silently disable racing
+                throw new IllegalArgumentException("nats: stagger must be at least a millisecond");
+            }
+            this.connectRaceStagger = unit.toMillis(stagger);
+            return this;
+        }
+
         public Builder secure() {
             this.secure = true;
             return this;
@@ -0,0 +1,70 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection-wide budget of pending inbound message bytes. Every subscription attached to a
+ * connection draws its queued bytes from the same budget. Once the budget is exhausted, any
+ * subscription holding more than its fair share ({@code limit / members}) is treated as a slow
+ * consumer, while subscriptions under their share keep receiving messages.
+ */
+final class PendingBudget {
+    // Zero or less means unlimited; usage is still tracked.
+    private final long limit;
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicInteger members = new AtomicInteger();
+
+    PendingBudget(long limit) {
+        this.limit = limit;
+    }
+
+    long getLimit() {
+        return limit;
+    }
+
+    long getUsed() {
+        return used.get();
+    }
+
+    int getMembers() {
+        return members.get();
+    }
+
+    void join() {
+        members.incrementAndGet();
+    }
+
+    void leave(long pending) {
+        members.decrementAndGet();
+        release(pending);
+    }
+
+    void acquire(long bytes) {
+        used.addAndGet(bytes);
+    }
+
+    void release(long bytes) {
+        used.addAndGet(-bytes);
+    }
+
+    boolean isExhausted() {
+        return limit > 0 && used.get() > limit;
+    }
+
+    long fairShare() {
+        return limit / Math.max(1, members.get());
+    }
+
+    // Returns true if the budget is exhausted and a member holding pending bytes is above its
+    // fair share of it.
+    boolean isOverFairShare(long pending) {
+        return isExhausted() && pending > fairShare();
+    }
+}
@@ -0,0 +1,718 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import io.nats.client.Nats.ConnState;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Connection} backed by several connections to the same servers, so that publishing is
+ * not limited to the throughput of a single socket and its lock. Each member connection has its
+ * own reader, flusher and reconnect logic, so a member that is reconnecting only holds up the
+ * messages routed to it.
+ *
+ * <p>Publishes, requests and subscriptions are routed to a member by {@link Routing}. With
+ * {@link Routing#SUBJECT_HASH} all traffic on a subject goes through the same member, so messages
+ * published to a subject keep their order. With {@link Routing#ROUND_ROBIN} each call goes to the
+ * next member that is connected, and messages on a subject may be reordered. A member that is
+ * closed, having run out of reconnect attempts, is skipped: its subjects are spread over the
+ * members still open.
+ *
+ * <p>A plain subscription lives on a single member, as each member would otherwise deliver every
+ * message once. Asynchronous queue subscriptions can instead be sharded across every open member
+ * with {@link Builder#shardQueueSubscriptions(boolean)}, so that inbound messages for a busy queue
+ * group are parsed by several readers at once.
+ *
+ * <p>Callbacks set on the pool are set on every member, and are called once for each member with
+ * the member as the event's connection. Statistics are the sum of the members'.
+ *
+ * <pre>
+ * Connection nc = new PooledConnection.Builder(opts).size(4).connect();
+ * </pre>
+ */
+public final class PooledConnection implements Connection {
+    /**
+     * How a pool picks the member for a subject.
+     */
+    public enum Routing {
+        /** The member is chosen by the hash of the subject, keeping each subject in order. */
+        SUBJECT_HASH,
+        /** Each call goes to the next connected member, in turn. */
+        ROUND_ROBIN
+    }
+
+    /**
+     * Builds and connects a {@link PooledConnection}.
+     */
+    public static final class Builder {
+        private final Options opts;
+        private int size = 2;
+        private Routing routing = Routing.SUBJECT_HASH;
+        private boolean shardQueues;
+
+        /**
+         * Creates a builder for a pool whose members connect with {@code opts}.
+         *
+         * @param opts the options each member connects with
+         */
+        public Builder(Options opts) {
+            if (opts == null) {
+                throw new NullPointerException("nats: options must not be null");
+            }
+            this.opts = opts;
+        }
+
+        /**
+         * Sets the number of member connections. The default is 2.
+         *
+         * @param size the number of members
+         * @return the {@code Builder}
+         */
+        public Builder size(int size) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("nats: pool size must be positive");
+            }
+            this.size = size;
+            return this;
+        }
+
+        /**
+         * Sets how calls are routed to members. The default is {@link Routing#SUBJECT_HASH}.
+         *
+         * @param routing the routing
+         * @return the {@code Builder}
+         */
+        public Builder routing(Routing routing) {
+            if (routing == null) {
+                throw new NullPointerException("nats: routing must not be null");
+            }
+            this.routing = routing;
+            return this;
+        }
+
+        /**
+         * Sets whether asynchronous queue subscriptions join the queue group on every member
+         * instead of one. The server then spreads the group's messages across the members, and
+         * each member's reader parses its share in parallel, while the application sees a single
+         * subscription. The default is {@code false}.
+         *
+         * @param shard whether to shard queue subscriptions across members
+         * @return the {@code Builder}
+         */
+        public Builder shardQueueSubscriptions(boolean shard) {
+            this.shardQueues = shard;
+            return this;
+        }
+
+        /**
+         * Connects every member and returns the pool.
+         *
+         * @return the connected pool
+         * @throws IOException if a member fails to connect, in which case the others are closed
+         */
+        public PooledConnection connect() throws IOException {
+            List<Connection> members = new ArrayList<Connection>(size);
+            try {
+                for (int i = 0; i < size; i++) {
+                    members.add(opts.connect());
+                }
+            } catch (IOException | RuntimeException e) {
+                for (Connection member : members) {
+                    member.close();
+                }
+                throw e;
+            }
+            return new PooledConnection(members, routing, shardQueues);
+        }
+    }
+
+    private final Connection[] members;
+    private final Routing routing;
+    private final boolean shardQueues;
+    private final AtomicInteger next = new AtomicInteger();
+
+    PooledConnection(List<Connection> members, Routing routing, boolean shardQueues) {
+        this.members = members.toArray(new Connection[members.size()]);
+        this.routing = routing;
+        this.shardQueues = shardQueues;
+    }
+
+    /**
+     * Returns the member connections, in order.
+     *
+     * @return the members
+     */
+    public List<Connection> getMembers() {
+        List<Connection> list = new ArrayList<Connection>(members.length);
+        Collections.addAll(list, members);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns how calls are routed to members.
+     *
+     * @return the routing
+     */
+    public Routing getRouting() {
+        return routing;
+    }
+
+    /**
+     * Indicates whether asynchronous queue subscriptions are sharded across every member.
+     *
+     * @return {@code true} if queue subscriptions are sharded, otherwise {@code false}
+     */
+    public boolean isShardingQueueSubscriptions() {
+        return shardQueues;
+    }
+
+    // Returns the members that are not closed, or every member if all of them are, so that
+    // using them fails as a closed connection would.
+    private List<Connection> openMembers() {
+        List<Connection> open = new ArrayList<Connection>(members.length);
+        for (Connection member : members) {
+            if (!member.isClosed()) {
+                open.add(member);
+            }
+        }
+        return open.isEmpty() ? getMembers() : open;
+    }
+
+    // Returns the member for subject.
+    Connection member(String subject) {
+        return members[indexOf(subject.hashCode())];
+    }
+
+    // Returns the member for a subject given as bytes, consistent with member(String) for ASCII
+    // subjects, without decoding it.
+    Connection member(byte[] subject) {
+        return members[indexOf(hash(subject))];
+    }
+
+    // Returns the index of the member for a subject with the given hash.
+    private int indexOf(int subjectHash) {
+        if (routing == Routing.SUBJECT_HASH) {
+            int index = Math.floorMod(subjectHash, members.length);
+            return members[index].isClosed() ? reroute(index, subjectHash) : index;
+        }
+        // The next connected member in turn, or the next open one if none is connected
+        int start = Math.floorMod(next.getAndIncrement(), members.length);
+        for (int i = 0; i < members.length; i++) {
+            int index = (start + i) % members.length;
+            if (members[index].isConnected()) {
+                return index;
+            }
+        }
+        return members[start].isClosed() ? reroute(start, start) : start;
+    }
+
+    /*
+     * Returns the index of an open member to take over from the closed member at index, chosen
+     * by hash among the members still open. A member closed for good stays closed, so a subject
+     * keeps going to the same member from then on. Returns index if every member is closed.
+     */
+    private int reroute(int index, int hash) {
+        int open = 0;
+        for (Connection member : members) {
+            if (!member.isClosed()) {
+                open++;
+            }
+        }
+        if (open == 0) {
+            return index;
+        }
+        int nth = Math.floorMod(hash, open);
+        for (int i = 0; i < members.length; i++) {
+            if (!members[i].isClosed() && nth-- == 0) {
+                return i;
+            }
+        }
+        return index;
+    }
+
+    // Hashes subject bytes as String.hashCode() hashes the same ASCII characters.
+    static int hash(byte[] subject) {
+        int h = 0;
+        for (byte b : subject) {
+            h = 31 * h + (b & 0xff);
+        }
+        return h;
+    }
+
+    @Override
+    public void publish(String subject, byte[] data) throws IOException {
+        member(subject).publish(subject, data);
+    }
+
+    @Override
+    public void publish(Message msg) throws IOException {
+        member(msg.getSubjectBytes()).publish(msg);
+    }
+
+    @Override
+    public void publishReply(Message request, byte[] data) throws IOException {
+        byte[] reply = request.getReplyToBytes();
+        if (reply == null) {
+            throw new IllegalArgumentException(Nats.ERR_NO_REPLY_SUBJECT);
+        }
+        member(reply).publishReply(request, data);
+    }
+
+    @Override
+    public void publish(String subject, String reply, byte[] data) throws IOException {
+        member(subject).publish(subject, reply, data);
+    }
+
+    @Override
+    public void publish(String subject, String reply, byte[] data, boolean flush)
+            throws IOException {
+        member(subject).publish(subject, reply, data, flush);
+    }
+
+    @Override
+    public Message request(String subject, byte[] data, long timeout)
+            throws IOException, InterruptedException {
+        return member(subject).request(subject, data, timeout);
+    }
+
+    @Override
+    public Message request(String subject, byte[] data, long timeout, TimeUnit unit)
+            throws IOException, InterruptedException {
+        return member(subject).request(subject, data, timeout, unit);
+    }
+
+    @Override
+    public Message request(String subject, byte[] data) throws IOException, InterruptedException {
+        return member(subject).request(subject, data);
+    }
+
+    @Override
+    public List<Message> requestMulti(String subject, byte[] data, long timeout)
+            throws IOException, InterruptedException {
+        return member(subject).requestMulti(subject, data, timeout);
+    }
+
+    @Override
+    public List<Message> requestMulti(String subject, byte[] data, long timeout, TimeUnit unit)
+            throws IOException, InterruptedException {
+        return member(subject).requestMulti(subject, data, timeout, unit);
+    }
+
+    @Override
+    public CompletableFuture<Message> requestAsync(String subject, byte[] data, long timeout) {
+        return member(subject).requestAsync(subject, data, timeout);
+    }
+
+    @Override
+    public CompletableFuture<Message> requestAsync(String subject, byte[] data, long timeout,
+                                                   TimeUnit unit) {
+        return member(subject).requestAsync(subject, data, timeout, unit);
+    }
+
+    @Override
+    public CompletableFuture<Message> requestAsync(String subject, byte[] data, long timeout,
+                                                   TimeUnit unit, boolean resubmit) {
+        return member(subject).requestAsync(subject, data, timeout, unit, resubmit);
+    }
+
+    @Override
+    public CompletableFuture<List<Message>> scatterGather(String subject, byte[] data,
+                                                          GatherPolicy policy, long timeout,
+                                                          TimeUnit unit) {
+        return member(subject).scatterGather(subject, data, policy, timeout, unit);
+    }
+
+    @Override
+    public CompletableFuture<Integer> scatterGather(String subject, byte[] data,
+                                                    GatherPolicy policy, long timeout,
+                                                    TimeUnit unit, MessageHandler handler) {
+        return member(subject).scatterGather(subject, data, policy, timeout, unit, handler);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The batch is split by member, and each member's share goes out in a single flush.
+     */
+    @Override
+    public Map<RequestSpec, CompletableFuture<Message>> requestAll(List<RequestSpec> requests,
+                                                                  long timeout, TimeUnit unit) {
+        List<List<RequestSpec>> shares = new ArrayList<List<RequestSpec>>(members.length);
+        for (int i = 0; i < members.length; i++) {
+            shares.add(new ArrayList<RequestSpec>());
+        }
+        for (RequestSpec spec : requests) {
+            shares.get(indexOf(spec.getSubject().hashCode())).add(spec);
+        }
+        Map<RequestSpec, CompletableFuture<Message>> sent =
+                new HashMap<RequestSpec, CompletableFuture<Message>>();
+        for (int i = 0; i < members.length; i++) {
+            if (!shares.get(i).isEmpty()) {
+                sent.putAll(members[i].requestAll(shares.get(i), timeout, unit));
+            }
+        }
+        // In the order of requests
+        Map<RequestSpec, CompletableFuture<Message>> replies =
+                new LinkedHashMap<RequestSpec, CompletableFuture<Message>>();
+        for (RequestSpec spec : requests) {
+            replies.put(spec, sent.get(spec));
+        }
+        return replies;
+    }
+
+    @Override
+    public ReplyInputStream requestStream(String subject, byte[] data, long timeout,
+                                          TimeUnit unit) throws IOException {
+        return member(subject).requestStream(subject, data, timeout, unit);
+    }
+
+    @Override
+    public ReplyOutputStream replyStream(Message request) {
+        byte[] reply = request.getReplyToBytes();
+        if (reply == null) {
+            throw new IllegalArgumentException(Nats.ERR_NO_REPLY_SUBJECT);
+        }
+        return member(reply).replyStream(request);
+    }
+
+    @Override
+    public SyncSubscription subscribe(String subject) {
+        return member(subject).subscribe(subject);
+    }
+
+    @Override
+    public SyncSubscription subscribe(String subject, String queue) {
+        return member(subject).subscribe(subject, queue);
+    }
+
+    @Override
+    public AsyncSubscription subscribe(String subject, MessageHandler cb) {
+        return member(subject).subscribe(subject, cb);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>If the pool shards queue subscriptions, the subscription joins the queue group on every
+     * member, and its statistics are the sum of the members' subscriptions.
+     *
+     * @see Builder#shardQueueSubscriptions(boolean)
+     */
+    @Override
+    public AsyncSubscription subscribe(String subject, String queue, MessageHandler cb) {
+        if (shardQueues) {
+            return new ShardedSubscription(openMembers(), subject, queue, cb);
+        }
+        return member(subject).subscribe(subject, queue, cb);
+    }
+
+    @Override
+    @Deprecated
+    public AsyncSubscription subscribeAsync(String subject, MessageHandler cb) {
+        return subscribe(subject, cb);
+    }
+
+    @Override
+    @Deprecated
+    public AsyncSubscription subscribeAsync(String subject, String queue, MessageHandler cb) {
+        return subscribe(subject, queue, cb);
+    }
+
+    @Override
+    public SyncSubscription subscribeSync(String subject, String queue) {
+        return member(subject).subscribeSync(subject, queue);
+    }
+
+    @Override
+    public SyncSubscription subscribeSync(String subject) {
+        return member(subject).subscribeSync(subject);
+    }
+
+    @Override
+    public Flow.Publisher<Message> subscribeFlow(String subject) {
+        return member(subject).subscribeFlow(subject);
+    }
+
+    @Override
+    public Flow.Publisher<Message> subscribeFlow(String subject, String queue) {
+        return member(subject).subscribeFlow(subject, queue);
+    }
+
+    @Override
+    public Flow.Publisher<Message> subscribeFlow(String subject, String queue, int prefetch) {
+        return member(subject).subscribeFlow(subject, queue, prefetch);
+    }
+
+    @Override
+    public String newInbox() {
+        return members[0].newInbox();
+    }
+
+    /**
+     * Closes every member connection.
+     */
+    @Override
+    public void close() {
+        for (Connection member : members) {
+            member.close();
+        }
+    }
+
+    /**
+     * Indicates whether every member connection has been closed.
+     *
+     * @return {@code true} if the pool is closed, otherwise {@code false}
+     */
+    @Override
+    public boolean isClosed() {
+        for (Connection member : members) {
+            if (!member.isClosed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indicates whether every member connection is connected.
+     *
+     * @return {@code true} if all members are connected, otherwise {@code false}
+     */
+    @Override
+    public boolean isConnected() {
+        for (Connection member : members) {
+            if (!member.isConnected()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indicates whether any member connection is reconnecting.
+     *
+     * @return {@code true} if a member is reconnecting, otherwise {@code false}
+     */
+    @Override
+    public boolean isReconnecting() {
+        for (Connection member : members) {
+            if (member.isReconnecting()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isAuthRequired() {
+        return members[0].isAuthRequired();
+    }
+
+    @Override
+    public boolean isTlsRequired() {
+        return members[0].isTlsRequired();
+    }
+
+    /**
+     * Returns the sum of the member connections' statistics.
+     *
+     * @return the merged statistics
+     */
+    @Override
+    public Statistics getStats() {
+        Statistics stats = new Statistics();
+        for (Connection member : members) {
+            stats.add(member.getStats());
+        }
+        return stats;
+    }
+
+    @Override
+    public void resetStats() {
+        for (Connection member : members) {
+            member.resetStats();
+        }
+    }
+
+    /**
+     * Returns the smallest maximum payload among the member connections.
+     *
+     * @return the maximum message payload size in bytes
+     */
+    @Override
+    public long getMaxPayload() {
+        long max = Long.MAX_VALUE;
+        for (Connection member : members) {
+            max = Math.min(max, member.getMaxPayload());
+        }
+        return max;
+    }
+
+    /**
+     * Flushes every member connection in turn, each waiting up to {@code timeout}.
+     */
+    @Override
+    public void flush(int timeout) throws IOException, InterruptedException {
+        for (Connection member : members) {
+            member.flush(timeout);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException, InterruptedException {
+        for (Connection member : members) {
+            member.flush();
+        }
+    }
+
+    @Override
+    public ExceptionHandler getExceptionHandler() {
+        return members[0].getExceptionHandler();
+    }
+
+    @Override
+    public void setExceptionHandler(ExceptionHandler exceptionHandler) {
+        for (Connection member : members) {
+            member.setExceptionHandler(exceptionHandler);
+        }
+    }
+
+    @Override
+    public ClosedCallback getClosedCallback() {
+        return members[0].getClosedCallback();
+    }
+
+    @Override
+    public void setClosedCallback(ClosedCallback cb) {
+        for (Connection member : members) {
+            member.setClosedCallback(cb);
+        }
+    }
+
+    @Override
+    public DisconnectedCallback getDisconnectedCallback() {
+        return members[0].getDisconnectedCallback();
+    }
+
+    @Override
+    public void setDisconnectedCallback(DisconnectedCallback cb) {
+        for (Connection member : members) {
+            member.setDisconnectedCallback(cb);
+        }
+    }
+
+    @Override
+    public ReconnectedCallback getReconnectedCallback() {
+        return members[0].getReconnectedCallback();
+    }
+
+    @Override
+    public void setReconnectedCallback(ReconnectedCallback cb) {
+        for (Connection member : members) {
+            member.setReconnectedCallback(cb);
+        }
+    }
+
+    @Override
+    public String getConnectedUrl() {
+        return members[0].getConnectedUrl();
+    }
+
+    @Override
+    public String getConnectedServerId() {
+        return members[0].getConnectedServerId();
+    }
+
+    @Override
+    public String[] getServers() {
+        return members[0].getServers();
+    }
+
+    @Override
+    public String[] getDiscoveredServers() {
+        return members[0].getDiscoveredServers();
+    }
+
+    /**
+     * Returns {@code CLOSED} once every member is closed, {@code CONNECTED} while every member is
+     * connected, {@code RECONNECTING} while any member is reconnecting, and otherwise
+     * {@code DISCONNECTED}.
+     *
+     * @return the state of the pool
+     */
+    @Override
+    public ConnState getState() {
+        if (isClosed()) {
+            return ConnState.CLOSED;
+        }
+        if (isConnected()) {
+            return ConnState.CONNECTED;
+        }
+        return isReconnecting() ? ConnState.RECONNECTING : ConnState.DISCONNECTED;
+    }
+
+    @Override
+    public ServerInfo getConnectedServerInfo() {
+        return members[0].getConnectedServerInfo();
+    }
+
+    /**
+     * Returns the last exception registered on the first member connection that has one.
+     *
+     * @return the last exception, or {@code null} if there is none
+     */
+    @Override
+    public Exception getLastException() {
+        for (Connection member : members) {
+            Exception err = member.getLastException();
+            if (err != null) {
+                return err;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getPendingByteCount() {
+        int count = 0;
+        for (Connection member : members) {
+            count += member.getPendingByteCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getPendingBytesBudget() {
+        long budget = 0;
+        for (Connection member : members) {
+            if (member.getPendingBytesBudget() == 0) {
+                // Unlimited
+                return 0;
+            }
+            budget += member.getPendingBytesBudget();
+        }
+        return budget;
+    }
+
+    @Override
+    public long getPendingBytesUsed() {
+        long used = 0;
+        for (Connection member : members) {
+            used += member.getPendingBytesUsed();
+        }
+        return used;
+    }
+}
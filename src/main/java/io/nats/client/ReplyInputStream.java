@@ -0,0 +1,280 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.Nats.ERR_STREAM_BROKEN;
+import static io.nats.client.Nats.ERR_TIMEOUT;
+import static io.nats.client.ReplyOutputStream.CANCEL;
+import static io.nats.client.ReplyOutputStream.FLAG_END;
+import static io.nats.client.ReplyOutputStream.FLAG_ERROR;
+import static io.nats.client.ReplyOutputStream.HEADER_SIZE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reads a reply streamed by a {@link ReplyOutputStream}. Chunks are buffered as they arrive, and
+ * the responder is granted credits for more as they are read, so that at most {@code window}
+ * chunks are ever buffered.
+ *
+ * <p>A read throws an {@code IOException} if no chunk arrives within the stream's timeout, if a
+ * chunk was lost, or if the responder aborted the stream. Closing the stream before the end
+ * cancels the reply.
+ *
+ * @see Connection#requestStream(String, byte[], long, TimeUnit)
+ */
+public final class ReplyInputStream extends InputStream {
+    static final int DEFAULT_WINDOW = 8;
+
+    private final Connection nc;
+    private final ResponseMux mux;
+    private final String inbox;
+    private final long timeoutNanos;
+    private final int window;
+
+    private final Lock mu = new ReentrantLock();
+    private final Condition arrived = mu.newCondition();
+    // Guarded by mu
+    private final ArrayDeque<Message> chunks = new ArrayDeque<Message>();
+    private IOException failure;
+    private boolean closed;
+
+    // Written by the reading thread only, but also read by close(), which may be called from
+    // another thread to cancel a blocked read
+    private volatile String creditSubject;
+    private volatile boolean ended;
+
+    // Only used by the reading thread
+    private int nextSeq;
+    private int consumed;
+    private byte[] current;
+    private int pos;
+
+    ReplyInputStream(Connection nc, ResponseMux mux, long timeout, TimeUnit unit, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("nats: window must be positive");
+        }
+        this.nc = nc;
+        this.mux = mux;
+        this.timeoutNanos = (timeout < 0) ? -1 : unit.toNanos(timeout);
+        this.window = window;
+        this.inbox = mux.register(new ResponseMux.Waiter() {
+            @Override
+            public boolean onReply(Message msg) {
+                return add(msg);
+            }
+
+            @Override
+            public void onTimeout() {
+            }
+
+            @Override
+            public void onError(Throwable err) {
+                fail((err instanceof IOException) ? (IOException) err : new IOException(err));
+            }
+        });
+    }
+
+    // The subject chunks arrive on, to publish the request with.
+    String getInbox() {
+        return inbox;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if ((off | len | (off + len) | (b.length - (off + len))) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (current == null) ? 0 : current.length - pos;
+    }
+
+    /**
+     * Drops interest in further chunks. If the final chunk has not arrived, the responder is told
+     * to stop.
+     */
+    @Override
+    public void close() {
+        mu.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            chunks.clear();
+        } finally {
+            mu.unlock();
+        }
+        mux.cancel(inbox);
+        if (!ended && creditSubject != null) {
+            try {
+                grant(CANCEL);
+            } catch (IOException | IllegalStateException e) {
+                // The responder will time out waiting for credit
+            }
+        }
+    }
+
+    // Makes sure current has unread bytes, taking the next chunk if needed. Returns false at the
+    // end of the stream.
+    private boolean fill() throws IOException {
+        while (current == null || pos == current.length) {
+            if (ended) {
+                // An aborted stream keeps failing, rather than look as if it ended cleanly
+                IOException err = getFailure();
+                if (err != null) {
+                    throw err;
+                }
+                return false;
+            }
+            current = next();
+            pos = HEADER_SIZE;
+        }
+        return true;
+    }
+
+    // Takes the next chunk, waiting for it up to the timeout, and returns its bytes.
+    private byte[] next() throws IOException {
+        Message msg;
+        mu.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (chunks.isEmpty()) {
+                if (closed) {
+                    throw new IOException("nats: stream closed");
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                if (timeoutNanos < 0) {
+                    arrived.await();
+                } else if (remaining <= 0) {
+                    throw new IOException(ERR_TIMEOUT);
+                } else {
+                    remaining = arrived.awaitNanos(remaining);
+                }
+            }
+            msg = chunks.poll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            mu.unlock();
+        }
+
+        byte[] data = msg.getData();
+        if (data == null || data.length < HEADER_SIZE || seqOf(data) != nextSeq) {
+            throw new IOException(ERR_STREAM_BROKEN);
+        }
+        if (nextSeq == 0) {
+            creditSubject = msg.getReplyTo();
+        }
+        nextSeq++;
+        int flags = data[0];
+        if ((flags & FLAG_END) != 0) {
+            ended = true;
+            if ((flags & FLAG_ERROR) != 0) {
+                IOException err = new IOException("nats: reply stream aborted: " + new String(data,
+                        HEADER_SIZE, data.length - HEADER_SIZE, StandardCharsets.UTF_8));
+                fail(err);
+                throw err;
+            }
+        } else {
+            credit();
+        }
+        return data;
+    }
+
+    // Grants the responder credits for the chunks read: a full window after the first, and then
+    // in batches of half a window, to keep credit messages few.
+    private void credit() throws IOException {
+        if (creditSubject == null) {
+            return;
+        }
+        if (nextSeq == 1) {
+            grant(window);
+            return;
+        }
+        if (++consumed >= Math.max(1, window / 2)) {
+            grant(consumed);
+            consumed = 0;
+        }
+    }
+
+    private void grant(int n) throws IOException {
+        byte[] data = new byte[] {(byte) (n >>> 24), (byte) (n >>> 16), (byte) (n >>> 8),
+                (byte) n};
+        nc.publish(creditSubject, data);
+    }
+
+    private static int seqOf(byte[] data) {
+        return ((data[1] & 0xff) << 24) | ((data[2] & 0xff) << 16) | ((data[3] & 0xff) << 8)
+                | (data[4] & 0xff);
+    }
+
+    // Called on the connection's reader thread; returns true once no more chunks are wanted.
+    private boolean add(Message msg) {
+        mu.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            chunks.add(msg);
+            arrived.signalAll();
+        } finally {
+            mu.unlock();
+        }
+        byte[] data = msg.getData();
+        return data != null && data.length > 0 && (data[0] & FLAG_END) != 0;
+    }
+
+    private IOException getFailure() {
+        mu.lock();
+        try {
+            return failure;
+        } finally {
+            mu.unlock();
+        }
+    }
+
+    private void fail(IOException err) {
+        mu.lock();
+        try {
+            failure = err;
+            arrived.signalAll();
+        } finally {
+            mu.unlock();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.Nats.ERR_STREAM_CANCELLED;
+import static io.nats.client.Nats.ERR_TIMEOUT;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streams a reply to a request as a sequence of chunk messages, which the requester reads with a
+ * {@link ReplyInputStream}. The reply may be larger than the server's maximum payload.
+ *
+ * <p>Each chunk starts with a flags byte and a 4-byte sequence number. The first chunk carries
+ * the subject on which the requester grants credits, each of which allows one more chunk to be
+ * sent. Writing blocks while no credit is available, so a fast responder cannot overrun a slow
+ * requester. Closing the stream sends the final chunk.
+ *
+ * @see Connection#replyStream(Message)
+ */
+public final class ReplyOutputStream extends OutputStream {
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    static final long DEFAULT_CREDIT_TIMEOUT_MILLIS = 30000;
+
+    static final int HEADER_SIZE = 5;
+    static final int FLAG_END = 0x01;
+    static final int FLAG_ERROR = 0x02;
+    // A credit grant that cancels the stream
+    static final int CANCEL = -1;
+
+    private final Connection nc;
+    private final String replyTo;
+    private final String creditInbox;
+    private final AsyncSubscription creditSub;
+    private final long creditTimeoutNanos;
+    private final byte[] buf;
+    private int count;
+    private int seq;
+    private boolean closed;
+
+    private final Lock mu = new ReentrantLock();
+    private final Condition credited = mu.newCondition();
+    // Guarded by mu. The first chunk needs no grant.
+    private int credits = 1;
+    private boolean cancelled;
+
+    ReplyOutputStream(Connection nc, Message request, int chunkSize, long creditTimeout,
+                      TimeUnit unit) {
+        if (request.getReplyTo() == null) {
+            throw new IllegalArgumentException("nats: request has no reply subject");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("nats: chunk size must be positive");
+        }
+        this.nc = nc;
+        this.replyTo = request.getReplyTo();
+        this.creditTimeoutNanos = unit.toNanos(creditTimeout);
+        this.buf = new byte[chunkSize];
+        this.creditInbox = nc.newInbox();
+        this.creditSub = nc.subscribe(creditInbox, new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                grant(msg.getData());
+            }
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buf.length) {
+            sendChunk(0);
+        }
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if ((off | len | (off + len) | (b.length - (off + len))) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            if (count == buf.length) {
+                sendChunk(0);
+            }
+            int n = Math.min(len, buf.length - count);
+            System.arraycopy(b, off, buf, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Sends the buffered bytes as a chunk, waiting for a credit if needed.
+     *
+     * @throws IOException if no credit is granted in time, or the requester cancelled the stream
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            sendChunk(0);
+        }
+    }
+
+    /**
+     * Sends the final chunk, with any buffered bytes.
+     *
+     * @throws IOException if no credit is granted in time, or the requester cancelled the stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            sendChunk(FLAG_END);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Ends the stream with an error instead of the final chunk. The requester's next read
+     * throws an {@code IOException} with {@code reason} in its message.
+     *
+     * @param reason why the reply could not be completed
+     * @throws IOException if no credit is granted in time, or the requester cancelled the stream
+     */
+    public void abort(String reason) throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            byte[] text = String.valueOf(reason).getBytes(StandardCharsets.UTF_8);
+            count = Math.min(text.length, buf.length);
+            System.arraycopy(text, 0, buf, 0, count);
+            sendChunk(FLAG_ERROR | FLAG_END);
+        } finally {
+            release();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("nats: stream closed");
+        }
+    }
+
+    private void release() {
+        closed = true;
+        creditSub.close();
+    }
+
+    private void sendChunk(int flags) throws IOException {
+        awaitCredit();
+        byte[] chunk = new byte[HEADER_SIZE + count];
+        chunk[0] = (byte) flags;
+        chunk[1] = (byte) (seq >>> 24);
+        chunk[2] = (byte) (seq >>> 16);
+        chunk[3] = (byte) (seq >>> 8);
+        chunk[4] = (byte) seq;
+        System.arraycopy(buf, 0, chunk, HEADER_SIZE, count);
+        // Only the first chunk needs to tell the requester where to send credits
+        nc.publish(replyTo, (seq == 0) ? creditInbox : null, chunk);
+        seq++;
+        count = 0;
+    }
+
+    private void awaitCredit() throws IOException {
+        mu.lock();
+        try {
+            long remaining = creditTimeoutNanos;
+            while (credits == 0 && !cancelled) {
+                if (remaining <= 0) {
+                    throw new IOException(ERR_TIMEOUT);
+                }
+                remaining = credited.awaitNanos(remaining);
+            }
+            if (cancelled) {
+                throw new IOException(ERR_STREAM_CANCELLED);
+            }
+            credits--;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            mu.unlock();
+        }
+    }
+
+    // Called on the credit subscription's thread.
+    void grant(byte[] data) {
+        if (data == null || data.length < 4) {
+            return;
+        }
+        int n = ((data[0] & 0xff) << 24) | ((data[1] & 0xff) << 16) | ((data[2] & 0xff) << 8)
+                | (data[3] & 0xff);
+        mu.lock();
+        try {
+            if (n == CANCEL) {
+                cancelled = true;
+            } else if (n > 0) {
+                credits += n;
+            }
+            credited.signalAll();
+        } finally {
+            mu.unlock();
+        }
+    }
+
+    AsyncSubscription getCreditSubscription() {
+        return creditSub;
+    }
+}
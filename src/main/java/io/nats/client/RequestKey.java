@@ -0,0 +1,43 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.util.Arrays;
+
+/*
+ * Identifies a request by its subject and payload. The payload is not copied, so it must not be
+ * modified while the key is in use.
+ */
+final class RequestKey {
+    final String subject;
+    private final byte[] data;
+    private final int hash;
+
+    RequestKey(String subject, byte[] data) {
+        this.subject = subject;
+        this.data = data;
+        this.hash = 31 * subject.hashCode() + Arrays.hashCode(data);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey other = (RequestKey) obj;
+        return hash == other.hash && subject.equals(other.subject)
+                && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
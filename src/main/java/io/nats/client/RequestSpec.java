@@ -0,0 +1,47 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.Nats.ERR_BAD_SUBJECT;
+
+/**
+ * One request of a batch sent with {@link Connection#requestAll(java.util.List, long,
+ * java.util.concurrent.TimeUnit)}. Specs compare by identity, so a batch may hold several
+ * requests with the same subject and payload.
+ */
+public final class RequestSpec {
+    private final String subject;
+    private final byte[] data;
+
+    /**
+     * Creates a request for {@code subject}.
+     *
+     * @param subject the subject to publish the request message to
+     * @param data    the request message payload
+     */
+    public RequestSpec(String subject, byte[] data) {
+        if (subject == null) {
+            throw new NullPointerException(ERR_BAD_SUBJECT);
+        }
+        this.subject = subject;
+        this.data = data;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{subject=%s, data=%d bytes}", subject,
+                (data == null) ? 0 : data.length);
+    }
+}
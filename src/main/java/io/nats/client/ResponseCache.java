@@ -0,0 +1,242 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A client-side cache of replies to idempotent requests. Requests whose subject matches one of
+ * the cache's patterns are answered from the cache while a reply to an identical request (same
+ * subject and payload) is fresh, without a round trip to the server. The least recently used
+ * entries are evicted once the cache is full.
+ *
+ * <p>A pattern may name an invalidation subject; any message published there drops the entries
+ * cached under that pattern. Cached replies are shared between callers and must not be
+ * modified, nor may a request payload be modified after the request is made.
+ *
+ * @see Options.Builder#responseCache(ResponseCache)
+ */
+public final class ResponseCache {
+    static final class Rule {
+        final String pattern;
+        final long ttlNanos;
+        final String invalidationSubject;
+
+        Rule(String pattern, long ttlNanos, String invalidationSubject) {
+            this.pattern = pattern;
+            this.ttlNanos = ttlNanos;
+            this.invalidationSubject = invalidationSubject;
+        }
+    }
+
+    private static final class Entry {
+        final Message reply;
+        final long expiresAt;
+        final Rule rule;
+
+        Entry(Message reply, long expiresAt, Rule rule) {
+            this.reply = reply;
+            this.expiresAt = expiresAt;
+            this.rule = rule;
+        }
+    }
+
+    private final int maxEntries;
+    private final List<Rule> rules = new CopyOnWriteArrayList<Rule>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // Bumped by every invalidation, so that replies to requests made before it are not cached
+    private final AtomicLong generation = new AtomicLong();
+    // Access-ordered, so iteration starts at the least recently used entry. Guarded by this.
+    private final LinkedHashMap<RequestKey, Entry> entries;
+
+    /**
+     * Creates an empty cache, which caches nothing until patterns are added with
+     * {@link #cache(String, long, TimeUnit)}.
+     *
+     * @param maxEntries the maximum number of cached replies
+     * @throws IllegalArgumentException if {@code maxEntries} is not positive
+     */
+    public ResponseCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("nats: maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<RequestKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RequestKey, ResponseCache.Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Caches replies to requests on subjects matching {@code pattern} for {@code ttl}.
+     *
+     * @param pattern the subject pattern, which may contain wildcards
+     * @param ttl     how long a reply stays fresh
+     * @param unit    the unit of {@code ttl}
+     * @return this cache
+     */
+    public ResponseCache cache(String pattern, long ttl, TimeUnit unit) {
+        return cache(pattern, ttl, unit, null);
+    }
+
+    /**
+     * Caches replies to requests on subjects matching {@code pattern} for {@code ttl}, dropping
+     * them whenever a message is published on {@code invalidationSubject}.
+     *
+     * @param pattern             the subject pattern, which may contain wildcards
+     * @param ttl                 how long a reply stays fresh
+     * @param unit                the unit of {@code ttl}
+     * @param invalidationSubject the subject whose messages invalidate the cached replies, or
+     *                            {@code null} for none
+     * @return this cache
+     * @throws IllegalArgumentException if {@code ttl} is not positive
+     */
+    public ResponseCache cache(String pattern, long ttl, TimeUnit unit,
+                               String invalidationSubject) {
+        if (pattern == null) {
+            throw new NullPointerException("nats: pattern must not be null");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("nats: ttl must be positive");
+        }
+        rules.add(new Rule(pattern, unit.toNanos(ttl), invalidationSubject));
+        return this;
+    }
+
+    /**
+     * Returns the number of requests answered from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of cacheable requests that were not answered from the cache.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of replies evicted to make room for newer ones.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the fraction of cacheable requests answered from the cache.
+     *
+     * @return the hit rate, from 0 to 1
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return (total == 0) ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Returns the number of cached replies, including any that have expired but not yet been
+     * removed.
+     *
+     * @return the number of cached replies
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Drops every cached reply.
+     */
+    public synchronized void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    // Returns the rule for subject, or null if it is not cacheable.
+    Rule getRule(String subject) {
+        for (Rule rule : rules) {
+            if (SubjectTrie.covers(rule.pattern, subject)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    // Returns the fresh reply cached for key, counting a hit or a miss.
+    synchronized Message get(RequestKey key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+            hits.incrementAndGet();
+            return entry.reply;
+        }
+        if (entry != null) {
+            entries.remove(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    long getGeneration() {
+        return generation.get();
+    }
+
+    // Caches reply, unless the cache has been invalidated since the request was made.
+    synchronized void put(RequestKey key, Rule rule, Message reply, long requestGeneration) {
+        if (generation.get() == requestGeneration) {
+            entries.put(key, new Entry(reply, System.nanoTime() + rule.ttlNanos, rule));
+        }
+    }
+
+    List<String> getInvalidationSubjects() {
+        List<String> subjects = new ArrayList<String>();
+        for (Rule rule : rules) {
+            if (rule.invalidationSubject != null
+                    && !subjects.contains(rule.invalidationSubject)) {
+                subjects.add(rule.invalidationSubject);
+            }
+        }
+        return subjects;
+    }
+
+    // Drops the replies cached under the rules invalidated by subject.
+    synchronized void invalidate(String subject) {
+        generation.incrementAndGet();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            String invalidation = it.next().rule.invalidationSubject;
+            if (invalidation != null && invalidation.equals(subject)) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.Nats.ERR_TIMEOUT;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Routes replies received on a connection's single wildcard response subscription
+ * (_INBOX.<nuid>.*) to the requests waiting for them. Each request registers a waiter under a
+ * reply subject of its own, so only its PUB needs to go on the wire.
+ */
+final class ResponseMux {
+    /*
+     * Receives the replies sent to one reply subject.
+     */
+    interface Waiter {
+        // Returns true once no more replies are wanted, which releases the reply subject.
+        boolean onReply(Message msg);
+
+        void onTimeout();
+
+        void onError(Throwable err);
+    }
+
+    /*
+     * A waiter for a single reply.
+     */
+    static final class Reply extends CompletableFuture<Message> implements Waiter {
+        @Override
+        public boolean onReply(Message msg) {
+            complete(msg);
+            return true;
+        }
+
+        @Override
+        public void onTimeout() {
+            completeExceptionally(new TimeoutException(ERR_TIMEOUT));
+        }
+
+        @Override
+        public void onError(Throwable err) {
+            completeExceptionally(err);
+        }
+    }
+
+    /*
+     * A waiter that streams replies to a handler until its policy is satisfied or it times out,
+     * then completes with the number of replies handled.
+     */
+    static final class Gather extends CompletableFuture<Integer> implements Waiter {
+        private final GatherPolicy policy;
+        private final MessageHandler handler;
+        // Guarded by this
+        private int received;
+
+        Gather(GatherPolicy policy, MessageHandler handler) {
+            this.policy = policy;
+            this.handler = handler;
+        }
+
+        @Override
+        public synchronized boolean onReply(Message msg) {
+            if (isDone()) {
+                return true;
+            }
+            received++;
+            try {
+                handler.onMessage(msg);
+            } catch (RuntimeException e) {
+                completeExceptionally(e);
+                return true;
+            }
+            if (policy.isSatisfied(received, msg)) {
+                complete(received);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized void onTimeout() {
+            complete(received);
+        }
+
+        @Override
+        public void onError(Throwable err) {
+            completeExceptionally(err);
+        }
+    }
+
+    private final String prefix;
+    private final byte[] prefixBytes;
+    private final AtomicLong tokens = new AtomicLong();
+    private final Map<String, Waiter> waiters = new ConcurrentHashMap<String, Waiter>();
+
+    ResponseMux(String inbox) {
+        this.prefix = inbox + ".";
+        this.prefixBytes = prefix.getBytes();
+    }
+
+    // The subject of the wildcard subscription all replies arrive on.
+    String getSubject() {
+        return prefix + "*";
+    }
+
+    // Returns whether the wildcard subscription would receive a message published to subject.
+    boolean owns(byte[] subject) {
+        if (subject.length <= prefixBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < prefixBytes.length; i++) {
+            if (subject[i] != prefixBytes[i]) {
+                return false;
+            }
+        }
+        for (int i = prefixBytes.length; i < subject.length; i++) {
+            if (subject[i] == '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Registers waiter under a new reply subject, which is returned.
+    String register(Waiter waiter) {
+        String replyTo = prefix + Long.toString(tokens.incrementAndGet(), 36);
+        waiters.put(replyTo, waiter);
+        return replyTo;
+    }
+
+    // Drops interest in replyTo; returns false if it was already released.
+    boolean cancel(String replyTo) {
+        return waiters.remove(replyTo) != null;
+    }
+
+    // Hands msg to the waiter for its subject, if there still is one. Replies that arrive after
+    // their request completed or timed out are dropped.
+    void dispatch(Message msg) {
+        String replyTo = msg.getSubject();
+        Waiter waiter = waiters.get(replyTo);
+        if (waiter != null && waiter.onReply(msg)) {
+            waiters.remove(replyTo, waiter);
+        }
+    }
+
+    // Fails and releases every outstanding waiter.
+    void failAll(Throwable err) {
+        Iterator<Waiter> it = waiters.values().iterator();
+        while (it.hasNext()) {
+            Waiter waiter = it.next();
+            it.remove();
+            waiter.onError(err);
+        }
+    }
+
+    int size() {
+        return waiters.size();
+    }
+}
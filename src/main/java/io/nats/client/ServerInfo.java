@@ -46,6 +46,9 @@ class ServerInfo {
     @SerializedName("connect_urls")
     private String[] connectUrls;
 
+    @SerializedName("proto")
+    private int proto;
+
     private transient String jsonString = null;
     private static final transient Gson gson = new GsonBuilder().create();
 
@@ -77,6 +80,7 @@ class ServerInfo {
         this.tlsRequired = input.tlsRequired;
         this.tlsVerify = input.tlsVerify;
         this.maxPayload = input.maxPayload;
+        this.proto = input.proto;
         if (input.connectUrls != null) {
             this.connectUrls = Arrays.copyOf(input.connectUrls, input.connectUrls.length);
         }
@@ -179,6 +183,14 @@ class ServerInfo {
         this.maxPayload = maxPayload;
     }
 
+    int getProto() {
+        return proto;
+    }
+
+    void setProto(int proto) {
+        this.proto = proto;
+    }
+
     String[] getConnectUrls() {
         return connectUrls;
     }
@@ -220,12 +232,13 @@ class ServerInfo {
                 && Boolean.compare(tlsRequired, other.tlsRequired) == 0
                 && Boolean.compare(tlsVerify, other.tlsVerify) == 0
                 && Long.compare(maxPayload, other.maxPayload) == 0
+                && Integer.compare(proto, other.proto) == 0
                 && Arrays.equals(connectUrls, other.connectUrls));
     }
 
     @Override
     public int hashCode() {
         return Objects.hash(id, version, goVersion, host, port, authRequired, sslRequired,
-                tlsRequired, tlsVerify, maxPayload, connectUrls);
+                tlsRequired, tlsVerify, maxPayload, proto, connectUrls);
     }
 }
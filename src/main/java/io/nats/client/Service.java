@@ -0,0 +1,466 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.Nats.ERR_BAD_SUBJECT;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A responder that serves requests on one or more subjects with a pool of worker threads. Each
+ * endpoint subscribes to its subject, in the service's queue group if it has one, and publishes
+ * whatever its {@link ServiceHandler} returns to the request's reply subject.
+ *
+ * <p>At most {@code maxInFlight} requests are queued or being handled at once. Once that many are
+ * outstanding, the service either answers further requests at once with a fixed rejection reply,
+ * or, if it has a queue group, by default withdraws its interest from the server, so that other
+ * members of the group receive the work until enough requests have completed. Requests already on
+ * their way when interest is withdrawn are still handled. Without a queue group there is nobody to
+ * yield to, so requests are rejected, with an empty reply unless another one is set. So are
+ * requests on an endpoint whose subscription cannot withdraw its interest on its own, such as one
+ * made through a {@link PooledConnection} or sharing a routed subscription.
+ *
+ * <pre>
+ *     Service svc = new Service.Builder(nc)
+ *             .queue("workers")
+ *             .workers(8)
+ *             .maxInFlight(64)
+ *             .endpoint("orders.get", handler)
+ *             .build();
+ * </pre>
+ */
+public final class Service implements AutoCloseable {
+    static final String WORKER_NAME = "jnats-service";
+
+    /**
+     * The handling statistics of one service endpoint.
+     */
+    public static final class Endpoint {
+        private final Service service;
+        private final String subject;
+        private final ServiceHandler handler;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final LatencyTracker latencies = new LatencyTracker();
+        private final long started = System.nanoTime();
+        private volatile AsyncSubscription sub;
+        // Cleared once sub turns out not to support withdrawing its interest
+        private volatile boolean pausable = true;
+
+        Endpoint(Service service, String subject, ServiceHandler handler) {
+            this.service = service;
+            this.subject = subject;
+            this.handler = handler;
+        }
+
+        /**
+         * Returns the subject this endpoint serves.
+         *
+         * @return the subject
+         */
+        public String getSubject() {
+            return subject;
+        }
+
+        /**
+         * Returns the number of requests handled, including those that failed.
+         *
+         * @return the number of requests handled
+         */
+        public long getRequests() {
+            return requests.get();
+        }
+
+        /**
+         * Returns the number of requests whose handler threw.
+         *
+         * @return the number of failed requests
+         */
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+         * Returns the number of requests answered with the rejection reply because the service
+         * was saturated.
+         *
+         * @return the number of rejected requests
+         */
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        /**
+         * Returns the mean time from receiving a request to replying to it.
+         *
+         * @param unit the unit of the result
+         * @return the mean latency, or zero if no request has been handled
+         */
+        public long getAverageLatency(TimeUnit unit) {
+            long count = requests.get();
+            return (count == 0) ? 0 : unit.convert(totalNanos.get() / count,
+                    TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the given percentile of the latencies of the most recently handled requests.
+         *
+         * @param percentile the percentile, greater than 0 and at most 100
+         * @param unit       the unit of the result
+         * @return the latency percentile, or zero if no request has been handled
+         */
+        public long getLatencyPercentile(double percentile, TimeUnit unit) {
+            if (!(percentile > 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("nats: percentile must be between 0 and 100");
+            }
+            long nanos = latencies.percentile(percentile, 1);
+            return (nanos < 0) ? 0 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the mean number of requests handled per second since the service started.
+         *
+         * @return the throughput
+         */
+        public double getThroughput() {
+            long elapsed = System.nanoTime() - started;
+            return (elapsed <= 0) ? 0 : requests.get() * 1e9 / elapsed;
+        }
+
+        AsyncSubscription getSubscription() {
+            return sub;
+        }
+
+        void record(long nanos, boolean failed) {
+            if (failed) {
+                errors.incrementAndGet();
+            }
+            totalNanos.addAndGet(nanos);
+            latencies.record(nanos);
+            requests.incrementAndGet();
+        }
+
+        void subscribe(Connection nc, String queue) {
+            sub = nc.subscribe(subject, queue, new MessageHandler() {
+                @Override
+                public void onMessage(Message msg) {
+                    service.receive(Endpoint.this, msg);
+                }
+            });
+        }
+    }
+
+    /**
+     * A builder for {@code Service} objects.
+     */
+    public static final class Builder {
+        private final Connection nc;
+        private final Map<String, ServiceHandler> handlers =
+                new LinkedHashMap<String, ServiceHandler>();
+        private String queue;
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private int maxInFlight;
+        private byte[] rejectReply;
+
+        /**
+         * Creates a builder for a service on {@code nc}.
+         *
+         * @param nc the connection to serve requests on
+         */
+        public Builder(Connection nc) {
+            if (nc == null) {
+                throw new NullPointerException("nats: connection must not be null");
+            }
+            this.nc = nc;
+        }
+
+        /**
+         * Sets the queue group the endpoints subscribe in. By default they subscribe without one.
+         *
+         * @param queue the queue group
+         * @return the {@code Builder}
+         */
+        public Builder queue(String queue) {
+            this.queue = queue;
+            return this;
+        }
+
+        /**
+         * Sets the number of worker threads. The default is the number of processors.
+         *
+         * @param workers the number of worker threads
+         * @return the {@code Builder}
+         */
+        public Builder workers(int workers) {
+            if (workers <= 0) {
+                throw new IllegalArgumentException("nats: workers must be positive");
+            }
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests queued or being handled at once. The default is
+         * four per worker.
+         *
+         * @param maxInFlight the maximum number of outstanding requests
+         * @return the {@code Builder}
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("nats: max in flight must be positive");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Answers requests received while the service is saturated with {@code reply}, instead
+         * of withdrawing interest from the server. Without it, a service that cannot withdraw its
+         * interest answers them with an empty reply.
+         *
+         * @param reply the rejection reply payload
+         * @return the {@code Builder}
+         */
+        public Builder rejectWith(byte[] reply) {
+            if (reply == null) {
+                throw new NullPointerException("nats: reply must not be null");
+            }
+            this.rejectReply = reply;
+            return this;
+        }
+
+        /**
+         * Adds an endpoint that serves requests on {@code subject} with {@code handler}.
+         *
+         * @param subject the subject to serve
+         * @param handler handles the requests
+         * @return the {@code Builder}
+         * @throws IllegalArgumentException if there already is an endpoint for {@code subject}
+         */
+        public Builder endpoint(String subject, ServiceHandler handler) {
+            if (subject == null) {
+                throw new NullPointerException(ERR_BAD_SUBJECT);
+            }
+            if (handler == null) {
+                throw new NullPointerException("nats: handler must not be null");
+            }
+            if (handlers.containsKey(subject)) {
+                throw new IllegalArgumentException("nats: duplicate endpoint " + subject);
+            }
+            handlers.put(subject, handler);
+            return this;
+        }
+
+        /**
+         * Creates the service and subscribes its endpoints.
+         *
+         * @return the running service
+         * @throws IllegalStateException if no endpoint was added, or the connection is closed
+         */
+        public Service build() {
+            if (handlers.isEmpty()) {
+                throw new IllegalStateException("nats: service has no endpoints");
+            }
+            Service svc = new Service(this);
+            try {
+                for (Endpoint endpoint : svc.endpoints.values()) {
+                    endpoint.subscribe(nc, queue);
+                }
+            } catch (RuntimeException e) {
+                svc.close();
+                throw e;
+            }
+            return svc;
+        }
+    }
+
+    private final Connection nc;
+    private final Map<String, Endpoint> endpoints;
+    private final ExecutorService workers;
+    private final int maxInFlight;
+    // Interest is restored once no more requests than this are outstanding
+    private final int resumeAt;
+    private final byte[] rejectReply;
+    // Whether to yield to other queue members when saturated, rather than reject
+    private final boolean yields;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Guarded by this
+    private boolean paused;
+
+    private Service(Builder builder) {
+        this.nc = builder.nc;
+        this.maxInFlight = (builder.maxInFlight > 0) ? builder.maxInFlight : builder.workers * 4;
+        this.resumeAt = maxInFlight / 2;
+        this.rejectReply = (builder.rejectReply != null) ? builder.rejectReply : new byte[0];
+        this.yields = (builder.rejectReply == null) && (builder.queue != null);
+        this.workers = new ThreadPoolExecutor(builder.workers, builder.workers, 0L,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NatsThreadFactory(WORKER_NAME));
+        Map<String, Endpoint> map = new LinkedHashMap<String, Endpoint>();
+        for (Map.Entry<String, ServiceHandler> entry : builder.handlers.entrySet()) {
+            map.put(entry.getKey(), new Endpoint(this, entry.getKey(), entry.getValue()));
+        }
+        this.endpoints = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Returns the endpoint serving {@code subject}.
+     *
+     * @param subject the subject
+     * @return the endpoint, or {@code null} if there is none
+     */
+    public Endpoint getEndpoint(String subject) {
+        return endpoints.get(subject);
+    }
+
+    /**
+     * Returns the endpoints, in the order they were added.
+     *
+     * @return the endpoints
+     */
+    public List<Endpoint> getEndpoints() {
+        return new ArrayList<Endpoint>(endpoints.values());
+    }
+
+    /**
+     * Returns the number of requests currently queued or being handled.
+     *
+     * @return the number of outstanding requests
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns whether the service has withdrawn its interest because it is saturated.
+     *
+     * @return {@code true} if interest is withdrawn
+     */
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Unsubscribes the endpoints. Requests already received are still handled and replied to.
+     */
+    @Override
+    public void close() {
+        for (Endpoint endpoint : endpoints.values()) {
+            if (endpoint.sub != null) {
+                endpoint.sub.close();
+            }
+        }
+        workers.shutdown();
+    }
+
+    // Called on the endpoint's subscription thread.
+    void receive(final Endpoint endpoint, final Message msg) {
+        final long start = System.nanoTime();
+        int outstanding = inFlight.incrementAndGet();
+        if (outstanding > maxInFlight && !(yields && endpoint.pausable)) {
+            inFlight.decrementAndGet();
+            endpoint.rejected.incrementAndGet();
+            reply(endpoint, msg, rejectReply);
+            return;
+        }
+        if (outstanding >= maxInFlight && yields) {
+            setInterest(false);
+        }
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handle(endpoint, msg, start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed
+            inFlight.decrementAndGet();
+        }
+    }
+
+    void handle(Endpoint endpoint, Message msg, long start) {
+        boolean failed = false;
+        try {
+            byte[] data = endpoint.handler.onRequest(msg);
+            if (data != null) {
+                reply(endpoint, msg, data);
+            }
+        } catch (Exception e) {
+            failed = true;
+            report(endpoint, e);
+        } finally {
+            endpoint.record(System.nanoTime() - start, failed);
+            if (inFlight.decrementAndGet() <= resumeAt) {
+                setInterest(true);
+            }
+        }
+    }
+
+    private void reply(Endpoint endpoint, Message msg, byte[] data) {
+        if (msg.getReplyToBytes() == null) {
+            return;
+        }
+        try {
+            nc.publishReply(msg, data);
+        } catch (IOException | IllegalStateException e) {
+            report(endpoint, e);
+        }
+    }
+
+    // Withdraws or restores interest in every endpoint, if the number of outstanding requests
+    // still calls for it.
+    private synchronized void setInterest(boolean interested) {
+        if (interested ? (!paused || inFlight.get() > resumeAt)
+                : (paused || inFlight.get() < maxInFlight)) {
+            return;
+        }
+        paused = !interested;
+        for (Endpoint endpoint : endpoints.values()) {
+            if (endpoint.sub == null || !endpoint.pausable) {
+                continue;
+            }
+            boolean done = false;
+            try {
+                done = (endpoint.sub instanceof SubscriptionImpl)
+                        && ((SubscriptionImpl) endpoint.sub).setInterest(interested);
+            } catch (IOException e) {
+                report(endpoint, e);
+                done = true;
+            } catch (IllegalStateException e) {
+                // Closed or unsubscribed
+                done = true;
+            }
+            if (!done) {
+                // Rejects requests from now on, rather than leave them to time out
+                endpoint.pausable = false;
+            }
+        }
+    }
+
+    private void report(Endpoint endpoint, Exception ex) {
+        ExceptionHandler handler = nc.getExceptionHandler();
+        if (handler != null) {
+            handler.onException(new NATSException(ex, nc, endpoint.sub));
+        }
+    }
+}
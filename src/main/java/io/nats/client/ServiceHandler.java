@@ -0,0 +1,25 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+/**
+ * Handles the requests received by a {@link Service} endpoint.
+ */
+public interface ServiceHandler {
+
+    /**
+     * Handles a request. It is called on one of the service's worker threads.
+     *
+     * @param request the request message
+     * @return the reply payload, or {@code null} to send no reply
+     * @throws Exception if the request could not be handled. No reply is sent, the endpoint's
+     *                   error count is incremented, and the exception is passed to the
+     *                   connection's {@link ExceptionHandler}, if there is one.
+     */
+    byte[] onRequest(Message request) throws Exception;
+
+}
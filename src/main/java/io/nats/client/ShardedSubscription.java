@@ -0,0 +1,263 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * A queue subscription made of one member of the queue group on each open connection of a pool.
+ * The server spreads the group's messages across them, so each connection's reader parses its
+ * share in parallel. The shards' statistics are summed, and their limits and policy set together.
+ */
+final class ShardedSubscription implements AsyncSubscription {
+    private final List<AsyncSubscription> shards;
+    private volatile MessageHandler cb;
+
+    ShardedSubscription(List<Connection> members, String subject, String queue,
+                        MessageHandler cb) {
+        this.cb = cb;
+        MessageHandler relay = new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                relay(msg);
+            }
+        };
+        this.shards = new ArrayList<AsyncSubscription>(members.size());
+        try {
+            for (Connection member : members) {
+                shards.add(member.subscribe(subject, queue, relay));
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void relay(Message msg) {
+        MessageHandler handler = cb;
+        if (handler != null) {
+            handler.onMessage(msg);
+        }
+    }
+
+    List<AsyncSubscription> getShards() {
+        return shards;
+    }
+
+    @Override
+    public String getSubject() {
+        return shards.get(0).getSubject();
+    }
+
+    @Override
+    public String getQueue() {
+        return shards.get(0).getQueue();
+    }
+
+    @Override
+    public boolean isValid() {
+        for (AsyncSubscription shard : shards) {
+            if (shard.isValid()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void unsubscribe() throws IOException {
+        IOException failure = null;
+        for (AsyncSubscription shard : shards) {
+            try {
+                shard.unsubscribe();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The limit applies to the shards as a whole. The messages still to be received are split
+     * evenly among the shards, each of which is unsubscribed by the server once it has received
+     * its share. Every message taken from the queue group is delivered, so no more than
+     * {@code max} are, unless more than that were already received.
+     */
+    @Override
+    public void autoUnsubscribe(int max) throws IOException {
+        int[] received = new int[shards.size()];
+        long remaining = max;
+        for (int i = 0; i < received.length; i++) {
+            AsyncSubscription shard = shards.get(i);
+            received[i] = (int) shard.getDelivered() + shard.getPendingMsgs();
+            remaining -= received[i];
+        }
+        remaining = Math.max(remaining, 0);
+        IOException failure = null;
+        for (int i = 0; i < received.length; i++) {
+            long share = remaining / received.length + ((i < remaining % received.length) ? 1 : 0);
+            try {
+                if (received[i] + share > 0) {
+                    shards.get(i).autoUnsubscribe((int) (received[i] + share));
+                } else {
+                    shards.get(i).unsubscribe();
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public long getDelivered() {
+        long delivered = 0;
+        for (AsyncSubscription shard : shards) {
+            delivered += shard.getDelivered();
+        }
+        return delivered;
+    }
+
+    @Override
+    @Deprecated
+    public int getQueuedMessageCount() {
+        return getPendingMsgs();
+    }
+
+    @Override
+    public int getPendingMsgs() {
+        int pending = 0;
+        for (AsyncSubscription shard : shards) {
+            pending += shard.getPendingMsgs();
+        }
+        return pending;
+    }
+
+    @Override
+    public int getPendingBytes() {
+        int pending = 0;
+        for (AsyncSubscription shard : shards) {
+            pending += shard.getPendingBytes();
+        }
+        return pending;
+    }
+
+    @Override
+    public int getPendingMsgsMax() {
+        int max = 0;
+        for (AsyncSubscription shard : shards) {
+            max += shard.getPendingMsgsMax();
+        }
+        return max;
+    }
+
+    @Override
+    public long getPendingBytesMax() {
+        long max = 0;
+        for (AsyncSubscription shard : shards) {
+            max += shard.getPendingBytesMax();
+        }
+        return max;
+    }
+
+    // The limits apply to each shard.
+    @Override
+    public void setPendingLimits(int msgs, int bytes) {
+        for (AsyncSubscription shard : shards) {
+            shard.setPendingLimits(msgs, bytes);
+        }
+    }
+
+    @Override
+    public int getPendingMsgsLimit() {
+        return shards.get(0).getPendingMsgsLimit();
+    }
+
+    @Override
+    public int getPendingBytesLimit() {
+        return shards.get(0).getPendingBytesLimit();
+    }
+
+    @Override
+    public void clearMaxPending() {
+        for (AsyncSubscription shard : shards) {
+            shard.clearMaxPending();
+        }
+    }
+
+    @Override
+    public int getDropped() {
+        int dropped = 0;
+        for (AsyncSubscription shard : shards) {
+            dropped += shard.getDropped();
+        }
+        return dropped;
+    }
+
+    @Override
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return shards.get(0).getSlowConsumerPolicy();
+    }
+
+    @Override
+    public void setSlowConsumerPolicy(SlowConsumerPolicy policy) {
+        for (AsyncSubscription shard : shards) {
+            shard.setSlowConsumerPolicy(policy);
+        }
+    }
+
+    @Override
+    public long getDroppedMsgs(SlowConsumerPolicy policy) {
+        long dropped = 0;
+        for (AsyncSubscription shard : shards) {
+            dropped += shard.getDroppedMsgs(policy);
+        }
+        return dropped;
+    }
+
+    @Override
+    public long getDroppedBytes(SlowConsumerPolicy policy) {
+        long dropped = 0;
+        for (AsyncSubscription shard : shards) {
+            dropped += shard.getDroppedBytes(policy);
+        }
+        return dropped;
+    }
+
+    @Override
+    public void close() {
+        for (AsyncSubscription shard : shards) {
+            shard.close();
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void start() {
+        for (AsyncSubscription shard : shards) {
+            shard.start();
+        }
+    }
+
+    @Override
+    public void setMessageHandler(MessageHandler cb) {
+        this.cb = cb;
+    }
+
+    @Override
+    public MessageHandler getMessageHandler() {
+        return cb;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+/**
+ * Determines what a {@link Subscription} does with incoming messages once its pending message or
+ * pending byte limits have been exceeded.
+ *
+ * @see Subscription#setSlowConsumerPolicy(SlowConsumerPolicy)
+ * @see Subscription#setPendingLimits(int, int)
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * The incoming message is discarded and the queued messages are kept. This is the default.
+     */
+    DROP_NEWEST,
+    /**
+     * The oldest queued messages are evicted until the incoming message fits within the pending
+     * limits, so that the subscriber always sees the freshest data.
+     */
+    DROP_OLDEST,
+    /**
+     * The incoming message is discarded, all queued messages are discarded, and the subscription
+     * is terminated. Subsequent calls to {@link SyncSubscription#nextMessage()} throw an
+     * {@code IOException}.
+     */
+    ERROR
+}
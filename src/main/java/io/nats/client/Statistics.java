@@ -22,6 +22,9 @@ public class Statistics {
     private AtomicLong outBytes = new AtomicLong();
     private AtomicLong reconnects = new AtomicLong();
     private AtomicLong flushes = new AtomicLong();
+    private AtomicLong hedgesSent = new AtomicLong();
+    private AtomicLong hedgesWon = new AtomicLong();
+    private AtomicLong resubmits = new AtomicLong();
 
     public Statistics() {
     }
@@ -34,6 +37,22 @@ public class Statistics {
         this.outMsgs = obj.outMsgs;
         this.reconnects = obj.reconnects;
         this.flushes = obj.flushes;
+        this.hedgesSent = obj.hedgesSent;
+        this.hedgesWon = obj.hedgesWon;
+        this.resubmits = obj.resubmits;
+    }
+
+    // Adds the counts of other to these, to merge the statistics of several connections.
+    void add(Statistics other) {
+        this.inMsgs.addAndGet(other.inMsgs.get());
+        this.inBytes.addAndGet(other.inBytes.get());
+        this.outMsgs.addAndGet(other.outMsgs.get());
+        this.outBytes.addAndGet(other.outBytes.get());
+        this.reconnects.addAndGet(other.reconnects.get());
+        this.flushes.addAndGet(other.flushes.get());
+        this.hedgesSent.addAndGet(other.hedgesSent.get());
+        this.hedgesWon.addAndGet(other.hedgesWon.get());
+        this.resubmits.addAndGet(other.resubmits.get());
     }
 
     /**
@@ -45,6 +64,9 @@ public class Statistics {
         this.outBytes.set(0L);
         this.outMsgs.set(0L);
         this.flushes.set(0L);
+        this.hedgesSent.set(0L);
+        this.hedgesWon.set(0L);
+        this.resubmits.set(0L);
     }
 
     /**
@@ -148,5 +170,48 @@ public class Statistics {
         return flushes.incrementAndGet();
     }
 
+    /**
+     * Returns the number of hedged requests, that is duplicates of slow requests, sent on this
+     * Connection.
+     *
+     * @return the number of hedged requests
+     * @see HedgePolicy
+     */
+    public long getHedgesSent() {
+        return hedgesSent.get();
+    }
+
+    long incrementHedgesSent() {
+        return hedgesSent.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of hedged requests whose reply arrived before the original's.
+     *
+     * @return the number of hedged requests that won
+     * @see HedgePolicy
+     */
+    public long getHedgesWon() {
+        return hedgesWon.get();
+    }
+
+    long incrementHedgesWon() {
+        return hedgesWon.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of requests published again after a reconnect.
+     *
+     * @return the number of resubmitted requests
+     * @see Options.Builder#resubmitOnReconnect(String)
+     */
+    public long getResubmits() {
+        return resubmits.get();
+    }
+
+    long incrementResubmits() {
+        return resubmits.incrementAndGet();
+    }
+
 }
 
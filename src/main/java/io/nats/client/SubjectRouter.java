@@ -0,0 +1,106 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collapses local subscriptions onto shared server subscriptions. A {@link Route} is a single
+ * server-side SUB, and every local subscription attached to it has a subject covered by the
+ * route's subject. Inbound messages for a route are fanned out to its members through a
+ * {@link SubjectTrie}.
+ *
+ * <p>This class is not thread-safe; {@link ConnectionImpl} guards it with its connection lock.
+ */
+final class SubjectRouter {
+    private final Map<Long, Route> routes = new HashMap<Long, Route>();
+    private final SubjectTrie<SubscriptionImpl> trie = new SubjectTrie<SubscriptionImpl>();
+
+    /**
+     * A server subscription shared by one or more local subscriptions.
+     */
+    static final class Route {
+        final long sid;
+        final String subject;
+        final List<SubscriptionImpl> members = new ArrayList<SubscriptionImpl>();
+
+        Route(long sid, String subject) {
+            this.sid = sid;
+            this.subject = subject;
+        }
+    }
+
+    // Returns an existing route whose subject covers subject, or null.
+    Route find(String subject) {
+        Route found = null;
+        for (Route route : routes.values()) {
+            if (route.subject.equals(subject)) {
+                return route;
+            }
+            if (found == null && SubjectTrie.covers(route.subject, subject)) {
+                found = route;
+            }
+        }
+        return found;
+    }
+
+    Route addRoute(long sid, String subject) {
+        Route route = new Route(sid, subject);
+        routes.put(sid, route);
+        return route;
+    }
+
+    Route getRoute(long sid) {
+        return routes.get(sid);
+    }
+
+    Collection<Route> getRoutes() {
+        return routes.values();
+    }
+
+    void attach(Route route, SubscriptionImpl sub) {
+        route.members.add(sub);
+        sub.route = route;
+        trie.insert(sub.getSubject(), sub);
+    }
+
+    // Detaches sub from its route. Returns the route if it has no members left, in which case it
+    // has been removed and its server subscription should be cancelled.
+    Route detach(SubscriptionImpl sub) {
+        Route route = sub.route;
+        if (route == null) {
+            return null;
+        }
+        sub.route = null;
+        trie.remove(sub.getSubject(), sub);
+        route.members.remove(sub);
+        if (route.members.isEmpty()) {
+            routes.remove(route.sid);
+            return route;
+        }
+        return null;
+    }
+
+    // Returns the local subscriptions, on any route, matching a literal subject.
+    List<SubscriptionImpl> match(String subject) {
+        return trie.match(subject);
+    }
+
+    void clear() {
+        for (Route route : routes.values()) {
+            for (SubscriptionImpl sub : route.members) {
+                sub.route = null;
+            }
+        }
+        routes.clear();
+        trie.clear();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A token trie mapping subjects, which may contain the {@code *} and {@code >} wildcards, to
+ * values. Lookups by literal subject return every value whose subject matches, and are cached
+ * per subject until the trie next changes.
+ *
+ * <p>This class is not thread-safe; callers must provide their own synchronization.
+ */
+final class SubjectTrie<T> {
+    static final String PWC = "*";
+    static final String FWC = ">";
+
+    // Bound on the number of cached match results before the cache is reset.
+    static final int MAX_CACHE_SIZE = 1024;
+
+    private final Node<T> root = new Node<T>();
+    private final Map<String, List<T>> cache = new HashMap<String, List<T>>();
+    private int size;
+
+    private static final class Node<T> {
+        final Map<String, Node<T>> children = new HashMap<String, Node<T>>();
+        final List<T> values = new ArrayList<T>(1);
+
+        boolean isEmpty() {
+            return children.isEmpty() && values.isEmpty();
+        }
+    }
+
+    static String[] tokenize(String subject) {
+        return subject.split("\\.");
+    }
+
+    /**
+     * Returns whether every subject matched by {@code subject} is also matched by
+     * {@code pattern}. Both may contain wildcards.
+     *
+     * @param pattern the covering subject
+     * @param subject the covered subject
+     * @return {@code true} if {@code pattern} covers {@code subject}
+     */
+    static boolean covers(String pattern, String subject) {
+        String[] pt = tokenize(pattern);
+        String[] st = tokenize(subject);
+        for (int i = 0; i < pt.length; i++) {
+            if (FWC.equals(pt[i])) {
+                return i < st.length;
+            }
+            if (i >= st.length) {
+                return false;
+            }
+            if (PWC.equals(pt[i])) {
+                if (FWC.equals(st[i])) {
+                    return false;
+                }
+            } else if (!pt[i].equals(st[i])) {
+                return false;
+            }
+        }
+        return pt.length == st.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void insert(String subject, T value) {
+        Node<T> node = root;
+        for (String token : tokenize(subject)) {
+            Node<T> next = node.children.get(token);
+            if (next == null) {
+                next = new Node<T>();
+                node.children.put(token, next);
+            }
+            node = next;
+        }
+        node.values.add(value);
+        size++;
+        cache.clear();
+    }
+
+    boolean remove(String subject, T value) {
+        boolean removed = remove(root, tokenize(subject), 0, value);
+        if (removed) {
+            size--;
+            cache.clear();
+        }
+        return removed;
+    }
+
+    private boolean remove(Node<T> node, String[] tokens, int idx, T value) {
+        if (idx == tokens.length) {
+            return node.values.remove(value);
+        }
+        Node<T> next = node.children.get(tokens[idx]);
+        if (next == null || !remove(next, tokens, idx + 1, value)) {
+            return false;
+        }
+        if (next.isEmpty()) {
+            node.children.remove(tokens[idx]);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the values whose subjects match the literal {@code subject}.
+     *
+     * @param subject a subject without wildcards
+     * @return an unmodifiable list of matching values, possibly empty
+     */
+    List<T> match(String subject) {
+        List<T> result = cache.get(subject);
+        if (result == null) {
+            List<T> found = new ArrayList<T>();
+            collect(root, tokenize(subject), 0, found);
+            result = found.isEmpty() ? Collections.<T>emptyList()
+                    : Collections.unmodifiableList(found);
+            if (cache.size() >= MAX_CACHE_SIZE) {
+                cache.clear();
+            }
+            cache.put(subject, result);
+        }
+        return result;
+    }
+
+    private void collect(Node<T> node, String[] tokens, int idx, List<T> found) {
+        if (idx == tokens.length) {
+            found.addAll(node.values);
+            return;
+        }
+        Node<T> next = node.children.get(tokens[idx]);
+        if (next != null) {
+            collect(next, tokens, idx + 1, found);
+        }
+        next = node.children.get(PWC);
+        if (next != null) {
+            collect(next, tokens, idx + 1, found);
+        }
+        next = node.children.get(FWC);
+        if (next != null) {
+            found.addAll(next.values);
+        }
+    }
+
+    void clear() {
+        root.children.clear();
+        root.values.clear();
+        cache.clear();
+        size = 0;
+    }
+}
@@ -143,6 +143,40 @@ public interface Subscription extends AutoCloseable {
      */
     int getDropped();
 
+    /**
+     * Returns the policy applied when this subscription exceeds its pending limits.
+     *
+     * @return the slow consumer policy for this subscription
+     */
+    SlowConsumerPolicy getSlowConsumerPolicy();
+
+    /**
+     * Sets the policy applied when this subscription exceeds its pending limits. The default is
+     * {@link SlowConsumerPolicy#DROP_NEWEST}.
+     *
+     * @param policy the slow consumer policy to apply
+     * @throws NullPointerException if {@code policy} is {@code null}
+     */
+    void setSlowConsumerPolicy(SlowConsumerPolicy policy);
+
+    /**
+     * Returns the number of messages that this subscription has dropped while the given slow
+     * consumer policy was in effect.
+     *
+     * @param policy the slow consumer policy
+     * @return the number of messages dropped under {@code policy}
+     */
+    long getDroppedMsgs(SlowConsumerPolicy policy);
+
+    /**
+     * Returns the number of payload bytes that this subscription has dropped while the given slow
+     * consumer policy was in effect.
+     *
+     * @param policy the slow consumer policy
+     * @return the number of payload bytes dropped under {@code policy}
+     */
+    long getDroppedBytes(SlowConsumerPolicy policy);
+
     /**
      * {@inheritDoc}.
      */
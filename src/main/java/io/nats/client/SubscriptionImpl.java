@@ -64,6 +64,20 @@ abstract class SubscriptionImpl implements Subscription {
     int pBytesLimit = pMsgsLimit * 1024;
     int dropped;
 
+    // What to do once the pending limits are exceeded, and what it has cost us so far.
+    SlowConsumerPolicy scPolicy = SlowConsumerPolicy.DROP_NEWEST;
+    final long[] droppedMsgs = new long[SlowConsumerPolicy.values().length];
+    final long[] droppedBytes = new long[SlowConsumerPolicy.values().length];
+
+    // Connection-wide pending byte budget, set while attached to a connection.
+    PendingBudget budget;
+
+    // Shared server subscription when local routing is enabled. Guarded by the connection lock.
+    SubjectRouter.Route route;
+
+    // Set while the server's interest has been withdrawn. Guarded by the connection lock.
+    boolean paused;
+
     SubscriptionImpl(ConnectionImpl conn, String subject, String queue) {
         this(conn, subject, queue, DEFAULT_MAX_PENDING_MSGS, DEFAULT_MAX_PENDING_BYTES);
     }
@@ -86,6 +100,7 @@ abstract class SubscriptionImpl implements Subscription {
                 mch.clear();
                 mch = null;
             }
+            leaveBudget();
         } finally {
             mu.unlock();
         }
@@ -154,6 +169,19 @@ abstract class SubscriptionImpl implements Subscription {
         conn.unsubscribe(this, max);
     }
 
+    // Withdraws or restores the server's interest in this subscription, which stays registered.
+    // Returns false if it cannot be paused on its own.
+    boolean setInterest(boolean interested) throws IOException {
+        ConnectionImpl conn;
+        mu.lock();
+        conn = this.conn;
+        mu.unlock();
+        if (conn == null) {
+            throw new IllegalStateException(ERR_BAD_SUBSCRIPTION);
+        }
+        return conn.setInterest(this, interested);
+    }
+
     @Override
     public void close() {
         try {
@@ -189,6 +217,109 @@ abstract class SubscriptionImpl implements Subscription {
         return rv;
     }
 
+    @Override
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        mu.lock();
+        try {
+            return scPolicy;
+        } finally {
+            mu.unlock();
+        }
+    }
+
+    @Override
+    public void setSlowConsumerPolicy(SlowConsumerPolicy policy) {
+        if (policy == null) {
+            throw new NullPointerException("nats: slow consumer policy cannot be null");
+        }
+        mu.lock();
+        try {
+            scPolicy = policy;
+        } finally {
+            mu.unlock();
+        }
+    }
+
+    @Override
+    public long getDroppedMsgs(SlowConsumerPolicy policy) {
+        mu.lock();
+        try {
+            return droppedMsgs[policy.ordinal()];
+        } finally {
+            mu.unlock();
+        }
+    }
+
+    @Override
+    public long getDroppedBytes(SlowConsumerPolicy policy) {
+        mu.lock();
+        try {
+            return droppedBytes[policy.ordinal()];
+        } finally {
+            mu.unlock();
+        }
+    }
+
+    // Records a message dropped under the current policy. Assumes the lock is held.
+    void recordDropped(int bytes) {
+        dropped++;
+        droppedMsgs[scPolicy.ordinal()]++;
+        droppedBytes[scPolicy.ordinal()] += bytes;
+    }
+
+    // Assumes the lock is held.
+    boolean isOverPendingLimits() {
+        return (pMsgsLimit > 0 && pMsgs > pMsgsLimit)
+                || (pBytesLimit > 0 && pBytes > pBytesLimit)
+                || (budget != null && budget.isOverFairShare(pBytes));
+    }
+
+    // Wakes up a thread waiting for messages on this subscription. Assumes the lock is held.
+    void signalMsg() {
+        pCond.signal();
+    }
+
+    // Counts a message against the pending stats and the connection budget. Assumes the lock is
+    // held.
+    void addPending(int bytes) {
+        pMsgs++;
+        if (pMsgs > pMsgsMax) {
+            pMsgsMax = pMsgs;
+        }
+        pBytes += bytes;
+        if (pBytes > pBytesMax) {
+            pBytesMax = pBytes;
+        }
+        if (budget != null) {
+            budget.acquire(bytes);
+        }
+    }
+
+    // Reverses addPending once a message has been delivered or dropped. Assumes the lock is held.
+    void removePending(int bytes) {
+        pMsgs--;
+        pBytes -= bytes;
+        if (budget != null) {
+            budget.release(bytes);
+        }
+    }
+
+    // Attaches this subscription to the connection budget. Assumes the lock is held.
+    void joinBudget(PendingBudget budget) {
+        this.budget = budget;
+        budget.join();
+        budget.acquire(pBytes);
+    }
+
+    // Detaches this subscription from the connection budget, returning whatever it still holds.
+    // Assumes the lock is held.
+    void leaveBudget() {
+        if (budget != null) {
+            budget.leave(pBytes);
+            budget = null;
+        }
+    }
+
     @Override
     public int getPendingMsgsMax() {
         int rv = 0;
@@ -7,7 +7,9 @@
 package io.nats.client;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * A client uses an {@code SyncSubscription} object to receive messages from a subject
@@ -77,4 +79,54 @@ public interface SyncSubscription extends Subscription {
      */
     Message nextMessage(long timeout, TimeUnit unit)
             throws IOException, InterruptedException;
+
+    /**
+     * Returns an {@code Iterator} over the messages arriving for this {@code Subscription}.
+     * Messages are taken from the pending queue in chunks of up to {@code prefetch} at a time, and
+     * {@link Iterator#hasNext()} blocks until one is available. Iteration ends when the
+     * {@code Subscription} is unsubscribed or closed, or when its connection is closed.
+     *
+     * <p>The iterator is not thread-safe. A slow consumer condition is reported by
+     * {@code hasNext()} throwing an {@link java.io.UncheckedIOException}.
+     *
+     * @param prefetch the maximum number of messages taken from the pending queue at once
+     * @return an {@code Iterator} over this subscription's messages
+     * @throws IllegalArgumentException if {@code prefetch} is not positive
+     */
+    Iterator<Message> iterator(int prefetch);
+
+    /**
+     * Returns an {@code Iterator} over the messages arriving for this {@code Subscription}, as
+     * {@link #iterator(int)} does, which also ends once no message has arrived for
+     * {@code idleTimeout}. A negative {@code idleTimeout} waits indefinitely.
+     *
+     * @param prefetch    the maximum number of messages taken from the pending queue at once
+     * @param idleTimeout how long to wait for the next message before ending the iteration
+     * @param unit        the unit of {@code idleTimeout}
+     * @return an {@code Iterator} over this subscription's messages
+     * @throws IllegalArgumentException if {@code prefetch} is not positive
+     */
+    Iterator<Message> iterator(int prefetch, long idleTimeout, TimeUnit unit);
+
+    /**
+     * Returns a sequential, ordered {@code Stream} of the messages arriving for this
+     * {@code Subscription}, backed by {@link #iterator(int)} with a default prefetch. The stream
+     * ends when the {@code Subscription} is unsubscribed or closed; closing the stream does not
+     * unsubscribe.
+     *
+     * @return a {@code Stream} of this subscription's messages
+     */
+    Stream<Message> stream();
+
+    /**
+     * Returns a sequential, ordered {@code Stream} of the messages arriving for this
+     * {@code Subscription}, backed by {@link #iterator(int, long, TimeUnit)}.
+     *
+     * @param prefetch    the maximum number of messages taken from the pending queue at once
+     * @param idleTimeout how long to wait for the next message before ending the stream
+     * @param unit        the unit of {@code idleTimeout}
+     * @return a {@code Stream} of this subscription's messages
+     * @throws IllegalArgumentException if {@code prefetch} is not positive
+     */
+    Stream<Message> stream(int prefetch, long idleTimeout, TimeUnit unit);
 }
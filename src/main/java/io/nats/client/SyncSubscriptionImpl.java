@@ -12,12 +12,29 @@ import static io.nats.client.Nats.ERR_MAX_MESSAGES;
 import static io.nats.client.Nats.ERR_SLOW_CONSUMER;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 class SyncSubscriptionImpl extends SubscriptionImpl implements SyncSubscription {
+    // Prefetch used by stream() when none is given.
+    static final int DEFAULT_PREFETCH = 256;
+
+    // How often a blocked iterator re-checks whether the subscription has been removed, since
+    // unsubscribing does not interrupt waiting threads.
+    static final long ITERATOR_POLL_MILLIS = 100;
+
     private final Map<Long, Thread> threads = new ConcurrentHashMap<Long, Thread>();
 
     SyncSubscriptionImpl(ConnectionImpl nc, String subj, String queue) {
@@ -63,6 +80,10 @@ class SyncSubscriptionImpl extends SubscriptionImpl implements SyncSubscription
             if ((this.max > 0) && (delivered >= this.max)) {
                 unlock();
                 throw new IOException(ERR_MAX_MESSAGES);
+            } else if (closed && sc && scPolicy == SlowConsumerPolicy.ERROR) {
+                // Terminated by the ERROR slow consumer policy; keep reporting it.
+                unlock();
+                throw new IOException(ERR_SLOW_CONSUMER);
             } else if (closed) {
                 unlock();
                 throw new IllegalStateException(ERR_BAD_SUBSCRIPTION);
@@ -103,8 +124,7 @@ class SyncSubscriptionImpl extends SubscriptionImpl implements SyncSubscription
             try {
                 this.delivered++;
                 delivered = this.delivered;
-                pMsgs--;
-                pBytes -= (msg.getData() != null ? msg.getData().length : 0);
+                removePending(msg.getData() != null ? msg.getData().length : 0);
             } finally {
                 unlock();
             }
@@ -126,4 +146,180 @@ class SyncSubscriptionImpl extends SubscriptionImpl implements SyncSubscription
         }
         return msg;
     }
+
+    @Override
+    public Iterator<Message> iterator(int prefetch) {
+        return iterator(prefetch, -1, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Iterator<Message> iterator(int prefetch, long idleTimeout, TimeUnit unit) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("nats: prefetch must be positive");
+        }
+        return new MessageIterator(prefetch, unit.toNanos(idleTimeout));
+    }
+
+    @Override
+    public Stream<Message> stream() {
+        return stream(DEFAULT_PREFETCH, -1, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Stream<Message> stream(int prefetch, long idleTimeout, TimeUnit unit) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                iterator(prefetch, idleTimeout, unit),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /*
+     * Drains the subscription channel in chunks of up to prefetch messages, taking the
+     * subscription lock once per chunk rather than once per message.
+     */
+    private final class MessageIterator implements Iterator<Message> {
+        private final int prefetch;
+        // Negative means wait forever
+        private final long idleNanos;
+        private final ArrayDeque<Message> buffer;
+        private final List<Message> chunk;
+        private boolean done;
+
+        MessageIterator(int prefetch, long idleNanos) {
+            this.prefetch = prefetch;
+            this.idleNanos = idleNanos;
+            this.buffer = new ArrayDeque<Message>(prefetch);
+            this.chunk = new ArrayList<Message>(prefetch);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!buffer.isEmpty()) {
+                return true;
+            }
+            if (done) {
+                return false;
+            }
+            try {
+                fill();
+            } catch (IOException e) {
+                // Iteration may resume after a report of dropped messages, but not after the
+                // subscription ended with one
+                done = isRemoved();
+                throw new UncheckedIOException(e);
+            }
+            if (buffer.isEmpty()) {
+                done = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Message next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buffer.poll();
+        }
+
+        // Waits for at least one message, unless the subscription ends or stays idle for too
+        // long, then takes whatever else is already queued, up to the prefetch.
+        private void fill() throws IOException {
+            BlockingQueue<Message> localChannel;
+            lock();
+            try {
+                if (closed || connClosed || mch == null) {
+                    if (closed && sc && scPolicy == SlowConsumerPolicy.ERROR) {
+                        throw new IOException(ERR_SLOW_CONSUMER);
+                    }
+                    return;
+                }
+                if (sc) {
+                    // As with nextMessage, dropped messages are reported once
+                    sc = false;
+                    throw new IOException(ERR_SLOW_CONSUMER);
+                }
+                localChannel = mch;
+            } finally {
+                unlock();
+            }
+
+            Thread current = Thread.currentThread();
+            threads.put(current.getId(), current);
+            try {
+                Message first = null;
+                long deadline = System.nanoTime() + idleNanos;
+                while (first == null) {
+                    long wait = TimeUnit.MILLISECONDS.toNanos(ITERATOR_POLL_MILLIS);
+                    if (idleNanos >= 0) {
+                        wait = Math.min(wait, deadline - System.nanoTime());
+                        if (wait <= 0) {
+                            return;
+                        }
+                    }
+                    first = localChannel.poll(wait, TimeUnit.NANOSECONDS);
+                    if (first == null && isRemoved()) {
+                        return;
+                    }
+                }
+                chunk.add(first);
+                localChannel.drainTo(chunk, prefetch - 1);
+            } catch (InterruptedException e) {
+                // Closing the subscription interrupts us; anything else is the caller's business
+                if (!isRemoved()) {
+                    current.interrupt();
+                }
+                return;
+            } finally {
+                threads.remove(current.getId());
+            }
+
+            account();
+        }
+
+        // Updates the subscription stats for the chunk, honouring any auto-unsubscribe max, and
+        // moves it to the buffer.
+        private void account() {
+            ConnectionImpl nc;
+            boolean maxReached = false;
+            lock();
+            try {
+                nc = (ConnectionImpl) getConnection();
+                int count = chunk.size();
+                if (max > 0 && delivered + count > max) {
+                    count = (int) Math.max(0, max - delivered);
+                }
+                for (int i = 0; i < chunk.size(); i++) {
+                    Message msg = chunk.get(i);
+                    removePending(msg.getData() != null ? msg.getData().length : 0);
+                    if (i < count) {
+                        buffer.add(msg);
+                    }
+                }
+                delivered += count;
+                maxReached = (max > 0 && delivered >= max);
+            } finally {
+                unlock();
+                chunk.clear();
+            }
+
+            if (maxReached && nc != null) {
+                nc.mu.lock();
+                try {
+                    nc.removeSub(SyncSubscriptionImpl.this);
+                } finally {
+                    nc.mu.unlock();
+                }
+            }
+        }
+
+        private boolean isRemoved() {
+            lock();
+            try {
+                return closed || connClosed;
+            } finally {
+                unlock();
+            }
+        }
+    }
 }
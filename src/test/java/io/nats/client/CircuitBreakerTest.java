@@ -0,0 +1,117 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class CircuitBreakerTest {
+    @Rule
+    public TestCasePrinterRule pr = new TestCasePrinterRule(System.out);
+
+    private final List<String> changes = new ArrayList<String>();
+
+    private CircuitBreaker newBreaker() {
+        return new CircuitBreaker().minimumRequests(4).failureRatio(0.5)
+                .openFor(50, TimeUnit.MILLISECONDS).halfOpenProbes(2)
+                .protect("orders.*")
+                .listener(new CircuitBreaker.Listener() {
+                    @Override
+                    public void onStateChange(String pattern, CircuitBreaker.State from,
+                                              CircuitBreaker.State to) {
+                        changes.add(pattern + " " + from + " " + to);
+                    }
+                });
+    }
+
+    // Opens the circuit with two successes and two failures.
+    private static void trip(CircuitBreaker.Circuit circuit) {
+        circuit.onSuccess(circuit.allow());
+        circuit.onSuccess(circuit.allow());
+        circuit.onFailure(circuit.allow());
+        assertEquals(CircuitBreaker.State.CLOSED, circuit.getState());
+        circuit.onFailure(circuit.allow());
+    }
+
+    @Test
+    public void testOpen() {
+        CircuitBreaker breaker = newBreaker();
+        assertNull(breaker.getState("other"));
+        CircuitBreaker.Circuit circuit = breaker.getCircuit("orders.get");
+        trip(circuit);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState("orders.put"));
+        assertEquals(-1, circuit.allow());
+        assertEquals("orders.* CLOSED OPEN", changes.get(0));
+    }
+
+    @Test
+    public void testHalfOpenCloses() throws Exception {
+        CircuitBreaker.Circuit circuit = newBreaker().getCircuit("orders.get");
+        trip(circuit);
+        Thread.sleep(100);
+
+        long first = circuit.allow();
+        long second = circuit.allow();
+        assertTrue(first >= 0 && second >= 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuit.getState());
+        // Only the probes are let through
+        assertEquals(-1, circuit.allow());
+
+        // A cancelled probe frees its slot
+        circuit.onIgnored(second);
+        long third = circuit.allow();
+        assertTrue(third >= 0);
+
+        circuit.onSuccess(first);
+        circuit.onSuccess(third);
+        assertEquals(CircuitBreaker.State.CLOSED, circuit.getState());
+        assertEquals("orders.* HALF_OPEN CLOSED", changes.get(2));
+    }
+
+    @Test
+    public void testHalfOpenFails() throws Exception {
+        CircuitBreaker.Circuit circuit = newBreaker().getCircuit("orders.get");
+        trip(circuit);
+        Thread.sleep(100);
+        circuit.onFailure(circuit.allow());
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState());
+        assertEquals(-1, circuit.allow());
+    }
+
+    @Test
+    public void testStaleOutcomeIgnored() {
+        CircuitBreaker.Circuit circuit = newBreaker().getCircuit("orders.get");
+        long before = circuit.allow();
+        trip(circuit);
+        // A reply to a request let through before the circuit opened changes nothing
+        circuit.onSuccess(before);
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState());
+    }
+
+    @Test
+    public void testMinimumRequests() {
+        CircuitBreaker.Circuit circuit = newBreaker().getCircuit("orders.get");
+        circuit.onFailure(circuit.allow());
+        circuit.onFailure(circuit.allow());
+        circuit.onFailure(circuit.allow());
+        assertEquals(CircuitBreaker.State.CLOSED, circuit.getState());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadRatio() {
+        new CircuitBreaker().failureRatio(1.5);
+    }
+}
@@ -51,6 +51,9 @@ class ClientConnectInfo {
     @SerializedName("protocol")
     private int protocol;
 
+    @SerializedName("echo")
+    private Boolean echo;
+
     private static final transient Gson gson = new GsonBuilder().create();
 
     static ClientConnectInfo createFromWire(String connectString) {
@@ -143,6 +146,10 @@ class ClientConnectInfo {
         this.protocol = protocol;
     }
 
+    public Boolean getEcho() {
+        return echo;
+    }
+
     public String getToken() {
         return token;
     }
@@ -0,0 +1,123 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class ConcurrencyLimiterTest {
+    @Rule
+    public TestCasePrinterRule pr = new TestCasePrinterRule(System.out);
+
+    private static final Runnable NOOP = new Runnable() {
+        public void run() {
+        }
+    };
+
+    @Test
+    public void testAcquireRelease() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter().aimd("orders.*", 2, 10);
+        assertNull(limiter.getRule("other"));
+        assertEquals(-1, limiter.getLimit("other"));
+        ConcurrencyLimiter.Limit limit = limiter.getRule("orders.get");
+
+        assertEquals(ConcurrencyLimiter.GRANTED, limit.acquire(NOOP));
+        assertEquals(ConcurrencyLimiter.GRANTED, limit.acquire(NOOP));
+        // No queue, so over the limit fails fast
+        assertEquals(ConcurrencyLimiter.REJECTED, limit.acquire(NOOP));
+        // Subjects matching the pattern share its limit
+        assertEquals(2, limiter.getInFlight("orders.put"));
+
+        limit.release(-1, false);
+        assertEquals(1, limiter.getInFlight("orders.get"));
+        assertEquals(ConcurrencyLimiter.GRANTED, limit.acquire(NOOP));
+    }
+
+    @Test
+    public void testQueue() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter().queue(1, 1, TimeUnit.SECONDS)
+                .aimd("foo", 1, 10);
+        ConcurrencyLimiter.Limit limit = limiter.getRule("foo");
+        final AtomicInteger granted = new AtomicInteger();
+        Runnable grant = new Runnable() {
+            public void run() {
+                granted.incrementAndGet();
+            }
+        };
+
+        assertEquals(ConcurrencyLimiter.GRANTED, limit.acquire(NOOP));
+        assertEquals(ConcurrencyLimiter.QUEUED, limit.acquire(grant));
+        assertEquals(ConcurrencyLimiter.REJECTED, limit.acquire(NOOP));
+
+        // The permit is handed straight to the queued request
+        limit.release(-1, false);
+        assertEquals(1, granted.get());
+        assertEquals(1, limit.getInFlight());
+        assertFalse(limit.dequeue(grant));
+
+        assertEquals(ConcurrencyLimiter.QUEUED, limit.acquire(grant));
+        assertTrue(limit.dequeue(grant));
+        assertEquals(0, limit.getQueued());
+    }
+
+    @Test
+    public void testAimd() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter().aimd("foo", 10, 20);
+        ConcurrencyLimiter.Limit limit = limiter.getRule("foo");
+        // Grows by about one per limit's worth of successes
+        for (int i = 0; i < 11; i++) {
+            limit.acquire(NOOP);
+            limit.release(1000, false);
+        }
+        assertEquals(11, limit.getLimit());
+
+        // Cut by 10% on a drop
+        limit.acquire(NOOP);
+        limit.release(1000, true);
+        assertEquals(9, limit.getLimit());
+
+        for (int i = 0; i < 1000; i++) {
+            limit.acquire(NOOP);
+            limit.release(1000, false);
+        }
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    public void testGradient() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter().gradient("foo", 10, 100);
+        ConcurrencyLimiter.Limit limit = limiter.getRule("foo");
+        // Steady latency lets the limit grow
+        for (int i = 0; i < 20; i++) {
+            limit.acquire(NOOP);
+            limit.release(TimeUnit.MILLISECONDS.toNanos(1), false);
+        }
+        int grown = limit.getLimit();
+        assertTrue(grown > 10);
+
+        // Rising latency shrinks it
+        for (int i = 0; i < 20; i++) {
+            limit.acquire(NOOP);
+            limit.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+        }
+        assertTrue(limit.getLimit() < grown);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadLimits() {
+        new ConcurrencyLimiter().aimd("foo", 10, 5);
+    }
+}
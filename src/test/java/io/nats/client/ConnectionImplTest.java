@@ -13,6 +13,8 @@ import static io.nats.client.Nats.ConnState.DISCONNECTED;
 import static io.nats.client.Nats.ConnState.RECONNECTING;
 import static io.nats.client.Nats.ERR_BAD_SUBJECT;
 import static io.nats.client.Nats.ERR_BAD_TIMEOUT;
+import static io.nats.client.Nats.ERR_CIRCUIT_OPEN;
+import static io.nats.client.Nats.ERR_CONCURRENCY_LIMIT;
 import static io.nats.client.Nats.ERR_CONNECTION_CLOSED;
 import static io.nats.client.Nats.ERR_CONNECTION_READ;
 import static io.nats.client.Nats.ERR_MAX_PAYLOAD;
@@ -37,18 +39,22 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -68,19 +74,26 @@ import java.net.URI;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 import javax.net.ssl.SSLContext;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -95,7 +108,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockingDetails;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -228,6 +243,31 @@ public class ConnectionImplTest {
 
     }
 
+    @Test
+    public void testConnectProtoNoEcho() throws Exception {
+        Options opts = new Options.Builder(defaultOptions()).localDelivery().build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl conn = new ConnectionImpl(opts)) {
+            conn.setupServerPool();
+            ServerInfo info = ServerInfo.createFromWire(defaultInfo);
+            conn.setConnectedServerInfo(info);
+            // Servers that can't disable echo fall back to delivery through the server
+            assertNull(ClientConnectInfo.createFromWire(conn.connectProto()).getEcho());
+
+            info.setProto(1);
+            assertEquals(Boolean.FALSE,
+                    ClientConnectInfo.createFromWire(conn.connectProto()).getEcho());
+        }
+
+        try (ConnectionImpl conn = new ConnectionImpl(defaultOptions())) {
+            conn.setupServerPool();
+            ServerInfo info = ServerInfo.createFromWire(defaultInfo);
+            info.setProto(1);
+            conn.setConnectedServerInfo(info);
+            assertNull(ClientConnectInfo.createFromWire(conn.connectProto()).getEcho());
+        }
+    }
+
     @Test
     public void testGetPropertiesInputStreamFailures() throws IOException {
         ConnectionImpl conn = new ConnectionImpl(Nats.defaultOptions());
@@ -304,6 +344,72 @@ public class ConnectionImplTest {
         conn.close();
     }
 
+    @Test
+    public void testSelectNextServerLatencyAware() throws Exception {
+        Options opts = new Options.Builder().maxReconnect(-1).dontRandomize().latencyAware()
+                .build();
+        opts.servers = Nats.processUrlString(
+                "nats://localhost:5222, nats://localhost:6222, nats://localhost:7222");
+        ConnectionImpl conn = new ConnectionImpl(opts);
+        conn.setupServerPool();
+        final List<Srv> pool = conn.getServerPool();
+        pool.get(0).updateRtt(TimeUnit.MILLISECONDS.toNanos(1));
+        pool.get(1).updateRtt(TimeUnit.MILLISECONDS.toNanos(30));
+        pool.get(2).updateRtt(TimeUnit.MILLISECONDS.toNanos(5));
+
+        // The fastest of the other servers, not the next one in the list
+        Srv srv = conn.selectNextServer();
+        assertEquals("nats://localhost:7222", srv.url.toString());
+        assertEquals(srv, pool.get(0));
+        conn.setUrl(srv.url);
+
+        // A server that failed goes behind those that have not, however fast
+        srv.reconnects = 1;
+        srv = conn.selectNextServer();
+        assertEquals("nats://localhost:5222", srv.url.toString());
+        conn.setUrl(srv.url);
+        srv.reconnects = 1;
+        assertEquals("nats://localhost:6222", conn.selectNextServer().url.toString());
+
+        conn.setOutputStream(mock(OutputStream.class));
+        conn.close();
+    }
+
+    @Test
+    public void testSrvUpdateRtt() {
+        Srv srv = new Srv(URI.create("nats://localhost:4222"), false);
+        srv.updateRtt(8000);
+        assertEquals(8000, srv.rttNanos);
+        // Smoothed by a weight of 1/8
+        srv.updateRtt(16000);
+        assertEquals(9000, srv.rttNanos);
+    }
+
+    @Test
+    public void testReconnectWaitBackoff() throws Exception {
+        Options opts = new Options.Builder().reconnectWait(100, TimeUnit.MILLISECONDS).build();
+        ConnectionImpl conn = new ConnectionImpl(opts);
+        Srv srv = new Srv(URI.create("nats://localhost:4222"), false);
+        srv.reconnects = 5;
+        // Without a backoff, the wait is fixed
+        assertEquals(100, conn.reconnectWait(srv));
+
+        opts = new Options.Builder(opts).reconnectBackoff(1, TimeUnit.SECONDS).build();
+        conn = new ConnectionImpl(opts);
+        for (int i = 0; i < 100; i++) {
+            srv.reconnects = 0;
+            long wait = conn.reconnectWait(srv);
+            assertTrue(wait >= 50 && wait <= 100);
+            srv.reconnects = 2;
+            wait = conn.reconnectWait(srv);
+            assertTrue(wait >= 200 && wait <= 400);
+            // Capped
+            srv.reconnects = 10;
+            wait = conn.reconnectWait(srv);
+            assertTrue(wait >= 500 && wait <= 1000);
+        }
+    }
+
     @Test
     public void testFlushReconnectPendingItems() throws Exception {
         try (ConnectionImpl c = (ConnectionImpl) newMockedConnection()) {
@@ -818,6 +924,38 @@ public class ConnectionImplTest {
         }
     }
 
+    @Test
+    public void testPublishReply() throws Exception {
+        try (ConnectionImpl c = (ConnectionImpl) Mockito.spy(newMockedConnection())) {
+            Message request = new Message("foo", "bar", null);
+            byte[] data = "baz".getBytes();
+            c.publishReply(request, data);
+            // The reply subject is written as received, without a String round trip
+            verify(c, times(1)).publish(same(request.getReplyToBytes()), eq((byte[]) null),
+                    same(data), eq(false));
+        }
+    }
+
+    @Test
+    public void testPublishReplyNoReplySubject() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(Nats.ERR_NO_REPLY_SUBJECT);
+        try (Connection c = newMockedConnection()) {
+            c.publishReply(new Message("foo", null, null), "baz".getBytes());
+        }
+    }
+
+    @Test
+    public void testMessageRespond() throws Exception {
+        try (ConnectionImpl c = (ConnectionImpl) Mockito.spy(newMockedConnection())) {
+            SubscriptionImpl sub = (SubscriptionImpl) c.subscribeSync("foo");
+            Message request = new Message(null, "foo", "bar", sub);
+            byte[] data = "baz".getBytes();
+            request.respond(data);
+            verify(c, times(1)).publishReply(same(request), same(data));
+        }
+    }
+
     @Test
     public void testResendSubscriptions() throws Exception {
         try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection())) {
@@ -1753,66 +1891,538 @@ public class ConnectionImplTest {
         }
     }
 
+    // Answers each request published on "foo" by sending the given replies to its inbox.
+    private static void respondWith(final ConnectionImpl nc, final String... replies)
+            throws IOException {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                String inbox = (String) invocation.getArguments()[1];
+                for (String reply : replies) {
+                    nc.getResponseMux().dispatch(new Message(inbox, null, reply.getBytes()));
+                }
+                return null;
+            }
+        }).when(nc).publish(eq("foo"), anyString(), any(byte[].class));
+    }
+
     @Test
     public void testRequest() throws Exception {
-        final String inbox = "_INBOX.DEADBEEF";
-        // SyncSubscriptionImpl mockSub = mock(SyncSubscriptionImpl.class);
-        Message replyMsg = new Message();
-        replyMsg.setData("answer".getBytes());
-        replyMsg.setSubject(inbox);
-        when(syncSubMock.nextMessage(any(long.class), any(TimeUnit.class))).thenReturn(replyMsg);
         try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection())) {
-            doReturn(inbox).when(c).newInbox();
-            doReturn(mchMock).when(c).createMsgChannel(anyInt());
-            doReturn(syncSubMock).when(c).subscribe(inbox, null, null,
-                    mchMock);
-            Message msg = c.request("foo", null);
-            verify(syncSubMock, times(1)).nextMessage(-1, TimeUnit.MILLISECONDS);
-            assertEquals(replyMsg, msg);
+            respondWith(c, "answer");
+            Message msg = c.request("foo", "help".getBytes());
+            assertEquals("answer", new String(msg.getData()));
+
+            msg = c.request("foo", "help".getBytes(), 1, TimeUnit.SECONDS);
+            assertEquals("answer", new String(msg.getData()));
+
+            msg = c.request("foo", "help".getBytes(), 500);
+            assertEquals("answer", new String(msg.getData()));
 
-            msg = c.request("foo", null, 1, TimeUnit.SECONDS);
-            assertEquals(replyMsg, msg);
+            // All requests share one inbox subscription, and release their reply subjects
+            verify(c, times(1)).newInbox();
+            assertEquals(0, c.getResponseMux().size());
+        }
+    }
 
-            msg = c.request("foo", null, 500);
-            assertEquals(replyMsg, msg);
+    @Test
+    public void testRequestTimeout() throws Exception {
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection())) {
+            doNothing().when(c).publish(eq("foo"), anyString(), any(byte[].class));
+            assertNull(c.request("foo", "help".getBytes(), 100));
+            assertEquals(0, c.getResponseMux().size());
         }
     }
 
     @Test
     public void testRequestMulti() throws Exception {
-        final String inbox = "_INBOX.DEADBEEF";
-        // SyncSubscriptionImpl mockSub = mock(SyncSubscriptionImpl.class);
-        Message replyMsg = new Message();
-        replyMsg.setData("answer".getBytes());
-        replyMsg.setSubject(inbox);
-        when(syncSubMock.nextMessage(any(long.class), any(TimeUnit.class))).thenReturn(replyMsg);
         try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection())) {
-            doReturn(inbox).when(c).newInbox();
-            doReturn(mchMock).when(c).createMsgChannel(anyInt());
-            doReturn(syncSubMock).when(c).subscribe(inbox, null, null, mchMock);
-            List<Message> msgs = c.requestMulti("foo", null, 500);
-            verify(syncSubMock, atLeastOnce()).nextMessage(any(long.class), same(TimeUnit.MILLISECONDS));
-            assertFalse(msgs.isEmpty());
-            assertEquals(replyMsg, msgs.get(0));
+            respondWith(c, "one", "two");
+            List<Message> msgs = c.requestMulti("foo", "help".getBytes(), 500);
+            assertEquals(2, msgs.size());
+            assertEquals("one", new String(msgs.get(0).getData()));
+            assertEquals("two", new String(msgs.get(1).getData()));
+
+            msgs = c.requestMulti("foo", "help".getBytes(), 1, TimeUnit.SECONDS);
+            assertEquals(2, msgs.size());
+            assertEquals(0, c.getResponseMux().size());
+        }
+    }
+
+    @Test
+    public void testRequestAsync() throws Exception {
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection())) {
+            respondWith(c, "answer");
+            CompletableFuture<Message> reply = c.requestAsync("foo", "help".getBytes(), 1000);
+            assertEquals("answer", new String(reply.get(1, TimeUnit.SECONDS).getData()));
+            assertEquals(0, c.getResponseMux().size());
+        }
+    }
+
+    @Test
+    public void testRequestAsyncTimeout() throws Exception {
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection())) {
+            doNothing().when(c).publish(eq("foo"), anyString(), any(byte[].class));
+            CompletableFuture<Message> reply = c.requestAsync("foo", "help".getBytes(), 100);
+            try {
+                reply.get(1, TimeUnit.SECONDS);
+                fail("Should have timed out");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+                assertEquals(ERR_TIMEOUT, e.getCause().getMessage());
+            }
+            assertEquals(0, c.getResponseMux().size());
+        }
+    }
+
+    @Test
+    public void testRequestAsyncCancel() throws Exception {
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection())) {
+            doNothing().when(c).publish(eq("foo"), anyString(), any(byte[].class));
+            CompletableFuture<Message> reply = c.requestAsync("foo", "help".getBytes(), -1);
+            assertEquals(1, c.getResponseMux().size());
+            assertTrue(reply.cancel(false));
+            assertEquals(0, c.getResponseMux().size());
+        }
+    }
+
+    @Test
+    public void testRequestAsyncConnectionClosed() throws Exception {
+        ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection());
+        doNothing().when(c).publish(eq("foo"), anyString(), any(byte[].class));
+        CompletableFuture<Message> pending = c.requestAsync("foo", "help".getBytes(), -1);
+        c.close();
+        assertTrue(pending.isCompletedExceptionally());
+        assertTrue(c.requestAsync("foo", "help".getBytes(), 100).isCompletedExceptionally());
+    }
+
+    @Test(timeout = 5000)
+    public void testScatterGather() throws Exception {
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection())) {
+            respondWith(c, "one", "two", "three");
+            // Completes without waiting for the timeout
+            List<Message> msgs = c.scatterGather("foo", "help".getBytes(), GatherPolicy.count(2),
+                    1, TimeUnit.MINUTES).get();
+            assertEquals(2, msgs.size());
+            assertEquals("two", new String(msgs.get(1).getData()));
+            assertEquals(0, c.getResponseMux().size());
+
+            msgs = c.scatterGather("foo", "help".getBytes(), GatherPolicy.quorum(3), -1,
+                    TimeUnit.MILLISECONDS).get();
+            assertEquals(2, msgs.size());
+
+            msgs = c.scatterGather("foo", "help".getBytes(),
+                    GatherPolicy.until(new Predicate<Message>() {
+                        @Override
+                        public boolean test(Message msg) {
+                            return "one".equals(new String(msg.getData()));
+                        }
+                    }), -1, TimeUnit.MILLISECONDS).get();
+            assertEquals(1, msgs.size());
+
+            // Gathering everything waits for the timeout
+            msgs = c.scatterGather("foo", "help".getBytes(), GatherPolicy.all(), 100,
+                    TimeUnit.MILLISECONDS).get();
+            assertEquals(3, msgs.size());
+            assertEquals(0, c.getResponseMux().size());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testScatterGatherStreaming() throws Exception {
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection())) {
+            respondWith(c, "one", "two", "three");
+            final List<String> seen = new ArrayList<String>();
+            int count = c.scatterGather("foo", "help".getBytes(), GatherPolicy.count(5), 100,
+                    TimeUnit.MILLISECONDS, new MessageHandler() {
+                        @Override
+                        public void onMessage(Message msg) {
+                            seen.add(new String(msg.getData()));
+                        }
+                    }).get();
+            assertEquals(3, count);
+            assertEquals(3, seen.size());
+            assertEquals("three", seen.get(2));
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testRequestHedged() throws Exception {
+        Options opts = new Options.Builder(defaultOptions())
+                .hedging(HedgePolicy.fixedDelay(50, TimeUnit.MILLISECONDS).withBudget(100))
+                .build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl c = (ConnectionImpl) newMockedConnection(opts)) {
+            final ResponseMux mux = c.getResponseMux();
+            String subject = mux.getSubject();
+            // Reply subjects are numbered, so the hedged copy of the first request uses "2"
+            final String hedgeInbox = subject.substring(0, subject.length() - 1) + "2";
+            new Thread(new Runnable() {
+                public void run() {
+                    while (mux.size() < 2) {
+                        UnitTestUtilities.sleep(5);
+                    }
+                    mux.dispatch(new Message(hedgeInbox, null, "late".getBytes()));
+                }
+            }).start();
+
+            Message msg = c.request("foo", "help".getBytes(), 1000);
+            assertEquals("late", new String(msg.getData()));
+            assertEquals(2, c.getStats().getOutMsgs());
+            assertEquals(1, c.getStats().getHedgesSent());
+            assertEquals(1, c.getStats().getHedgesWon());
+            assertEquals(0, mux.size());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testRequestHedgeBudget() throws Exception {
+        Options opts = new Options.Builder(defaultOptions())
+                .hedging(HedgePolicy.fixedDelay(10, TimeUnit.MILLISECONDS).withBudget(0))
+                .build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl c = (ConnectionImpl) newMockedConnection(opts)) {
+            assertNull(c.request("foo", "help".getBytes(), 200));
+            assertEquals(1, c.getStats().getOutMsgs());
+            assertEquals(0, c.getStats().getHedgesSent());
+        }
+    }
+
+    @Test
+    public void testRequestCached() throws Exception {
+        ResponseCache cache = new ResponseCache(10).cache("foo", 1, TimeUnit.MINUTES);
+        Options opts = new Options.Builder(defaultOptions()).responseCache(cache).build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection(opts))) {
+            respondWith(c, "answer");
+            Message first = c.request("foo", "help".getBytes(), 1000);
+            Message second = c.requestAsync("foo", "help".getBytes(), 1000).get();
+            assertSame(first, second);
+            c.request("foo", "other".getBytes(), 1000);
+            verify(c, times(2)).publish(eq("foo"), anyString(), any(byte[].class));
+            assertEquals(1, cache.getHits());
+            assertEquals(2, cache.getMisses());
+        }
+    }
+
+    @Test
+    public void testRequestCoalesced() throws Exception {
+        Options opts = new Options.Builder(defaultOptions()).coalesceRequests().build();
+        opts.url = Nats.DEFAULT_URL;
+        try (final ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection(opts))) {
+            final AtomicReference<String> inbox = new AtomicReference<String>();
+            doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) {
+                    inbox.set((String) invocation.getArguments()[1]);
+                    return null;
+                }
+            }).when(c).publish(eq("foo"), anyString(), any(byte[].class));
+
+            CompletableFuture<Message> first = c.requestAsync("foo", "help".getBytes(), 1000);
+            CompletableFuture<Message> second = c.requestAsync("foo", "help".getBytes(), 1000);
+            CompletableFuture<Message> other = c.requestAsync("foo", "other".getBytes(), 1000);
+            verify(c, times(2)).publish(eq("foo"), anyString(), any(byte[].class));
+            assertFalse(first.isDone());
+
+            // A blocking request joins the flight too
+            final AtomicReference<Message> blocking = new AtomicReference<Message>();
+            Thread waiter = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        blocking.set(c.request("foo", "help".getBytes(), 1000));
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            waiter.start();
+            UnitTestUtilities.sleep(100);
+            verify(c, times(2)).publish(eq("foo"), anyString(), any(byte[].class));
+
+            other.cancel(false);
+            Message reply = new Message(inbox.get(), null, "answer".getBytes());
+            c.getResponseMux().dispatch(reply);
+            waiter.join(1000);
+            assertSame(first.get(), second.get());
+            assertSame(first.get(), blocking.get());
+
+            // Once answered, the next identical request goes on the wire
+            c.requestAsync("foo", "help".getBytes(), 1000).cancel(false);
+            verify(c, times(3)).publish(eq("foo"), anyString(), any(byte[].class));
+            assertEquals(0, c.getResponseMux().size());
+        }
+    }
+
+    @Test
+    public void testRequestCoalescedTimeout() throws Exception {
+        Options opts = new Options.Builder(defaultOptions()).coalesceRequests().build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection(opts))) {
+            doNothing().when(c).publish(eq("foo"), anyString(), any(byte[].class));
+            CompletableFuture<Message> longer = c.requestAsync("foo", "help".getBytes(), 5000);
+            // Each caller keeps its own timeout
+            assertNull(c.request("foo", "help".getBytes(), 100));
+            assertFalse(longer.isDone());
+            assertEquals(1, c.getResponseMux().size());
+
+            // The shared request is dropped once nobody waits for it
+            longer.cancel(false);
+            assertEquals(0, c.getResponseMux().size());
+        }
+    }
+
+    @Test
+    public void testRequestLimited() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter().aimd("foo", 1, 10);
+        Options opts = new Options.Builder(defaultOptions()).concurrencyLimiter(limiter).build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection(opts))) {
+            doNothing().when(c).publish(eq("foo"), anyString(), any(byte[].class));
+            CompletableFuture<Message> first = c.requestAsync("foo", "help".getBytes(), 5000);
+            CompletableFuture<Message> second = c.requestAsync("foo", "help".getBytes(), 5000);
+            try {
+                second.get();
+                fail("Should have been rejected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof LimitExceededException);
+                assertEquals(ERR_CONCURRENCY_LIMIT, e.getCause().getMessage());
+            }
+            assertEquals(1, limiter.getRejected());
+            verify(c, times(1)).publish(eq("foo"), anyString(), any(byte[].class));
+
+            // The permit comes back when the request completes
+            first.cancel(false);
+            assertEquals(0, limiter.getInFlight("foo"));
+            c.requestAsync("foo", "help".getBytes(), 5000);
+            verify(c, times(2)).publish(eq("foo"), anyString(), any(byte[].class));
+        }
+    }
+
+    @Test
+    public void testRequestLimitedQueue() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter().queue(1, 100, TimeUnit.MILLISECONDS)
+                .aimd("foo", 1, 10);
+        Options opts = new Options.Builder(defaultOptions()).concurrencyLimiter(limiter).build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection(opts))) {
+            doNothing().when(c).publish(eq("foo"), anyString(), any(byte[].class));
+            CompletableFuture<Message> first = c.requestAsync("foo", "help".getBytes(), 5000);
+            CompletableFuture<Message> queued = c.requestAsync("foo", "help".getBytes(), 5000);
+            verify(c, times(1)).publish(eq("foo"), anyString(), any(byte[].class));
+
+            // A queued request starts once a permit is free
+            first.cancel(false);
+            UnitTestUtilities.sleep(100);
+            verify(c, times(2)).publish(eq("foo"), anyString(), any(byte[].class));
+            assertFalse(queued.isDone());
+
+            // and gives up once it has waited too long
+            CompletableFuture<Message> late = c.requestAsync("foo", "help".getBytes(), 5000);
+            try {
+                late.get(1, TimeUnit.SECONDS);
+                fail("Should have been rejected");
+            } catch (ExecutionException e) {
+                assertEquals(ERR_CONCURRENCY_LIMIT, e.getCause().getMessage());
+            }
+            queued.cancel(false);
+        }
+    }
+
+    @Test
+    public void testRequestCircuitBreaker() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker().minimumRequests(2).protect("foo");
+        Options opts = new Options.Builder(defaultOptions()).circuitBreaker(breaker).build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection(opts))) {
+            doNothing().when(c).publish(eq("foo"), anyString(), any(byte[].class));
+            assertNull(c.request("foo", "help".getBytes(), 50));
+            assertNull(c.request("foo", "help".getBytes(), 50));
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState("foo"));
+
+            // Open, so the next request fails without being sent
+            thrown.expect(IOException.class);
+            thrown.expectMessage(ERR_CIRCUIT_OPEN);
+            try {
+                c.request("foo", "help".getBytes(), 5000);
+            } finally {
+                verify(c, times(2)).publish(eq("foo"), anyString(), any(byte[].class));
+                assertEquals(1, breaker.getRejected());
+            }
+        }
+    }
+
+    @Test
+    public void testRequestCircuitBreakerIgnoresLimiter() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter().aimd("foo", 1, 10);
+        CircuitBreaker breaker = new CircuitBreaker().minimumRequests(2).protect("foo");
+        Options opts = new Options.Builder(defaultOptions()).concurrencyLimiter(limiter)
+                .circuitBreaker(breaker).build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection(opts))) {
+            doNothing().when(c).publish(eq("foo"), anyString(), any(byte[].class));
+            CompletableFuture<Message> first = c.requestAsync("foo", "help".getBytes(), 5000);
+            for (int i = 0; i < 3; i++) {
+                try {
+                    c.requestAsync("foo", "help".getBytes(), 5000).get();
+                    fail("Should have been rejected");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof LimitExceededException);
+                }
+            }
+            // Turned away by the limiter, which says nothing about the responders
+            assertEquals(3, limiter.getRejected());
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("foo"));
+            first.cancel(false);
+        }
+    }
+
+    @Test
+    public void testRequestCoalescedCircuitBreaker() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker().minimumRequests(2).protect("foo");
+        Options opts = new Options.Builder(defaultOptions()).coalesceRequests()
+                .circuitBreaker(breaker).build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection(opts))) {
+            doNothing().when(c).publish(eq("foo"), anyString(), any(byte[].class));
+            CompletableFuture<Message> longer = c.requestAsync("foo", "help".getBytes(), 200);
+            assertNull(c.request("foo", "help".getBytes(), 50));
+            // The shared request outlives the first caller to give up
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("foo"));
+            assertEquals(1, c.getResponseMux().size());
+            try {
+                longer.get(1, TimeUnit.SECONDS);
+                fail("Should have timed out");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            assertEquals(0, c.getResponseMux().size());
+
+            // and times out with the last one, counting against the circuit
+            assertNull(c.request("foo", "help".getBytes(), 50));
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState("foo"));
+        }
+    }
+
+    @Test
+    public void testRequestAll() throws Exception {
+        try (final ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection())) {
+            final List<String> subjects = new ArrayList<String>();
+            doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) {
+                    String subject = (String) invocation.getArguments()[0];
+                    subjects.add(subject);
+                    // The batch is written under the connection lock
+                    assertTrue(((ReentrantLock) c.mu).isHeldByCurrentThread());
+                    if (!subject.equals("slow")) {
+                        String inbox = (String) invocation.getArguments()[1];
+                        c.getResponseMux().dispatch(new Message(inbox, null,
+                                subject.getBytes()));
+                    }
+                    return null;
+                }
+            }).when(c).publish(anyString(), anyString(), any(byte[].class));
+
+            RequestSpec foo = new RequestSpec("foo", "help".getBytes());
+            RequestSpec slow = new RequestSpec("slow", "help".getBytes());
+            RequestSpec bar = new RequestSpec("bar", "help".getBytes());
+            Map<RequestSpec, CompletableFuture<Message>> replies =
+                    c.requestAll(Arrays.asList(foo, slow, bar), 100, TimeUnit.MILLISECONDS);
+            assertEquals(Arrays.asList("foo", "slow", "bar"), subjects);
+            assertEquals(Arrays.asList(foo, slow, bar),
+                    new ArrayList<RequestSpec>(replies.keySet()));
+
+            assertEquals("foo", new String(replies.get(foo).get().getData()));
+            assertEquals("bar", new String(replies.get(bar).get().getData()));
+            // The straggler fails on its own
+            try {
+                replies.get(slow).get();
+                fail("Should have timed out");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            assertEquals(0, c.getResponseMux().size());
+        }
+    }
+
+    @Test
+    public void testRequestResubmitted() throws Exception {
+        Options opts = new Options.Builder(defaultOptions()).resubmitOnReconnect("foo.*").build();
+        opts.url = Nats.DEFAULT_URL;
+        try (final ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection(opts))) {
+            final List<String> inboxes = new ArrayList<String>();
+            doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) {
+                    inboxes.add(invocation.getArguments()[0] + " "
+                            + invocation.getArguments()[1]);
+                    return null;
+                }
+            }).when(c).publish(anyString(), anyString(), any(byte[].class));
+
+            CompletableFuture<Message> matched = c.requestAsync("foo.bar", "help".getBytes(), 1000);
+            CompletableFuture<Message> unmatched = c.requestAsync("baz", "help".getBytes(), 1000);
+            CompletableFuture<Message> flagged = c.requestAsync("baz", "help".getBytes(), 1000,
+                    TimeUnit.MILLISECONDS, true);
+            assertEquals(3, inboxes.size());
 
-            msgs = c.requestMulti("foo", null, 1, TimeUnit.SECONDS);
-            assertFalse(msgs.isEmpty());
-            assertEquals(replyMsg, msgs.get(0));
+            c.mu.lock();
+            try {
+                c.resubmitInFlight();
+            } finally {
+                c.mu.unlock();
+            }
+            // Only the resubmitted requests go out again, each under a fresh reply subject
+            assertEquals(5, inboxes.size());
+            assertEquals(2, c.getStats().getResubmits());
+            String[] first = inboxes.get(3).split(" ");
+            assertEquals("foo.bar", first[0]);
+            assertFalse(inboxes.get(0).endsWith(first[1]));
+            assertTrue(inboxes.get(4).startsWith("baz "));
+
+            c.getResponseMux().dispatch(new Message(first[1], null, "answer".getBytes()));
+            assertEquals("answer", new String(matched.get().getData()));
+
+            // Answered requests are not resubmitted again
+            flagged.cancel(false);
+            c.mu.lock();
+            try {
+                c.resubmitInFlight();
+            } finally {
+                c.mu.unlock();
+            }
+            assertEquals(5, inboxes.size());
+            unmatched.cancel(false);
+            assertEquals(0, c.getResponseMux().size());
         }
     }
 
+    @Test(timeout = 5000)
+    public void testRequestConnectionClosed() throws Exception {
+        thrown.expect(IllegalStateException.class);
+        thrown.expectMessage(ERR_CONNECTION_CLOSED);
+        final ConnectionImpl c = (ConnectionImpl) spy(newMockedConnection());
+        doNothing().when(c).publish(eq("foo"), anyString(), any(byte[].class));
+        new Thread(new Runnable() {
+            public void run() {
+                UnitTestUtilities.sleep(200);
+                c.close();
+            }
+        }).start();
+        c.request("foo", "help".getBytes());
+    }
+
     @Test
     public void testRequestErrors() throws Exception {
         final String errMsg = "testRequestErrors()";
         thrown.expect(IOException.class);
         thrown.expectMessage(errMsg);
         try (ConnectionImpl nc = (ConnectionImpl) spy(newMockedConnection())) {
-            when(nc.subscribeSync("foo", null)).thenReturn(syncSubMock);
             doThrow(new IOException(errMsg)).when(nc).publish(anyString(), anyString(),
                     any(byte[].class));
 
             nc.request("foo", "help".getBytes());
-            verify(syncSubMock, times(0)).nextMessage(-1, TimeUnit.MILLISECONDS);
         }
     }
 
@@ -2220,6 +2830,232 @@ public class ConnectionImplTest {
 
     }
 
+    @Test
+    public void testHandleSlowConsumerDropOldest() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) spy(newMockedConnection())) {
+            AsyncSubscriptionImpl sub = new AsyncSubscriptionImpl(nc, "foo", "bar", mcbMock);
+            sub.setPendingLimits(2, 1024);
+            sub.setSlowConsumerPolicy(SlowConsumerPolicy.DROP_OLDEST);
+            Message first = new Message("foo", null, "first".getBytes());
+            Message second = new Message("foo", null, "second".getBytes());
+            Message third = new Message("foo", null, "third".getBytes());
+            sub.getChannel().add(first);
+            sub.getChannel().add(second);
+            // processMsg counts the new message before applying the policy
+            sub.pMsgs = 3;
+            sub.pBytes = first.getData().length + second.getData().length
+                    + third.getData().length;
+
+            sub.lock();
+            try {
+                nc.handleSlowConsumer(sub, third);
+            } finally {
+                sub.unlock();
+            }
+
+            assertEquals(2, sub.getChannel().size());
+            assertEquals(second, sub.getChannel().poll());
+            assertEquals(third, sub.getChannel().poll());
+            assertEquals(2, sub.pMsgs);
+            assertEquals(second.getData().length + third.getData().length, sub.pBytes);
+            assertEquals(1, sub.getDroppedMsgs(SlowConsumerPolicy.DROP_OLDEST));
+            assertEquals(first.getData().length,
+                    sub.getDroppedBytes(SlowConsumerPolicy.DROP_OLDEST));
+            assertEquals(0, sub.getDroppedMsgs(SlowConsumerPolicy.DROP_NEWEST));
+        }
+    }
+
+    @Test
+    public void testHandleSlowConsumerError() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) spy(newMockedConnection())) {
+            SyncSubscriptionImpl sub = (SyncSubscriptionImpl) nc.subscribeSync("foo");
+            sub.setPendingLimits(1, 1024);
+            sub.setSlowConsumerPolicy(SlowConsumerPolicy.ERROR);
+            Message queued = new Message("foo", null, "queued".getBytes());
+            Message msg = new Message("foo", null, "overflow".getBytes());
+            sub.getChannel().add(queued);
+            sub.pMsgs = 2;
+            sub.pBytes = queued.getData().length + msg.getData().length;
+
+            nc.mu.lock();
+            sub.lock();
+            try {
+                nc.handleSlowConsumer(sub, msg);
+            } finally {
+                sub.unlock();
+                nc.mu.unlock();
+            }
+
+            assertFalse(sub.isValid());
+            assertFalse(nc.getSubs().containsKey(sub.getSid()));
+            assertEquals(0, sub.pMsgs);
+            assertEquals(0, sub.pBytes);
+            assertEquals(2, sub.getDroppedMsgs(SlowConsumerPolicy.ERROR));
+            assertEquals(queued.getData().length + msg.getData().length,
+                    sub.getDroppedBytes(SlowConsumerPolicy.ERROR));
+            verify(nc, times(1)).writeUnsubProto(eq(sub), eq(0L));
+        }
+    }
+
+    @Test
+    public void testPendingBytesBudgetFairShare() throws Exception {
+        Options opts = new Options.Builder(defaultOptions()).pendingBytesBudget(100).build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection(opts)) {
+            SyncSubscriptionImpl hog = (SyncSubscriptionImpl) nc.subscribeSync("foo");
+            SyncSubscriptionImpl quiet = (SyncSubscriptionImpl) nc.subscribeSync("bar");
+            assertEquals(100, nc.getPendingBytesBudget());
+
+            hog.lock();
+            try {
+                hog.addPending(90);
+                // Over its fair share, but the budget isn't exhausted yet
+                assertFalse(hog.isOverPendingLimits());
+                hog.addPending(20);
+                assertTrue(hog.isOverPendingLimits());
+            } finally {
+                hog.unlock();
+            }
+
+            quiet.lock();
+            try {
+                quiet.addPending(10);
+                // Budget exhausted, but still under its fair share
+                assertFalse(quiet.isOverPendingLimits());
+            } finally {
+                quiet.unlock();
+            }
+            assertEquals(120, nc.getPendingBytesUsed());
+
+            // Removing a subscription returns its pending bytes to the budget
+            hog.unsubscribe();
+            assertEquals(10, nc.getPendingBytesUsed());
+            assertEquals(1, nc.getBudget().getMembers());
+        }
+    }
+
+    @Test
+    public void testLocalRouting() throws Exception {
+        Options opts = new Options.Builder(defaultOptions()).localRouting().build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl nc = (ConnectionImpl) spy(newMockedConnection(opts))) {
+            SyncSubscriptionImpl wide = (SyncSubscriptionImpl) nc.subscribeSync("foo.*");
+            SyncSubscriptionImpl narrow = (SyncSubscriptionImpl) nc.subscribeSync("foo.bar");
+            SyncSubscriptionImpl other = (SyncSubscriptionImpl) nc.subscribeSync("foo.baz");
+            SyncSubscriptionImpl queued = (SyncSubscriptionImpl) nc.subscribeSync("foo.bar", "q");
+
+            // Covered subscriptions share one server subscription; queue subscriptions never do
+            SubjectRouter.Route route = wide.route;
+            assertNotNull(route);
+            assertSame(route, narrow.route);
+            assertSame(route, other.route);
+            assertNull(queued.route);
+            assertEquals(1, nc.getRouter().getRoutes().size());
+            verify(nc, times(1)).sendSubscriptionMessage(eq("foo.*"), eq((String) null),
+                    eq(route.sid));
+            verify(nc, never()).sendSubscriptionMessage(eq(narrow));
+            verify(nc, times(1)).sendSubscriptionMessage(eq(queued));
+
+            Parser parser = nc.getParser();
+            parser.ps.ma.subject.clear();
+            parser.ps.ma.subject.put("foo.bar".getBytes());
+            parser.ps.ma.subject.flip();
+            parser.ps.ma.reply.clear();
+            parser.ps.ma.reply.flip();
+            parser.ps.ma.sid = route.sid;
+            byte[] data = "hello".getBytes();
+            parser.ps.ma.size = data.length;
+            nc.processMsg(data, 0, data.length);
+
+            // Fanned out in-process, sharing one copy of the payload
+            Message m1 = wide.nextMessage(1000);
+            Message m2 = narrow.nextMessage(1000);
+            assertEquals("foo.bar", m2.getSubject());
+            assertSame(m1.getData(), m2.getData());
+            assertEquals(0, other.getPendingMsgs());
+
+            // The server subscription is cancelled along with its last member
+            wide.unsubscribe();
+            narrow.unsubscribe();
+            verify(nc, never()).writeUnsubProto(eq(route.sid), anyLong());
+            other.unsubscribe();
+            verify(nc, times(1)).writeUnsubProto(eq(route.sid), eq(0L));
+            assertEquals(0, nc.getRouter().getRoutes().size());
+        }
+    }
+
+    @Test
+    public void testLocalDelivery() throws Exception {
+        Options opts = new Options.Builder(defaultOptions()).localDelivery().build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection(opts)) {
+            // Pretend the server agreed to disable echo
+            ServerInfo info = ServerInfo.createFromWire(defaultInfo);
+            info.setProto(1);
+            nc.setConnectedServerInfo(info);
+            nc.connectProto();
+
+            SyncSubscription wide = nc.subscribeSync("foo.*");
+            SyncSubscription narrow = nc.subscribeSync("foo.bar");
+            SyncSubscription other = nc.subscribeSync("bar");
+
+            byte[] data = "hello".getBytes();
+            nc.publish("foo.bar", "reply", data);
+
+            Message m1 = wide.nextMessage(1000);
+            Message m2 = narrow.nextMessage(1000);
+            assertEquals("foo.bar", m1.getSubject());
+            assertEquals("reply", m1.getReplyTo());
+            // The payload is shared with the publisher, not copied
+            assertSame(data, m1.getData());
+            assertSame(data, m2.getData());
+            assertEquals(0, other.getPendingMsgs());
+            assertEquals(1, nc.getStats().getOutMsgs());
+        }
+    }
+
+    @Test
+    public void testLocalDeliveryQueueRefused() throws Exception {
+        Options opts = new Options.Builder(defaultOptions()).localDelivery().build();
+        opts.url = Nats.DEFAULT_URL;
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection(opts)) {
+            // It would miss the messages published on this connection
+            thrown.expect(IllegalArgumentException.class);
+            thrown.expectMessage(Nats.ERR_LOCAL_QUEUE);
+            nc.subscribeSync("foo.bar", "q");
+        }
+    }
+
+    @Test
+    public void testLocalDeliveryRequestReply() throws Exception {
+        Options opts = new Options.Builder(defaultOptions()).localDelivery().build();
+        opts.url = Nats.DEFAULT_URL;
+        try (final ConnectionImpl nc = (ConnectionImpl) newMockedConnection(opts)) {
+            // Pretend the server agreed to disable echo
+            ServerInfo info = ServerInfo.createFromWire(defaultInfo);
+            info.setProto(1);
+            nc.setConnectedServerInfo(info);
+            nc.connectProto();
+
+            // The responder is on the same connection, so the server echoes neither the
+            // request nor the reply
+            nc.subscribe("svc", new MessageHandler() {
+                @Override
+                public void onMessage(Message msg) {
+                    try {
+                        nc.publish(msg.getReplyTo(), "answer".getBytes());
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            Message reply = nc.request("svc", "help".getBytes(), 1000);
+            assertNotNull(reply);
+            assertEquals("answer", new String(reply.getData()));
+            assertEquals(0, nc.getResponseMux().size());
+        }
+    }
+
     @Test
     public void testIsConnected() throws Exception {
         try (ConnectionImpl nc = (ConnectionImpl) spy(newMockedConnection())) {
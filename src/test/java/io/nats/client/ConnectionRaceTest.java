@@ -0,0 +1,169 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.UnitTestUtilities.newMockedTcpConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+@Category(UnitTest.class)
+public class ConnectionRaceTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TestCasePrinterRule pr = new TestCasePrinterRule(System.out);
+
+    private static final String SERVERS = "nats://localhost:4222,nats://localhost:4223";
+
+    private final List<TcpConnection> conns = new CopyOnWriteArrayList<TcpConnection>();
+
+    // Returns a factory of mocked connections for which opening a connection to a server on port
+    // 4222 either hangs or is refused.
+    private TcpConnectionFactory newFactory(final boolean hang) throws IOException {
+        TcpConnectionFactory tcf = mock(TcpConnectionFactory.class);
+        doAnswer(new Answer<TcpConnection>() {
+            @Override
+            public TcpConnection answer(InvocationOnMock invocation) throws Throwable {
+                TcpConnection conn = newMockedTcpConnection();
+                doAnswer(new Answer<Void>() {
+                    @Override
+                    public Void answer(InvocationOnMock invocation) throws Throwable {
+                        String url = (String) invocation.getArguments()[0];
+                        if (url.contains(":4222")) {
+                            if (!hang) {
+                                throw new ConnectException("Connection refused");
+                            }
+                            Thread.sleep(5000);
+                        }
+                        return null;
+                    }
+                }).when(conn).open(anyString(), anyInt());
+                conns.add(conn);
+                return conn;
+            }
+        }).when(tcf).createConnection();
+        return tcf;
+    }
+
+    private static Options raceOptions(TcpConnectionFactory tcf) {
+        return new Options.Builder().dontRandomize().factory(tcf)
+                .connectRace(50, TimeUnit.MILLISECONDS).build();
+    }
+
+    @Test
+    public void testHangingServerSkipped() throws Exception {
+        long start = System.nanoTime();
+        try (Connection nc = Nats.connect(SERVERS, raceOptions(newFactory(true)))) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals("nats://localhost:4223", nc.getConnectedUrl());
+            assertTrue(nc.isConnected());
+            // Far less than the time the first server takes to answer
+            assertTrue("took " + elapsed + "ms", elapsed < 2000);
+        }
+    }
+
+    @Test
+    public void testRefusedServerSkipped() throws Exception {
+        Options opts = raceOptions(newFactory(false));
+        opts.servers = Nats.processUrlString(SERVERS);
+        ConnectionImpl nc = new ConnectionImpl(opts);
+        nc.setupServerPool();
+        ConnectionRace race = new ConnectionRace(nc, opts.getFactory(), opts);
+        ConnectionRace.Handshake winner = race.run(nc.getServerPool());
+        try {
+            assertEquals(4223, winner.srv.url.getPort());
+            assertEquals(2, race.getStarted().size());
+            assertEquals(2, conns.size());
+            // The refused attempt closed its own connection, the winner's is left open
+            verify(conns.get(0)).close();
+            verify(winner.conn, never()).close();
+        } finally {
+            winner.conn.close();
+            nc.close();
+        }
+    }
+
+    @Test
+    public void testAllServersFail() throws Exception {
+        Options opts = raceOptions(newFactory(false));
+
+        // Reported as the sequential connect does
+        thrown.expect(IOException.class);
+        thrown.expectMessage(Nats.ERR_NO_SERVERS);
+        Nats.connect("nats://localhost:4222", opts);
+    }
+
+    @Test
+    public void testHandshakeFailureReported() throws Exception {
+        TcpConnectionFactory tcf = newFactory(false);
+        Options opts = raceOptions(tcf);
+        opts.servers = Nats.processUrlString(SERVERS);
+        ConnectionImpl nc = new ConnectionImpl(opts);
+        nc.setupServerPool();
+        // The second server opens, but never sends INFO
+        doAnswer(new Answer<TcpConnection>() {
+            @Override
+            public TcpConnection answer(InvocationOnMock invocation) throws Throwable {
+                TcpConnection conn = mock(TcpConnection.class);
+                doAnswer(new Answer<Void>() {
+                    @Override
+                    public Void answer(InvocationOnMock invocation) throws Throwable {
+                        if (((String) invocation.getArguments()[0]).contains(":4222")) {
+                            throw new ConnectException("Connection refused");
+                        }
+                        return null;
+                    }
+                }).when(conn).open(anyString(), anyInt());
+                when(conn.getBufferedReader()).thenReturn(
+                        new BufferedReader(new StringReader("")));
+                return conn;
+            }
+        }).when(tcf).createConnection();
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage(Nats.ERR_CONNECTION_CLOSED);
+        try {
+            new ConnectionRace(nc, tcf, opts).run(nc.getServerPool());
+        } finally {
+            nc.close();
+        }
+    }
+
+    @Test
+    public void testNegativeStagger() {
+        thrown.expect(IllegalArgumentException.class);
+        new Options.Builder().connectRace(-1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testSubMillisecondStagger() {
+        thrown.expect(IllegalArgumentException.class);
+        new Options.Builder().connectRace(500, TimeUnit.MICROSECONDS);
+    }
+}
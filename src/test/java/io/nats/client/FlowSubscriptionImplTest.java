@@ -0,0 +1,165 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.UnitTestUtilities.newMockedConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
+
+@Category(UnitTest.class)
+public class FlowSubscriptionImplTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TestCasePrinterRule pr = new TestCasePrinterRule(System.out);
+
+    static class RecordingSubscriber implements Flow.Subscriber<Message> {
+        final BlockingQueue<Message> received = new LinkedBlockingQueue<Message>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        volatile boolean completed;
+        volatile FlowSubscriptionImpl subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = (FlowSubscriptionImpl) subscription;
+        }
+
+        @Override
+        public void onNext(Message item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+    }
+
+    private static void deliver(ConnectionImpl nc, FlowSubscriptionImpl sub, String data) {
+        nc.mu.lock();
+        try {
+            nc.deliverMsg(sub, new Message("foo", null, data.getBytes()));
+        } finally {
+            nc.mu.unlock();
+        }
+    }
+
+    @Test
+    public void testDemand() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection()) {
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            nc.subscribeFlow("foo").subscribe(subscriber);
+            FlowSubscriptionImpl sub = subscriber.subscription;
+            assertNotNull(sub);
+
+            deliver(nc, sub, "one");
+            deliver(nc, sub, "two");
+            deliver(nc, sub, "three");
+            // Nothing is delivered without demand
+            assertNull(subscriber.received.poll(100, TimeUnit.MILLISECONDS));
+            assertEquals(3, sub.getPendingMsgs());
+
+            sub.request(2);
+            assertEquals("one",
+                    new String(subscriber.received.poll(1, TimeUnit.SECONDS).getData()));
+            assertEquals("two",
+                    new String(subscriber.received.poll(1, TimeUnit.SECONDS).getData()));
+            assertNull(subscriber.received.poll(100, TimeUnit.MILLISECONDS));
+            assertEquals(1, sub.getPendingMsgs());
+
+            // A cancelled subscriber receives no terminal signal
+            sub.cancel();
+            assertFalse(sub.isValid());
+            assertFalse(subscriber.done.await(100, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection()) {
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            nc.subscribeFlow("foo", null, 2).subscribe(subscriber);
+            FlowSubscriptionImpl sub = subscriber.subscription;
+            assertEquals(2, sub.getPendingMsgsLimit());
+
+            deliver(nc, sub, "one");
+            deliver(nc, sub, "two");
+            deliver(nc, sub, "three");
+            assertEquals(2, sub.getPendingMsgs());
+            assertEquals(1, sub.getDropped());
+        }
+    }
+
+    @Test
+    public void testBadRequest() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection()) {
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            nc.subscribeFlow("foo").subscribe(subscriber);
+            subscriber.subscription.request(0);
+            assertTrue(subscriber.done.await(1, TimeUnit.SECONDS));
+            assertTrue(subscriber.error.get() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testUnsubscribeCompletes() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection()) {
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            nc.subscribeFlow("foo").subscribe(subscriber);
+            subscriber.subscription.unsubscribe();
+            assertTrue(subscriber.done.await(1, TimeUnit.SECONDS));
+            assertTrue(subscriber.completed);
+            assertNull(subscriber.error.get());
+        }
+    }
+
+    @Test
+    public void testConnectionClosed() throws Exception {
+        ConnectionImpl nc = (ConnectionImpl) newMockedConnection();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        nc.subscribeFlow("foo").subscribe(subscriber);
+        nc.close();
+        assertTrue(subscriber.done.await(1, TimeUnit.SECONDS));
+        assertTrue(subscriber.error.get() instanceof IllegalStateException);
+
+        // Subscribing after close signals onSubscribe, then onError
+        RecordingSubscriber late = new RecordingSubscriber();
+        nc.subscribeFlow("foo").subscribe(late);
+        assertNotNull(late.subscription);
+        assertTrue(late.error.get() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testBadPrefetch() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection()) {
+            nc.subscribeFlow("foo", null, 0);
+        }
+    }
+}
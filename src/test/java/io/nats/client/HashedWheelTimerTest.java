@@ -0,0 +1,110 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
+
+@Category(UnitTest.class)
+public class HashedWheelTimerTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TestCasePrinterRule pr = new TestCasePrinterRule(System.out);
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        // A small wheel, so that longer delays take several rounds
+        timer = new HashedWheelTimer(5, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @After
+    public void tearDown() {
+        timer.close();
+    }
+
+    private static Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        ScheduledFuture<?> timeout = timer.schedule(countDown(latch), 100, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(timeout.isDone());
+        assertFalse(timeout.isCancelled());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        ScheduledFuture<?> timeout = timer.schedule(countDown(latch), 50, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel(true));
+        assertFalse(latch.await(200, TimeUnit.MILLISECONDS));
+        assertTrue(timeout.isCancelled());
+    }
+
+    @Test
+    public void testScheduleWithFixedDelay() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(3);
+        ScheduledFuture<?> timeout = timer.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+                latch.countDown();
+            }
+        }, 10, 20, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        timeout.cancel(false);
+        int count = runs.get();
+        Thread.sleep(100);
+        assertEquals(count, runs.get());
+    }
+
+    @Test
+    public void testCloseRejects() {
+        thrown.expect(RejectedExecutionException.class);
+        timer.close();
+        timer.schedule(countDown(new CountDownLatch(1)), 10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testTickDuration() {
+        assertEquals(5, timer.getTickDuration(TimeUnit.MILLISECONDS));
+        assertSame(HashedWheelTimer.getDefault(), HashedWheelTimer.getDefault());
+    }
+
+    @Test
+    public void testBadTickDuration() {
+        thrown.expect(IllegalArgumentException.class);
+        new HashedWheelTimer(0, TimeUnit.MILLISECONDS, 8);
+    }
+}
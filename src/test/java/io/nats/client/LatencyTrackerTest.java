@@ -0,0 +1,47 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class LatencyTrackerTest {
+    @Rule
+    public TestCasePrinterRule pr = new TestCasePrinterRule(System.out);
+
+    @Test
+    public void testPercentile() {
+        LatencyTracker tracker = new LatencyTracker();
+        assertEquals(-1, tracker.percentile(50, 1));
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(i);
+        }
+        assertEquals(100, tracker.size());
+        assertEquals(50, tracker.percentile(50, 20));
+        assertEquals(95, tracker.percentile(95, 20));
+        assertEquals(-1, tracker.percentile(95, 101));
+    }
+
+    @Test
+    public void testWindowRolls() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 0; i < LatencyTracker.WINDOW; i++) {
+            tracker.record(1000);
+        }
+        assertEquals(1000, tracker.percentile(99, 1));
+        // Older samples are replaced; the cached value is refreshed periodically
+        for (int i = 0; i < LatencyTracker.WINDOW; i++) {
+            tracker.record(10);
+        }
+        assertEquals(LatencyTracker.WINDOW, tracker.size());
+        assertEquals(10, tracker.percentile(99, 1));
+    }
+}
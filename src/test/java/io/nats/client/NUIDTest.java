@@ -13,6 +13,7 @@ package io.nats.client;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.junit.After;
@@ -27,7 +28,10 @@ import org.slf4j.LoggerFactory;
 
 import java.text.NumberFormat;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NUIDTest {
     private final Logger logger = LoggerFactory.getLogger(NUIDTest.class);
@@ -88,6 +92,69 @@ public class NUIDTest {
                 NUID.totalLen, nuid.length());
     }
 
+    @Test
+    @Category(UnitTest.class)
+    public void testNextBytes() {
+        NUID nuid = new NUID();
+        nuid.setSeq(NUID.maxSeq / 2);
+        nuid.setInc(1);
+        byte[] buf = new byte[NUID.totalLen + 4];
+        nuid.next(buf, 2);
+        String written = new String(buf, 2, NUID.totalLen);
+        assertEquals(0, buf[0]);
+        assertEquals(0, buf[buf.length - 1]);
+
+        // The same prefix, and the sequence just before the next one
+        String next = nuid.next();
+        assertEquals(next.substring(0, NUID.preLen), written.substring(0, NUID.preLen));
+        assertEquals(NUID.maxSeq / 2 + 1, decodeSeq(written));
+        assertEquals(decodeSeq(written) + 1, decodeSeq(next));
+        for (int i = 0; i < written.length(); i++) {
+            assertTrue(Arrays.binarySearch(NUID.digits, written.charAt(i)) >= 0);
+        }
+    }
+
+    // Decodes the sequential part of a NUID.
+    private static long decodeSeq(String nuid) {
+        long seq = 0;
+        for (int i = NUID.preLen; i < NUID.totalLen; i++) {
+            seq = seq * NUID.base + Arrays.binarySearch(NUID.digits, nuid.charAt(i));
+        }
+        return seq;
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    @Category(UnitTest.class)
+    public void testNextBytesTooShort() {
+        new NUID().next(new byte[NUID.totalLen], 1);
+    }
+
+    @Test
+    @Category(UnitTest.class)
+    public void testNextLocal() throws Exception {
+        final Set<String> nuids = Collections.newSetFromMap(
+                new ConcurrentHashMap<String, Boolean>());
+        final int count = 10000;
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    byte[] buf = new byte[NUID.totalLen];
+                    for (int j = 0; j < count; j++) {
+                        nuids.add(NUID.nextLocal());
+                        NUID.nextLocal(buf, 0);
+                        nuids.add(new String(buf));
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(threads.length * count * 2, nuids.size());
+    }
+
     @Test(timeout = 5000)
     @Category(PerfTest.class)
     public void testProperPrefix() {
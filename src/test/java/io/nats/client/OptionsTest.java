@@ -16,6 +16,7 @@ import static io.nats.client.Nats.PROP_MAX_RECONNECT;
 import static io.nats.client.Nats.PROP_NORANDOMIZE;
 import static io.nats.client.Nats.PROP_PASSWORD;
 import static io.nats.client.Nats.PROP_PEDANTIC;
+import static io.nats.client.Nats.PROP_PENDING_BYTES_BUDGET;
 import static io.nats.client.Nats.PROP_PING_INTERVAL;
 import static io.nats.client.Nats.PROP_RECONNECTED_CB;
 import static io.nats.client.Nats.PROP_RECONNECT_ALLOWED;
@@ -85,6 +86,7 @@ public class OptionsTest {
     private static final int maxReconnect = 14;
     private static final int reconnectWait = 100;
     private static final int reconnectBufSize = 12 * 1024 * 1024;
+    private static final long pendingBytesBudget = 256 * 1024 * 1024L;
     private static final int timeout = 2000;
     private static final int pingInterval = 5000;
     private static final int maxPings = 4;
@@ -115,6 +117,7 @@ public class OptionsTest {
         props.setProperty(PROP_MAX_RECONNECT, Integer.toString(maxReconnect));
         props.setProperty(PROP_RECONNECT_WAIT, Integer.toString(reconnectWait));
         props.setProperty(PROP_RECONNECT_BUF_SIZE, Integer.toString(reconnectBufSize));
+        props.setProperty(PROP_PENDING_BYTES_BUDGET, Long.toString(pendingBytesBudget));
         props.setProperty(PROP_CONNECTION_TIMEOUT, Integer.toString(timeout));
         props.setProperty(PROP_PING_INTERVAL, Integer.toString(pingInterval));
         props.setProperty(PROP_MAX_PINGS, Integer.toString(maxPings));
@@ -142,6 +145,7 @@ public class OptionsTest {
         assertEquals(maxReconnect, opts.getMaxReconnect());
         assertEquals(reconnectWait, opts.getReconnectWait());
         assertEquals(reconnectBufSize, opts.getReconnectBufSize());
+        assertEquals(pendingBytesBudget, opts.getPendingBytesBudget());
         assertEquals(timeout, opts.getConnectionTimeout());
         assertEquals(pingInterval, opts.getPingInterval());
         assertEquals(maxPings, opts.getMaxPingsOut());
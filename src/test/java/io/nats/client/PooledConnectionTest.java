@@ -0,0 +1,265 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.UnitTestUtilities.newMockedTcpConnectionFactory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.nats.client.Nats.ConnState;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+@Category(UnitTest.class)
+public class PooledConnectionTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TestCasePrinterRule pr = new TestCasePrinterRule(System.out);
+
+    private static Options mockedOptions() {
+        Options opts = new Options.Builder(Nats.defaultOptions())
+                .factory(newMockedTcpConnectionFactory())
+                .build();
+        opts.url = Nats.DEFAULT_URL;
+        return opts;
+    }
+
+    @Test
+    public void testSubjectHashRouting() throws Exception {
+        try (PooledConnection pool = new PooledConnection.Builder(mockedOptions()).size(3)
+                .connect()) {
+            assertEquals(3, pool.getMembers().size());
+            assertTrue(pool.isConnected());
+            assertEquals(ConnState.CONNECTED, pool.getState());
+
+            for (int i = 0; i < 10; i++) {
+                pool.publish("foo", "bar".getBytes());
+            }
+            // Every message on a subject goes through the same member
+            Connection member = pool.member("foo");
+            assertEquals(10, member.getStats().getOutMsgs());
+            assertEquals(10, pool.getStats().getOutMsgs());
+            assertEquals(member, pool.member("foo".getBytes()));
+
+            Message request = new Message("foo", "_INBOX.bar", null);
+            assertEquals(pool.member("_INBOX.bar"), pool.member(request.getReplyToBytes()));
+        }
+    }
+
+    @Test
+    public void testSubjectHashRoutingSkipsClosed() throws Exception {
+        try (PooledConnection pool = new PooledConnection.Builder(mockedOptions()).size(3)
+                .connect()) {
+            Connection closed = pool.member("foo");
+            closed.close();
+            assertEquals(ConnState.DISCONNECTED, pool.getState());
+
+            // The subject moves to an open member, and stays there
+            Connection member = pool.member("foo");
+            assertFalse(member.isClosed());
+            for (int i = 0; i < 10; i++) {
+                pool.publish("foo", "bar".getBytes());
+            }
+            assertEquals(10, member.getStats().getOutMsgs());
+            assertEquals(member, pool.member("foo".getBytes()));
+
+            // Subjects of open members stay where they were
+            for (int i = 0; i < 20; i++) {
+                String subject = "foo." + i;
+                Connection owner = pool.getMembers().get(Math.floorMod(subject.hashCode(), 3));
+                if (owner != closed) {
+                    assertEquals(owner, pool.member(subject));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testShardedQueueSubscriptionSkipsClosed() throws Exception {
+        try (PooledConnection pool = new PooledConnection.Builder(mockedOptions()).size(3)
+                .shardQueueSubscriptions(true).connect()) {
+            Connection closed = pool.getMembers().get(0);
+            closed.close();
+            AsyncSubscription sub = pool.subscribe("foo", "bar", new MessageHandler() {
+                @Override
+                public void onMessage(Message msg) {
+                }
+            });
+            // Sharded across the members still open
+            assertEquals(2, ((ShardedSubscription) sub).getShards().size());
+            for (Connection member : pool.getMembers()) {
+                if (member != closed) {
+                    assertEquals(1, ((ConnectionImpl) member).getSubs().size());
+                }
+            }
+            assertTrue(sub.isValid());
+        }
+    }
+
+    @Test
+    public void testRoundRobinRouting() throws Exception {
+        try (PooledConnection pool = new PooledConnection.Builder(mockedOptions()).size(3)
+                .routing(PooledConnection.Routing.ROUND_ROBIN).connect()) {
+            for (int i = 0; i < 9; i++) {
+                pool.publish("foo", "bar".getBytes());
+            }
+            for (Connection member : pool.getMembers()) {
+                assertEquals(3, member.getStats().getOutMsgs());
+            }
+
+            // Closed members are skipped
+            pool.getMembers().get(0).close();
+            assertFalse(pool.isConnected());
+            assertEquals(ConnState.DISCONNECTED, pool.getState());
+            for (int i = 0; i < 4; i++) {
+                pool.publish("foo", "bar".getBytes());
+            }
+            assertEquals(3, pool.getMembers().get(0).getStats().getOutMsgs());
+            assertEquals(13, pool.getStats().getOutMsgs());
+        }
+    }
+
+    @Test
+    public void testShardedQueueSubscription() throws Exception {
+        try (PooledConnection pool = new PooledConnection.Builder(mockedOptions()).size(3)
+                .shardQueueSubscriptions(true).connect()) {
+            AsyncSubscription sub = pool.subscribe("foo", "bar", new MessageHandler() {
+                @Override
+                public void onMessage(Message msg) {
+                }
+            });
+            assertTrue(sub instanceof ShardedSubscription);
+            assertEquals(3, ((ShardedSubscription) sub).getShards().size());
+            assertEquals("foo", sub.getSubject());
+            assertEquals("bar", sub.getQueue());
+            for (Connection member : pool.getMembers()) {
+                assertEquals(1, ((ConnectionImpl) member).getSubs().size());
+            }
+
+            // Plain subscriptions still live on one member
+            pool.subscribe("baz", new MessageHandler() {
+                @Override
+                public void onMessage(Message msg) {
+                }
+            });
+            int subs = 0;
+            for (Connection member : pool.getMembers()) {
+                subs += ((ConnectionImpl) member).getSubs().size();
+            }
+            assertEquals(4, subs);
+            assertEquals(2, ((ConnectionImpl) pool.member("baz")).getSubs().size());
+
+            sub.unsubscribe();
+            assertFalse(sub.isValid());
+        }
+    }
+
+    @Test
+    public void testShardedAutoUnsubscribe() throws Exception {
+        final List<MessageHandler> relays = new ArrayList<MessageHandler>();
+        final List<AsyncSubscription> shards = new ArrayList<AsyncSubscription>();
+        List<Connection> members = new ArrayList<Connection>();
+        for (int i = 0; i < 3; i++) {
+            final AsyncSubscription shard = mock(AsyncSubscription.class);
+            when(shard.getDelivered()).thenReturn(2L);
+            when(shard.getPendingMsgs()).thenReturn(1);
+            shards.add(shard);
+            Connection member = mock(Connection.class);
+            when(member.subscribe(anyString(), anyString(), any(MessageHandler.class)))
+                    .thenAnswer(new Answer<AsyncSubscription>() {
+                        @Override
+                        public AsyncSubscription answer(InvocationOnMock invocation) {
+                            relays.add((MessageHandler) invocation.getArguments()[2]);
+                            return shard;
+                        }
+                    });
+            members.add(member);
+        }
+        PooledConnection pool = new PooledConnection(members,
+                PooledConnection.Routing.SUBJECT_HASH, true);
+
+        final AtomicInteger received = new AtomicInteger();
+        AsyncSubscription sub = pool.subscribeAsync("foo", "bar", new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                received.incrementAndGet();
+            }
+        });
+        assertEquals(6, sub.getDelivered());
+        assertEquals(3, sub.getPendingMsgs());
+
+        // The 5 messages still to come are split among the shards, on top of what each has
+        sub.autoUnsubscribe(14);
+        verify(shards.get(0)).autoUnsubscribe(5);
+        verify(shards.get(1)).autoUnsubscribe(5);
+        verify(shards.get(2)).autoUnsubscribe(4);
+
+        // Every message a shard receives is handed on, none are dropped
+        Message msg = new Message("foo", null, "hello".getBytes());
+        for (MessageHandler relay : relays) {
+            relay.onMessage(msg);
+        }
+        assertEquals(3, received.get());
+    }
+
+    @Test
+    public void testShardedAutoUnsubscribeReached() throws Exception {
+        final AsyncSubscription idle = mock(AsyncSubscription.class);
+        final AsyncSubscription busy = mock(AsyncSubscription.class);
+        when(busy.getDelivered()).thenReturn(4L);
+        List<Connection> members = new ArrayList<Connection>();
+        for (AsyncSubscription shard : new AsyncSubscription[] {idle, busy}) {
+            Connection member = mock(Connection.class);
+            when(member.subscribe(anyString(), anyString(), any(MessageHandler.class)))
+                    .thenReturn(shard);
+            members.add(member);
+        }
+        PooledConnection pool = new PooledConnection(members,
+                PooledConnection.Routing.SUBJECT_HASH, true);
+        AsyncSubscription sub = pool.subscribe("foo", "bar", new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+            }
+        });
+
+        // Nothing is left to receive, so each shard stops where it is
+        sub.autoUnsubscribe(3);
+        verify(idle).unsubscribe();
+        verify(busy).autoUnsubscribe(4);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        PooledConnection pool = new PooledConnection.Builder(mockedOptions()).size(2).connect();
+        pool.close();
+        assertTrue(pool.isClosed());
+        for (Connection member : pool.getMembers()) {
+            assertTrue(member.isClosed());
+        }
+    }
+
+    @Test
+    public void testInvalidSize() {
+        thrown.expect(IllegalArgumentException.class);
+        new PooledConnection.Builder(mockedOptions()).size(0);
+    }
+}
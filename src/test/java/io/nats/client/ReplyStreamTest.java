@@ -0,0 +1,160 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.Nats.ERR_STREAM_CANCELLED;
+import static io.nats.client.Nats.ERR_TIMEOUT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+@Category(UnitTest.class)
+public class ReplyStreamTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TestCasePrinterRule pr = new TestCasePrinterRule(System.out);
+
+    private final ResponseMux mux = new ResponseMux("_INBOX.replies");
+    private final AtomicReference<MessageHandler> credits = new AtomicReference<MessageHandler>();
+    private final AtomicInteger chunks = new AtomicInteger();
+    private Connection nc;
+
+    // Wires a mocked connection so that chunks go to the mux and credits to the responder.
+    @Before
+    public void setUp() throws Exception {
+        nc = mock(Connection.class);
+        when(nc.newInbox()).thenReturn("_INBOX.credits");
+        when(nc.subscribe(anyString(), any(MessageHandler.class))).thenAnswer(
+                new Answer<AsyncSubscription>() {
+                    @Override
+                    public AsyncSubscription answer(InvocationOnMock invocation) {
+                        credits.set((MessageHandler) invocation.getArguments()[1]);
+                        return mock(AsyncSubscription.class);
+                    }
+                });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Object[] args = invocation.getArguments();
+                chunks.incrementAndGet();
+                mux.dispatch(new Message((String) args[0], (String) args[1], (byte[]) args[2]));
+                return null;
+            }
+        }).when(nc).publish(anyString(), any(), any(byte[].class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Object[] args = invocation.getArguments();
+                credits.get().onMessage(new Message((String) args[0], null, (byte[]) args[1]));
+                return null;
+            }
+        }).when(nc).publish(anyString(), any(byte[].class));
+    }
+
+    private static String readAll(ReplyInputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[3];
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            bytes.write(buf, 0, n);
+        }
+        return new String(bytes.toByteArray());
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        ReplyInputStream in = new ReplyInputStream(nc, mux, 1, TimeUnit.SECONDS, 2);
+        final ReplyOutputStream out = new ReplyOutputStream(nc,
+                new Message("foo", in.getInbox(), null), 4, 1, TimeUnit.SECONDS);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    out.write("hello, world!".getBytes());
+                    out.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        writer.start();
+
+        // Until the first chunk is read, no more credit is granted
+        UnitTestUtilities.sleep(100);
+        assertEquals(1, chunks.get());
+
+        assertEquals("hello, world!", readAll(in));
+        writer.join(1000);
+        assertFalse(writer.isAlive());
+        // Three full chunks and the final one, after which the reply subject is released
+        assertEquals(4, chunks.get());
+        assertEquals(0, mux.size());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        ReplyInputStream in = new ReplyInputStream(nc, mux, 1, TimeUnit.SECONDS, 2);
+        ReplyOutputStream out = new ReplyOutputStream(nc,
+                new Message("foo", in.getInbox(), null), 4, 1, TimeUnit.SECONDS);
+        out.write("abcdefgh".getBytes());
+        assertEquals('a', in.read());
+        in.close();
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage(ERR_STREAM_CANCELLED);
+        out.write("ijklmnopqrstuvwxyz".getBytes());
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        ReplyInputStream in = new ReplyInputStream(nc, mux, 1, TimeUnit.SECONDS, 2);
+        ReplyOutputStream out = new ReplyOutputStream(nc,
+                new Message("foo", in.getInbox(), null), 4, 1, TimeUnit.SECONDS);
+        out.abort("testAbort()");
+        try {
+            in.read();
+            fail("Should have been aborted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("testAbort()"));
+        }
+
+        // Reading on does not make the truncated reply look complete
+        thrown.expect(IOException.class);
+        thrown.expectMessage("testAbort()");
+        in.read();
+    }
+
+    @Test
+    public void testReadTimeout() throws Exception {
+        ReplyInputStream in = new ReplyInputStream(nc, mux, 100, TimeUnit.MILLISECONDS, 2);
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage(ERR_TIMEOUT);
+        in.read();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class ResponseCacheTest {
+    @Rule
+    public TestCasePrinterRule pr = new TestCasePrinterRule(System.out);
+
+    private static Message reply(String data) {
+        return new Message("_INBOX.reply", null, data.getBytes());
+    }
+
+    @Test
+    public void testGetPut() {
+        ResponseCache cache = new ResponseCache(10).cache("config.>", 1, TimeUnit.MINUTES);
+        assertNull(cache.getRule("other"));
+        ResponseCache.Rule rule = cache.getRule("config.db");
+        assertNotNull(rule);
+
+        RequestKey key = new RequestKey("config.db", "get".getBytes());
+        assertNull(cache.get(key));
+        Message msg = reply("value");
+        cache.put(key, rule, msg, cache.getGeneration());
+
+        // Identical requests hit, whatever the payload array
+        assertSame(msg, cache.get(new RequestKey("config.db", "get".getBytes())));
+        assertNull(cache.get(new RequestKey("config.db", "put".getBytes())));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1.0 / 3, cache.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        ResponseCache cache = new ResponseCache(10).cache("foo", 50, TimeUnit.MILLISECONDS);
+        RequestKey key = new RequestKey("foo", null);
+        cache.put(key, cache.getRule("foo"), reply("value"), cache.getGeneration());
+        assertNotNull(cache.get(key));
+        Thread.sleep(100);
+        assertNull(cache.get(key));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLruEviction() {
+        ResponseCache cache = new ResponseCache(2).cache("*", 1, TimeUnit.MINUTES);
+        ResponseCache.Rule rule = cache.getRule("a");
+        RequestKey keyA = new RequestKey("a", null);
+        RequestKey keyB = new RequestKey("b", null);
+        cache.put(keyA, rule, reply("a"), 0);
+        cache.put(keyB, rule, reply("b"), 0);
+        // Touching a makes b the least recently used
+        cache.get(keyA);
+        cache.put(new RequestKey("c", null), rule, reply("c"), 0);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get(keyA));
+        assertNull(cache.get(keyB));
+    }
+
+    @Test
+    public void testInvalidate() {
+        ResponseCache cache = new ResponseCache(10)
+                .cache("config.*", 1, TimeUnit.MINUTES, "config.changed")
+                .cache("ref.*", 1, TimeUnit.MINUTES);
+        assertEquals(Collections.singletonList("config.changed"),
+                cache.getInvalidationSubjects());
+        RequestKey config = new RequestKey("config.db", null);
+        RequestKey ref = new RequestKey("ref.country", null);
+        long generation = cache.getGeneration();
+        cache.put(config, cache.getRule("config.db"), reply("db"), generation);
+        cache.put(ref, cache.getRule("ref.country"), reply("fr"), generation);
+
+        cache.invalidate("config.changed");
+        assertNull(cache.get(config));
+        assertNotNull(cache.get(ref));
+
+        // A reply to a request made before the invalidation is not cached
+        cache.put(config, cache.getRule("config.db"), reply("db"), generation);
+        assertNull(cache.get(config));
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static io.nats.client.UnitTestUtilities.newMockedConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+@Category(UnitTest.class)
+public class ServiceTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TestCasePrinterRule pr = new TestCasePrinterRule(System.out);
+
+    // Records the replies published on nc as "<subject> <payload>".
+    private static BlockingQueue<String> recordReplies(Connection nc) throws Exception {
+        final BlockingQueue<String> replies = new LinkedBlockingQueue<String>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Object[] args = invocation.getArguments();
+                replies.add(((Message) args[0]).getReplyTo() + " "
+                        + new String((byte[]) args[1]));
+                return null;
+            }
+        }).when(nc).publishReply(any(Message.class), any(byte[].class));
+        return replies;
+    }
+
+    private static void request(ConnectionImpl nc, Service svc, String subject, String replyTo) {
+        SubscriptionImpl sub = (SubscriptionImpl) svc.getEndpoint(subject).getSubscription();
+        nc.mu.lock();
+        try {
+            nc.deliverMsg(sub, new Message(subject, replyTo, "req".getBytes()));
+        } finally {
+            nc.mu.unlock();
+        }
+    }
+
+    private static ServiceHandler blockUntil(final CountDownLatch release) {
+        return new ServiceHandler() {
+            @Override
+            public byte[] onRequest(Message request) throws Exception {
+                release.await();
+                return "done".getBytes();
+            }
+        };
+    }
+
+    @Test
+    public void testReply() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) spy(newMockedConnection())) {
+            BlockingQueue<String> replies = recordReplies(nc);
+            Service svc = new Service.Builder(nc).workers(2)
+                    .endpoint("echo", new ServiceHandler() {
+                        @Override
+                        public byte[] onRequest(Message request) {
+                            return request.getData();
+                        }
+                    })
+                    .endpoint("fail", new ServiceHandler() {
+                        @Override
+                        public byte[] onRequest(Message request) throws Exception {
+                            throw new Exception("testReply()");
+                        }
+                    })
+                    .build();
+
+            request(nc, svc, "echo", "_INBOX.1");
+            assertEquals("_INBOX.1 req", replies.poll(1, TimeUnit.SECONDS));
+
+            // A failed request gets no reply
+            request(nc, svc, "fail", "_INBOX.2");
+            request(nc, svc, "echo", "_INBOX.3");
+            assertEquals("_INBOX.3 req", replies.poll(1, TimeUnit.SECONDS));
+            UnitTestUtilities.sleep(100);
+            assertTrue(replies.isEmpty());
+
+            Service.Endpoint echo = svc.getEndpoint("echo");
+            assertEquals(2, echo.getRequests());
+            assertEquals(0, echo.getErrors());
+            assertTrue(echo.getThroughput() > 0);
+            assertTrue(echo.getLatencyPercentile(99, TimeUnit.NANOSECONDS) > 0);
+            assertEquals(1, svc.getEndpoint("fail").getErrors());
+            assertEquals(0, svc.getInFlight());
+            svc.close();
+        }
+    }
+
+    @Test
+    public void testReject() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) spy(newMockedConnection())) {
+            BlockingQueue<String> replies = recordReplies(nc);
+            CountDownLatch release = new CountDownLatch(1);
+            Service svc = new Service.Builder(nc).workers(1).maxInFlight(1)
+                    .rejectWith("busy".getBytes())
+                    .endpoint("foo", blockUntil(release))
+                    .build();
+
+            request(nc, svc, "foo", "_INBOX.1");
+            request(nc, svc, "foo", "_INBOX.2");
+            assertEquals("_INBOX.2 busy", replies.poll(1, TimeUnit.SECONDS));
+            assertEquals(1, svc.getEndpoint("foo").getRejected());
+            assertFalse(svc.isPaused());
+
+            release.countDown();
+            assertEquals("_INBOX.1 done", replies.poll(1, TimeUnit.SECONDS));
+            svc.close();
+        }
+    }
+
+    @Test
+    public void testRejectWithoutQueue() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) spy(newMockedConnection())) {
+            BlockingQueue<String> replies = recordReplies(nc);
+            CountDownLatch release = new CountDownLatch(1);
+            Service svc = new Service.Builder(nc).workers(1).maxInFlight(1)
+                    .endpoint("foo", blockUntil(release))
+                    .build();
+            SubscriptionImpl sub = (SubscriptionImpl) svc.getEndpoint("foo").getSubscription();
+
+            // Nobody else could take the request, so it is rejected rather than left to time out
+            request(nc, svc, "foo", "_INBOX.1");
+            request(nc, svc, "foo", "_INBOX.2");
+            assertEquals("_INBOX.2 ", replies.poll(1, TimeUnit.SECONDS));
+            assertEquals(1, svc.getEndpoint("foo").getRejected());
+            assertFalse(svc.isPaused());
+            assertFalse(sub.paused);
+
+            release.countDown();
+            assertEquals("_INBOX.1 done", replies.poll(1, TimeUnit.SECONDS));
+            svc.close();
+        }
+    }
+
+    @Test
+    public void testYieldUnsupported() throws Exception {
+        Connection nc = mock(Connection.class);
+        final AtomicReference<MessageHandler> cb = new AtomicReference<MessageHandler>();
+        when(nc.subscribe(eq("foo"), eq("workers"), any(MessageHandler.class))).thenAnswer(
+                new Answer<AsyncSubscription>() {
+                    @Override
+                    public AsyncSubscription answer(InvocationOnMock invocation) {
+                        cb.set((MessageHandler) invocation.getArguments()[2]);
+                        return mock(AsyncSubscription.class);
+                    }
+                });
+        BlockingQueue<String> replies = recordReplies(nc);
+        CountDownLatch release = new CountDownLatch(1);
+        Service svc = new Service.Builder(nc).queue("workers").workers(1).maxInFlight(1)
+                .endpoint("foo", blockUntil(release))
+                .build();
+
+        // Interest cannot be withdrawn, so requests are rejected instead
+        cb.get().onMessage(new Message("foo", "_INBOX.1", "req".getBytes()));
+        cb.get().onMessage(new Message("foo", "_INBOX.2", "req".getBytes()));
+        assertEquals("_INBOX.2 ", replies.poll(1, TimeUnit.SECONDS));
+        assertEquals(1, svc.getEndpoint("foo").getRejected());
+
+        release.countDown();
+        assertEquals("_INBOX.1 done", replies.poll(1, TimeUnit.SECONDS));
+        svc.close();
+    }
+
+    @Test
+    public void testYield() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) spy(newMockedConnection())) {
+            BlockingQueue<String> replies = recordReplies(nc);
+            CountDownLatch release = new CountDownLatch(1);
+            Service svc = new Service.Builder(nc).queue("workers").workers(1).maxInFlight(2)
+                    .endpoint("foo", blockUntil(release))
+                    .build();
+            SubscriptionImpl sub = (SubscriptionImpl) svc.getEndpoint("foo").getSubscription();
+
+            request(nc, svc, "foo", "_INBOX.1");
+            request(nc, svc, "foo", "_INBOX.2");
+            // Saturated, so interest is withdrawn but the subscription stays
+            UnitTestUtilities.sleep(100);
+            assertTrue(svc.isPaused());
+            assertTrue(sub.paused);
+            assertTrue(sub.isValid());
+
+            // Requests that were already on their way are still served
+            request(nc, svc, "foo", "_INBOX.3");
+            release.countDown();
+            assertNotNull(replies.poll(1, TimeUnit.SECONDS));
+            assertNotNull(replies.poll(1, TimeUnit.SECONDS));
+            assertNotNull(replies.poll(1, TimeUnit.SECONDS));
+            UnitTestUtilities.sleep(100);
+            assertFalse(svc.isPaused());
+            assertFalse(sub.paused);
+            assertEquals(3, svc.getEndpoint("foo").getRequests());
+            svc.close();
+        }
+    }
+
+    @Test
+    public void testNoEndpoints() throws Exception {
+        thrown.expect(IllegalStateException.class);
+        try (Connection nc = newMockedConnection()) {
+            new Service.Builder(nc).build();
+        }
+    }
+
+    @Test
+    public void testDuplicateEndpoint() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+        try (Connection nc = newMockedConnection()) {
+            new Service.Builder(nc)
+                    .endpoint("foo", blockUntil(new CountDownLatch(0)))
+                    .endpoint("foo", blockUntil(new CountDownLatch(0)));
+        }
+    }
+}
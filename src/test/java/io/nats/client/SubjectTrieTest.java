@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2015-2016 Apcera Inc. All rights reserved. This program and the accompanying
+ *  materials are made available under the terms of the MIT License (MIT) which accompanies this
+ *  distribution, and is available at http://opensource.org/licenses/MIT
+ */
+
+package io.nats.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class SubjectTrieTest {
+    @Rule
+    public TestCasePrinterRule pr = new TestCasePrinterRule(System.out);
+
+    @Test
+    public void testMatchWildcards() {
+        SubjectTrie<String> trie = new SubjectTrie<String>();
+        trie.insert("foo.bar", "literal");
+        trie.insert("foo.*", "pwc");
+        trie.insert("foo.>", "fwc");
+        trie.insert(">", "all");
+        trie.insert("foo.*.baz", "middle");
+        assertEquals(5, trie.size());
+
+        assertEquals(Arrays.asList("literal", "pwc", "fwc", "all"), trie.match("foo.bar"));
+        assertEquals(Arrays.asList("middle", "fwc", "all"), trie.match("foo.bar.baz"));
+        // '>' needs at least one more token
+        assertEquals(Collections.singletonList("all"), trie.match("foo"));
+        assertEquals(Collections.emptyList(), new SubjectTrie<String>().match("foo"));
+    }
+
+    @Test
+    public void testMatchCache() {
+        SubjectTrie<String> trie = new SubjectTrie<String>();
+        trie.insert("foo.*", "a");
+        List<String> first = trie.match("foo.bar");
+        assertSame(first, trie.match("foo.bar"));
+
+        // Changes invalidate cached results
+        trie.insert("foo.bar", "b");
+        assertEquals(Arrays.asList("b", "a"), trie.match("foo.bar"));
+        assertTrue(trie.remove("foo.*", "a"));
+        assertEquals(Collections.singletonList("b"), trie.match("foo.bar"));
+        assertFalse(trie.remove("foo.*", "a"));
+        assertEquals(1, trie.size());
+    }
+
+    @Test
+    public void testCovers() {
+        assertTrue(SubjectTrie.covers("foo.bar", "foo.bar"));
+        assertTrue(SubjectTrie.covers("foo.*", "foo.bar"));
+        assertTrue(SubjectTrie.covers("foo.>", "foo.bar.baz"));
+        assertTrue(SubjectTrie.covers("foo.>", "foo.*"));
+        assertTrue(SubjectTrie.covers(">", "foo"));
+        assertFalse(SubjectTrie.covers("foo.*", "foo.>"));
+        assertFalse(SubjectTrie.covers("foo.*", "foo.bar.baz"));
+        assertFalse(SubjectTrie.covers("foo.>", "foo"));
+        assertFalse(SubjectTrie.covers("foo.bar", "foo.*"));
+        assertFalse(SubjectTrie.covers("foo.bar", "foo.baz"));
+    }
+}
@@ -313,6 +313,35 @@ public class SubscriptionImplTest {
         }
     }
 
+    @Test
+    public void testSlowConsumerPolicy() {
+        try (SyncSubscriptionImpl sub = new SyncSubscriptionImpl(connMock, "foo", "bar")) {
+            assertEquals(SlowConsumerPolicy.DROP_NEWEST, sub.getSlowConsumerPolicy());
+            sub.setSlowConsumerPolicy(SlowConsumerPolicy.DROP_OLDEST);
+            assertEquals(SlowConsumerPolicy.DROP_OLDEST, sub.getSlowConsumerPolicy());
+
+            sub.recordDropped(10);
+            sub.recordDropped(5);
+            sub.setSlowConsumerPolicy(SlowConsumerPolicy.ERROR);
+            sub.recordDropped(3);
+
+            assertEquals(3, sub.dropped);
+            assertEquals(0, sub.getDroppedMsgs(SlowConsumerPolicy.DROP_NEWEST));
+            assertEquals(2, sub.getDroppedMsgs(SlowConsumerPolicy.DROP_OLDEST));
+            assertEquals(15, sub.getDroppedBytes(SlowConsumerPolicy.DROP_OLDEST));
+            assertEquals(1, sub.getDroppedMsgs(SlowConsumerPolicy.ERROR));
+            assertEquals(3, sub.getDroppedBytes(SlowConsumerPolicy.ERROR));
+        }
+    }
+
+    @Test
+    public void testSetSlowConsumerPolicyNull() {
+        thrown.expect(NullPointerException.class);
+        try (SyncSubscriptionImpl sub = new SyncSubscriptionImpl(connMock, "foo", "bar")) {
+            sub.setSlowConsumerPolicy(null);
+        }
+    }
+
     @Test
     public void testGetPendingBytesMax() {
         thrown.expect(IllegalStateException.class);
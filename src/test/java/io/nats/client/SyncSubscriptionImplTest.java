@@ -12,8 +12,11 @@ import static io.nats.client.UnitTestUtilities.newMockedConnection;
 import static io.nats.client.UnitTestUtilities.setLogLevel;
 import static io.nats.client.UnitTestUtilities.sleep;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -36,11 +39,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Category(UnitTest.class)
 public class SyncSubscriptionImplTest {
@@ -264,4 +273,131 @@ public class SyncSubscriptionImplTest {
             Message msg = sub.nextMessage(timeout);
         }
     }
+
+    @Test
+    public void testNextMessageSlowConsumerErrorPolicy() throws Exception {
+        thrown.expect(IOException.class);
+        thrown.expectMessage(ERR_SLOW_CONSUMER);
+        String subj = "foo";
+        String queue = "bar";
+        int timeout = 100;
+
+        ConnectionImpl nc = mock(ConnectionImpl.class);
+        try (SyncSubscriptionImpl sub = new SyncSubscriptionImpl(nc, subj, queue)) {
+            sub.setSlowConsumerPolicy(SlowConsumerPolicy.ERROR);
+            // Terminated by the ERROR policy
+            sub.setChannel(null);
+            sub.closed = true;
+            sub.setSlowConsumer(true);
+            sub.nextMessage(timeout);
+        }
+    }
+
+    private static void deliver(ConnectionImpl nc, SubscriptionImpl sub, String... data) {
+        nc.mu.lock();
+        try {
+            for (String d : data) {
+                nc.deliverMsg(sub, new Message("foo", null, d.getBytes()));
+            }
+        } finally {
+            nc.mu.unlock();
+        }
+    }
+
+    @Test(timeout = 3000)
+    public void testIteratorPrefetch() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection()) {
+            try (SyncSubscriptionImpl sub = (SyncSubscriptionImpl) nc.subscribe("foo")) {
+                deliver(nc, sub, "one", "two", "three");
+                Iterator<Message> it = sub.iterator(2);
+
+                assertTrue(it.hasNext());
+                // The first chunk is taken off the pending queue in one go
+                assertEquals(1, sub.getPendingMsgs());
+                assertEquals(2, sub.getDelivered());
+                assertEquals("one", new String(it.next().getData()));
+                assertEquals("two", new String(it.next().getData()));
+                assertEquals("three", new String(it.next().getData()));
+                assertEquals(0, sub.getPendingMsgs());
+                assertEquals(3, sub.getDelivered());
+            }
+        }
+    }
+
+    @Test(timeout = 3000)
+    public void testIteratorIdleTimeout() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection()) {
+            try (SyncSubscriptionImpl sub = (SyncSubscriptionImpl) nc.subscribe("foo")) {
+                deliver(nc, sub, "one");
+                Iterator<Message> it = sub.iterator(10, 100, TimeUnit.MILLISECONDS);
+                assertTrue(it.hasNext());
+                it.next();
+                assertFalse(it.hasNext());
+                assertTrue(sub.isValid());
+            }
+        }
+    }
+
+    @Test(timeout = 3000)
+    public void testIteratorAutoUnsubscribeMax() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection()) {
+            SyncSubscriptionImpl sub = (SyncSubscriptionImpl) nc.subscribe("foo");
+            sub.autoUnsubscribe(2);
+            deliver(nc, sub, "one", "two");
+            List<String> data = sub.stream().map(new Function<Message, String>() {
+                public String apply(Message msg) {
+                    return new String(msg.getData());
+                }
+            }).collect(Collectors.toList());
+            assertEquals(Arrays.asList("one", "two"), data);
+            assertFalse(sub.isValid());
+        }
+    }
+
+    @Test(timeout = 3000)
+    public void testStreamEndsOnUnsubscribe() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection()) {
+            final SyncSubscriptionImpl sub = (SyncSubscriptionImpl) nc.subscribe("foo");
+            deliver(nc, sub, "one", "two");
+            exec.execute(new Runnable() {
+                public void run() {
+                    sleep(500);
+                    try {
+                        sub.unsubscribe();
+                    } catch (IOException e) {
+                        logger.error("unsubscribe failed", e);
+                    }
+                }
+            });
+            assertEquals(2, sub.stream().count());
+        }
+    }
+
+    @Test
+    public void testIteratorSlowConsumer() throws Exception {
+        try (ConnectionImpl nc = (ConnectionImpl) newMockedConnection()) {
+            try (SyncSubscriptionImpl sub = (SyncSubscriptionImpl) nc.subscribe("foo")) {
+                Iterator<Message> it = sub.iterator(10, 100, TimeUnit.MILLISECONDS);
+                sub.setSlowConsumer(true);
+                try {
+                    it.hasNext();
+                    fail("expected a slow consumer error");
+                } catch (UncheckedIOException e) {
+                    assertEquals(ERR_SLOW_CONSUMER, e.getCause().getMessage());
+                }
+                // The report does not end the iteration
+                deliver(nc, sub, "one");
+                assertTrue(it.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void testIteratorBadPrefetch() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+        ConnectionImpl nc = mock(ConnectionImpl.class);
+        try (SyncSubscriptionImpl sub = new SyncSubscriptionImpl(nc, "foo", null)) {
+            sub.iterator(0);
+        }
+    }
 }